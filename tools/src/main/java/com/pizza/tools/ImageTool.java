@@ -27,17 +27,19 @@ import android.graphics.drawable.Drawable;
 import android.media.ExifInterface;
 import android.media.ThumbnailUtils;
 import android.net.Uri;
-import android.os.Build;
 import android.os.Environment;
 import android.provider.MediaStore;
-import android.renderscript.Allocation;
-import android.renderscript.Element;
-import android.renderscript.RenderScript;
-import android.renderscript.ScriptIntrinsicBlur;
+import android.renderscript.RSRuntimeException;
 import android.util.Log;
 import android.widget.ImageView;
 
+import com.pizza.tools.blur.RenderScriptBlur;
+import com.pizza.tools.blur.StackBlur;
 import com.pizza.tools.file.FileTool;
+import com.pizza.tools.image.BitmapPool;
+import com.pizza.tools.image.ImageCache;
+import com.pizza.tools.image.QualityCompressor;
+import com.pizza.tools.image.RegionImageDecoder;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
@@ -50,7 +52,6 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.net.URL;
 
 /**
  * @author BoWei
@@ -59,6 +60,15 @@ import java.net.URL;
 
 public class ImageTool {
 
+    /**
+     * 解码输入流时的缓冲区大小
+     */
+    private static final int DECODE_BUFFER_SIZE = 16 * 1024;
+    /**
+     * 读取图片文件头时允许回退的最大字节数
+     */
+    private static final int MARK_READ_LIMIT = 5 * 1024 * 1024;
+
     /**
      * 得到本地或者网络上的bitmap url - 网络或者本地图片的绝对路径,比如:
      * <p/>
@@ -67,28 +77,32 @@ public class ImageTool {
      * B.本地路径:url="file://mnt/sdcard/photo/image.png";
      * <p/>
      * C.支持的图片格式 ,png, jpg,bmp,gif等等
+     * <p>原始数据经过 {@link ImageCache} 缓存，返回的是缓存图片的副本，调用方可以修改或回收；
+     * 不需要修改时使用 {@link #getLocalOrNetBitmap(String, int, int)} 直接获取共享的图片，避免拷贝</p>
      *
      * @param url
      * @return
      */
     public static Bitmap getLocalOrNetBitmap(String url) {
-        Bitmap bitmap = null;
-        InputStream in = null;
-        BufferedOutputStream out = null;
-        try {
-            in = new BufferedInputStream(new URL(url).openStream(), 1024);
-            final ByteArrayOutputStream dataStream = new ByteArrayOutputStream();
-            out = new BufferedOutputStream(dataStream, 1024);
-            copy(in, out);
-            out.flush();
-            byte[] data = dataStream.toByteArray();
-            bitmap = BitmapFactory.decodeByteArray(data, 0, data.length);
-            data = null;
-            return bitmap;
-        } catch (IOException e) {
-            e.printStackTrace();
+        Bitmap shared = ImageCache.get().getBitmap(url);
+        if (shared == null) {
             return null;
         }
+        Bitmap.Config config = shared.getConfig();
+        return shared.copy(config == null ? Bitmap.Config.ARGB_8888 : config, true);
+    }
+
+    /**
+     * 得到本地或者网络上不超过指定尺寸的bitmap，结果会缓存在内存和磁盘中
+     * <p>返回的图片被缓存共享，不能回收或修改；需要修改时先调用 {@link Bitmap#copy(Bitmap.Config, boolean)}</p>
+     *
+     * @param url       网络路径或 file:// 开头的本地路径
+     * @param maxWidth  最大宽度
+     * @param maxHeight 最大高度
+     * @return
+     */
+    public static Bitmap getLocalOrNetBitmap(String url, int maxWidth, int maxHeight) {
+        return ImageCache.get().getBitmap(url, maxWidth, maxHeight);
     }
 
     /**
@@ -143,14 +157,6 @@ public class ImageTool {
         return fileName;
     }
 
-    private static void copy(InputStream in, OutputStream out) throws IOException {
-        byte[] b = new byte[1024];
-        int read;
-        while ((read = in.read(b)) != -1) {
-            out.write(b, 0, read);
-        }
-    }
-
     public static int getColorByInt(int colorInt) {
         return colorInt | -16777216;
     }
@@ -317,6 +323,108 @@ public class ImageTool {
         return inSampleSize;
     }
 
+    private interface Decoder {
+        Bitmap decode(BitmapFactory.Options options);
+    }
+
+    /**
+     * 根据已读取的图片尺寸一次解码到不超过最大宽高的大小
+     * <p>
+     * 先用 2 的幂次 inSampleSize 在解码时降采样，剩余的比例通过 inDensity/inTargetDensity 在同一次解码中缩放，
+     * 不需要解码出大图后再缩放。JPEG 没有透明通道，使用 RGB_565 解码，内存减半。
+     * </p>
+     *
+     * @param options   已完成 inJustDecodeBounds 的选项
+     * @param maxWidth  最大宽度，与 maxHeight 任一为 0 时不限制尺寸，按原图解码
+     * @param maxHeight 最大高度，与 maxWidth 任一为 0 时不限制尺寸，按原图解码
+     * @param decoder   解码方式
+     * @return bitmap
+     */
+    private static Bitmap decodeBounded(BitmapFactory.Options options, int maxWidth, int maxHeight, Decoder decoder) {
+        int srcWidth = options.outWidth;
+        int srcHeight = options.outHeight;
+        if (srcWidth <= 0 || srcHeight <= 0) {
+            return null;
+        }
+        boolean jpeg = "image/jpeg".equals(options.outMimeType);
+        if (jpeg) {
+            options.inPreferredConfig = Bitmap.Config.RGB_565;
+        }
+        int targetWidth = srcWidth;
+        int targetHeight = srcHeight;
+        boolean byWidth = true;
+        if (maxWidth > 0 && maxHeight > 0 && (srcWidth > maxWidth || srcHeight > maxHeight)) {
+            byWidth = (long) maxWidth * srcHeight <= (long) maxHeight * srcWidth;
+            if (byWidth) {
+                targetWidth = maxWidth;
+                targetHeight = Math.max(1, (int) ((long) srcHeight * maxWidth / srcWidth));
+            } else {
+                targetHeight = maxHeight;
+                targetWidth = Math.max(1, (int) ((long) srcWidth * maxHeight / srcHeight));
+            }
+        }
+        int sampleSize = 1;
+        while (srcWidth / (sampleSize << 1) >= targetWidth && srcHeight / (sampleSize << 1) >= targetHeight) {
+            sampleSize <<= 1;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        // JPEG 降采样向上取整，其他格式向下取整
+        int sampledWidth = jpeg ? (srcWidth + sampleSize - 1) / sampleSize : Math.max(1, srcWidth / sampleSize);
+        int sampledHeight = jpeg ? (srcHeight + sampleSize - 1) / sampleSize : Math.max(1, srcHeight / sampleSize);
+        int sampledSide = byWidth ? sampledWidth : sampledHeight;
+        int targetSide = byWidth ? targetWidth : targetHeight;
+        boolean scaled = sampledSide != targetSide;
+        int expectedWidth = sampledWidth;
+        int expectedHeight = sampledHeight;
+        if (scaled) {
+            options.inScaled = true;
+            options.inDensity = sampledSide;
+            options.inTargetDensity = targetSide;
+            expectedWidth = byWidth ? targetWidth : (int) ((long) sampledWidth * targetSide / sampledSide + 1);
+            expectedHeight = byWidth ? (int) ((long) sampledHeight * targetSide / sampledSide + 1) : targetHeight;
+        } else {
+            options.inScaled = false;
+        }
+        Bitmap ret = decodeReusing(options, expectedWidth, expectedHeight, decoder);
+        if (ret != null && scaled) {
+            // inDensity 只用来控制缩放，解码完成后恢复为屏幕密度
+            ret.setDensity(Resources.getSystem().getDisplayMetrics().densityDpi);
+        }
+        return ret;
+    }
+
+    /**
+     * 从复用池中取出尺寸合适的图片作为 inBitmap 进行解码，不兼容时改为普通解码
+     *
+     * @param options 已完成 inJustDecodeBounds 和 inSampleSize 的选项
+     * @param width   预计解码后的宽度
+     * @param height  预计解码后的高度
+     * @param decoder 解码方式
+     * @return bitmap
+     */
+    private static Bitmap decodeReusing(BitmapFactory.Options options, int width, int height, Decoder decoder) {
+        if (width > 0 && height > 0) {
+            options.inMutable = true;
+            options.inBitmap = BitmapPool.get().getDirty(width, height, options.inPreferredConfig);
+        }
+        Bitmap inBitmap = options.inBitmap;
+        Bitmap ret;
+        try {
+            ret = decoder.decode(options);
+        } catch (IllegalArgumentException e) {
+            if (inBitmap == null) {
+                throw e;
+            }
+            options.inBitmap = null;
+            ret = decoder.decode(options);
+        }
+        if (inBitmap != null && ret != inBitmap) {
+            BitmapPool.get().put(inBitmap);
+        }
+        return ret;
+    }
+
     /**
      * 获取bitmap
      *
@@ -351,16 +459,12 @@ public class ImageTool {
         if (file == null) {
             return null;
         }
-        InputStream is = null;
+        // 只打开一次文件，两次解码共用同一个文件描述符，解码不会改变描述符的读取位置
+        FileInputStream is = null;
         try {
-            BitmapFactory.Options options = new BitmapFactory.Options();
-            options.inJustDecodeBounds = true;
-            is = new BufferedInputStream(new FileInputStream(file));
-            BitmapFactory.decodeStream(is, null, options);
-            options.inSampleSize = calculateInSampleSize(options, maxWidth, maxHeight);
-            options.inJustDecodeBounds = false;
-            return BitmapFactory.decodeStream(is, null, options);
-        } catch (FileNotFoundException e) {
+            is = new FileInputStream(file);
+            return getBitmap(is.getFD(), maxWidth, maxHeight);
+        } catch (IOException e) {
             e.printStackTrace();
             return null;
         } finally {
@@ -393,12 +497,7 @@ public class ImageTool {
         if (DataTool.isNullString(filePath)) {
             return null;
         }
-        BitmapFactory.Options options = new BitmapFactory.Options();
-        options.inJustDecodeBounds = true;
-        BitmapFactory.decodeFile(filePath, options);
-        options.inSampleSize = calculateInSampleSize(options, maxWidth, maxHeight);
-        options.inJustDecodeBounds = false;
-        return BitmapFactory.decodeFile(filePath, options);
+        return getBitmap(new File(filePath), maxWidth, maxHeight);
     }
 
     /**
@@ -413,12 +512,33 @@ public class ImageTool {
         if (is == null) {
             return null;
         }
+        // 读取文件头后回到标记处再解码，流只读取一遍
+        final InputStream in = is.markSupported() ? is : new BufferedInputStream(is, DECODE_BUFFER_SIZE);
+        in.mark(MARK_READ_LIMIT);
         BitmapFactory.Options options = new BitmapFactory.Options();
         options.inJustDecodeBounds = true;
-        BitmapFactory.decodeStream(is, null, options);
-        options.inSampleSize = calculateInSampleSize(options, maxWidth, maxHeight);
-        options.inJustDecodeBounds = false;
-        return BitmapFactory.decodeStream(is, null, options);
+        BitmapFactory.decodeStream(in, null, options);
+        try {
+            in.reset();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+        // 完整解码时只保留一个缓冲区大小的回退范围，缓冲不会随图片数据增长；
+        // 复用图片失败后的重试只有在失败发生于这个范围内时才能回退，否则返回 null
+        in.mark(DECODE_BUFFER_SIZE);
+        return decodeBounded(options, maxWidth, maxHeight, new Decoder() {
+            @Override
+            public Bitmap decode(BitmapFactory.Options options) {
+                try {
+                    in.reset();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    return null;
+                }
+                return BitmapFactory.decodeStream(in, null, options);
+            }
+        });
     }
 
     /**
@@ -430,16 +550,19 @@ public class ImageTool {
      * @param maxHeight 最大高度
      * @return bitmap
      */
-    public static Bitmap getBitmap(byte[] data, int offset, int maxWidth, int maxHeight) {
+    public static Bitmap getBitmap(final byte[] data, final int offset, int maxWidth, int maxHeight) {
         if (data.length == 0) {
             return null;
         }
         BitmapFactory.Options options = new BitmapFactory.Options();
         options.inJustDecodeBounds = true;
-        BitmapFactory.decodeByteArray(data, offset, data.length, options);
-        options.inSampleSize = calculateInSampleSize(options, maxWidth, maxHeight);
-        options.inJustDecodeBounds = false;
-        return BitmapFactory.decodeByteArray(data, offset, data.length, options);
+        BitmapFactory.decodeByteArray(data, offset, data.length - offset, options);
+        return decodeBounded(options, maxWidth, maxHeight, new Decoder() {
+            @Override
+            public Bitmap decode(BitmapFactory.Options options) {
+                return BitmapFactory.decodeByteArray(data, offset, data.length - offset, options);
+            }
+        });
     }
 
     /**
@@ -468,13 +591,12 @@ public class ImageTool {
         if (ToolInit.getApplicationContext() == null) {
             return null;
         }
-        BitmapFactory.Options options = new BitmapFactory.Options();
-        options.inJustDecodeBounds = true;
         InputStream is = ToolInit.getApplicationContext().getResources().openRawResource(resId);
-        BitmapFactory.decodeStream(is, null, options);
-        options.inSampleSize = calculateInSampleSize(options, maxWidth, maxHeight);
-        options.inJustDecodeBounds = false;
-        return BitmapFactory.decodeStream(is, null, options);
+        try {
+            return getBitmap(is, maxWidth, maxHeight);
+        } finally {
+            FileTool.get().getFileOperatorUtil().closeIo(is);
+        }
     }
 
     /**
@@ -500,7 +622,7 @@ public class ImageTool {
      * @param maxHeight 最大高度
      * @return bitmap
      */
-    public static Bitmap getBitmap(Resources res, int id, int maxWidth, int maxHeight) {
+    public static Bitmap getBitmap(final Resources res, final int id, int maxWidth, int maxHeight) {
         if (res == null) {
             return null;
         }
@@ -509,7 +631,15 @@ public class ImageTool {
         BitmapFactory.decodeResource(res, id, options);
         options.inSampleSize = calculateInSampleSize(options, maxWidth, maxHeight);
         options.inJustDecodeBounds = false;
-        return BitmapFactory.decodeResource(res, id, options);
+        // 资源解码会按资源密度缩放，这里只按采样估算尺寸，估算偏小时会退回普通解码
+        int sampleSize = Math.max(1, options.inSampleSize);
+        return decodeReusing(options, (options.outWidth + sampleSize - 1) / sampleSize,
+                (options.outHeight + sampleSize - 1) / sampleSize, new Decoder() {
+            @Override
+            public Bitmap decode(BitmapFactory.Options options) {
+                return BitmapFactory.decodeResource(res, id, options);
+            }
+        });
     }
 
     /**
@@ -533,16 +663,19 @@ public class ImageTool {
      * @param maxHeight 最大高度
      * @return bitmap
      */
-    public static Bitmap getBitmap(FileDescriptor fd, int maxWidth, int maxHeight) {
+    public static Bitmap getBitmap(final FileDescriptor fd, int maxWidth, int maxHeight) {
         if (fd == null) {
             return null;
         }
         BitmapFactory.Options options = new BitmapFactory.Options();
         options.inJustDecodeBounds = true;
         BitmapFactory.decodeFileDescriptor(fd, null, options);
-        options.inSampleSize = calculateInSampleSize(options, maxWidth, maxHeight);
-        options.inJustDecodeBounds = false;
-        return BitmapFactory.decodeFileDescriptor(fd, null, options);
+        return decodeBounded(options, maxWidth, maxHeight, new Decoder() {
+            @Override
+            public Bitmap decode(BitmapFactory.Options options) {
+                return BitmapFactory.decodeFileDescriptor(fd, null, options);
+            }
+        });
     }
 
     /**
@@ -570,9 +703,14 @@ public class ImageTool {
         if (isEmptyBitmap(src)) {
             return null;
         }
-        Bitmap ret = Bitmap.createScaledBitmap(src, newWidth, newHeight, true);
-        if (recycle && !src.isRecycled()) {
-            src.recycle();
+        if (newWidth == src.getWidth() && newHeight == src.getHeight()) {
+            return src;
+        }
+        Bitmap ret = obtainBitmap(newWidth, newHeight, src);
+        Canvas canvas = new Canvas(ret);
+        canvas.drawBitmap(src, null, new Rect(0, 0, newWidth, newHeight), new Paint(Paint.FILTER_BITMAP_FLAG));
+        if (recycle) {
+            recycle(src);
         }
         return ret;
     }
@@ -604,9 +742,9 @@ public class ImageTool {
         }
         Matrix matrix = new Matrix();
         matrix.setScale(scaleWidth, scaleHeight);
-        Bitmap ret = Bitmap.createBitmap(src, 0, 0, src.getWidth(), src.getHeight(), matrix, true);
-        if (recycle && !src.isRecycled()) {
-            src.recycle();
+        Bitmap ret = transform(src, matrix, true);
+        if (recycle) {
+            recycle(src);
         }
         return ret;
     }
@@ -640,13 +778,79 @@ public class ImageTool {
         if (isEmptyBitmap(src)) {
             return null;
         }
-        Bitmap ret = Bitmap.createBitmap(src, x, y, width, height);
-        if (recycle && !src.isRecycled()) {
-            src.recycle();
+        if (x < 0 || y < 0 || width <= 0 || height <= 0
+                || x + width > src.getWidth() || y + height > src.getHeight()) {
+            throw new IllegalArgumentException("clip rect must be inside the bitmap");
+        }
+        if (x == 0 && y == 0 && width == src.getWidth() && height == src.getHeight()) {
+            return src;
+        }
+        Bitmap ret = obtainBitmap(width, height, src);
+        Canvas canvas = new Canvas(ret);
+        canvas.drawBitmap(src, new Rect(x, y, x + width, y + height), new Rect(0, 0, width, height), null);
+        if (recycle) {
+            recycle(src);
         }
         return ret;
     }
 
+    /**
+     * 从图片文件中裁剪，只解码需要的区域，不会解码整张图片
+     *
+     * @param filePath 文件路径
+     * @param x        开始坐标x
+     * @param y        开始坐标y
+     * @param width    裁剪宽度
+     * @param height   裁剪高度
+     * @return 裁剪后的图片
+     */
+    public static Bitmap clip(String filePath, int x, int y, int width, int height) {
+        return getBitmap(filePath, new Rect(x, y, x + width, y + height), 1);
+    }
+
+    /**
+     * 从图片文件中裁剪，只解码需要的区域，不会解码整张图片
+     *
+     * @param file   文件
+     * @param x      开始坐标x
+     * @param y      开始坐标y
+     * @param width  裁剪宽度
+     * @param height 裁剪高度
+     * @return 裁剪后的图片
+     */
+    public static Bitmap clip(File file, int x, int y, int width, int height) {
+        return file == null ? null : clip(file.getPath(), x, y, width, height);
+    }
+
+    /**
+     * 解码图片文件中的一块区域
+     * <p>需要反复浏览同一张大图的不同区域时，使用 {@link RegionImageDecoder} 的分块缓存</p>
+     *
+     * @param filePath   文件路径
+     * @param region     原图坐标中的区域
+     * @param sampleSize 采样大小
+     * @return bitmap
+     */
+    public static Bitmap getBitmap(String filePath, Rect region, int sampleSize) {
+        if (DataTool.isNullString(filePath) || region == null) {
+            return null;
+        }
+        RegionImageDecoder decoder = null;
+        try {
+            decoder = RegionImageDecoder.newInstance(filePath);
+            // JPEG 没有透明通道，其他格式保留透明度
+            decoder.setConfig("JPEG".equals(getImageType(filePath)) ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888);
+            return decoder.decodeRegion(region, sampleSize);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        } finally {
+            if (decoder != null) {
+                decoder.close();
+            }
+        }
+    }
+
     /**
      * 倾斜图片
      *
@@ -703,9 +907,9 @@ public class ImageTool {
         }
         Matrix matrix = new Matrix();
         matrix.setSkew(kx, ky, px, py);
-        Bitmap ret = Bitmap.createBitmap(src, 0, 0, src.getWidth(), src.getHeight(), matrix, true);
-        if (recycle && !src.isRecycled()) {
-            src.recycle();
+        Bitmap ret = transform(src, matrix, true);
+        if (recycle) {
+            recycle(src);
         }
         return ret;
     }
@@ -742,9 +946,9 @@ public class ImageTool {
         }
         Matrix matrix = new Matrix();
         matrix.setRotate(degrees, px, py);
-        Bitmap ret = Bitmap.createBitmap(src, 0, 0, src.getWidth(), src.getHeight(), matrix, true);
-        if (recycle && !src.isRecycled()) {
-            src.recycle();
+        Bitmap ret = transform(src, matrix, true);
+        if (recycle) {
+            recycle(src);
         }
         return ret;
     }
@@ -763,7 +967,6 @@ public class ImageTool {
                     ExifInterface.TAG_ORIENTATION,
                     ExifInterface.ORIENTATION_NORMAL);
             switch (orientation) {
-                default:
                 case ExifInterface.ORIENTATION_ROTATE_90:
                     degree = 90;
                     break;
@@ -773,6 +976,8 @@ public class ImageTool {
                 case ExifInterface.ORIENTATION_ROTATE_270:
                     degree = 270;
                     break;
+                default:
+                    break;
             }
         } catch (IOException e) {
             e.printStackTrace();
@@ -804,7 +1009,7 @@ public class ImageTool {
         int width = src.getWidth();
         int height = src.getHeight();
         int radius = Math.min(width, height) >> 1;
-        Bitmap ret = src.copy(src.getConfig(), true);
+        Bitmap ret = obtainCopy(src);
         Paint paint = new Paint();
         Canvas canvas = new Canvas(ret);
         Rect rect = new Rect(0, 0, width, height);
@@ -814,8 +1019,8 @@ public class ImageTool {
         canvas.drawARGB(0, 0, 0, 0);
         canvas.drawCircle(width >> 1, height >> 1, radius, paint);
         canvas.drawBitmap(src, rect, rect, paint);
-        if (recycle && !src.isRecycled()) {
-            src.recycle();
+        if (recycle) {
+            recycle(src);
         }
         return ret;
     }
@@ -845,7 +1050,7 @@ public class ImageTool {
         }
         int width = src.getWidth();
         int height = src.getHeight();
-        Bitmap ret = src.copy(src.getConfig(), true);
+        Bitmap ret = obtainCopy(src);
         BitmapShader bitmapShader = new BitmapShader(src,
                 Shader.TileMode.CLAMP, Shader.TileMode.CLAMP);
         Paint paint = new Paint();
@@ -854,8 +1059,8 @@ public class ImageTool {
         paint.setAntiAlias(true);
         paint.setShader(bitmapShader);
         canvas.drawRoundRect(rectf, radius, radius, paint);
-        if (recycle && !src.isRecycled()) {
-            src.recycle();
+        if (recycle) {
+            recycle(src);
         }
         return ret;
     }
@@ -902,29 +1107,27 @@ public class ImageTool {
         paint.setColorFilter(filter);
         canvas.scale(scale, scale);
         canvas.drawBitmap(scaleBitmap, 0, 0, paint);
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+        try {
             scaleBitmap = renderScriptBlur(scaleBitmap, radius);
-        } else {
+        } catch (RSRuntimeException e) {
             scaleBitmap = stackBlur(scaleBitmap, (int) radius, true);
         }
         if (scale == 1) {
             return scaleBitmap;
         }
         Bitmap ret = Bitmap.createScaledBitmap(scaleBitmap, width, height, true);
-        if (scaleBitmap != null && !scaleBitmap.isRecycled()) {
-            scaleBitmap.recycle();
-        }
-        if (recycle && !src.isRecycled()) {
-            src.recycle();
+        recycle(scaleBitmap);
+        if (recycle) {
+            recycle(src);
         }
         return ret;
     }
 
     /**
      * renderScript模糊图片
-     * <p>API大于17</p>
+     * <p>由 {@link RenderScriptBlur} 处理，复用 RenderScript 上下文和同尺寸的 Allocation</p>
      *
-     * @param src    源图片
+     * @param src    源图片，ARGB_8888 格式
      * @param radius 模糊度(0...25)
      * @return 模糊后的图片
      */
@@ -932,33 +1135,12 @@ public class ImageTool {
         if (isEmptyBitmap(src)) {
             return null;
         }
-        RenderScript rs = null;
-        try {
-            rs = RenderScript.create(ToolInit.getApplicationContext());
-            rs.setMessageHandler(new RenderScript.RSMessageHandler());
-            Allocation input = Allocation.createFromBitmap(rs, src, Allocation.MipmapControl.MIPMAP_NONE, Allocation
-                    .USAGE_SCRIPT);
-            Allocation output = Allocation.createTyped(rs, input.getType());
-            ScriptIntrinsicBlur blurScript = ScriptIntrinsicBlur.create(rs, Element.U8_4(rs));
-            if (radius > 25) {
-                radius = 25.0f;
-            } else if (radius <= 0) {
-                radius = 1.0f;
-            }
-            blurScript.setInput(input);
-            blurScript.setRadius(radius);
-            blurScript.forEach(output);
-            output.copyTo(src);
-        } finally {
-            if (rs != null) {
-                rs.destroy();
-            }
-        }
-        return src;
+        return RenderScriptBlur.get().blur(ToolInit.getApplicationContext(), src, radius);
     }
 
     /**
      * stack模糊图片
+     * <p>由 {@link StackBlur} 分段并行处理，连续模糊同尺寸的图片时复用缓冲</p>
      *
      * @param src     源图片
      * @param radius  模糊半径
@@ -966,207 +1148,16 @@ public class ImageTool {
      * @return stackBlur模糊图片
      */
     public static Bitmap stackBlur(Bitmap src, int radius, boolean recycle) {
+        if (radius < 1) {
+            return (null);
+        }
         Bitmap ret;
         if (recycle) {
             ret = src;
         } else {
             ret = src.copy(src.getConfig(), true);
         }
-
-        if (radius < 1) {
-            return (null);
-        }
-
-        int w = ret.getWidth();
-        int h = ret.getHeight();
-
-        int[] pix = new int[w * h];
-        ret.getPixels(pix, 0, w, 0, 0, w, h);
-
-        int wm = w - 1;
-        int hm = h - 1;
-        int wh = w * h;
-        int div = radius + radius + 1;
-
-        int r[] = new int[wh];
-        int g[] = new int[wh];
-        int b[] = new int[wh];
-        int rsum, gsum, bsum, x, y, i, p, yp, yi, yw;
-        int vmin[] = new int[Math.max(w, h)];
-
-        int divsum = (div + 1) >> 1;
-        divsum *= divsum;
-        int dv[] = new int[256 * divsum];
-        for (i = 0; i < 256 * divsum; i++) {
-            dv[i] = (i / divsum);
-        }
-
-        yw = yi = 0;
-
-        int[][] stack = new int[div][3];
-        int stackpointer;
-        int stackstart;
-        int[] sir;
-        int rbs;
-        int r1 = radius + 1;
-        int routsum, goutsum, boutsum;
-        int rinsum, ginsum, binsum;
-
-        for (y = 0; y < h; y++) {
-            rinsum = ginsum = binsum = routsum = goutsum = boutsum = rsum = gsum = bsum = 0;
-            for (i = -radius; i <= radius; i++) {
-                p = pix[yi + Math.min(wm, Math.max(i, 0))];
-                sir = stack[i + radius];
-                sir[0] = (p & 0xff0000) >> 16;
-                sir[1] = (p & 0x00ff00) >> 8;
-                sir[2] = (p & 0x0000ff);
-                rbs = r1 - Math.abs(i);
-                rsum += sir[0] * rbs;
-                gsum += sir[1] * rbs;
-                bsum += sir[2] * rbs;
-                if (i > 0) {
-                    rinsum += sir[0];
-                    ginsum += sir[1];
-                    binsum += sir[2];
-                } else {
-                    routsum += sir[0];
-                    goutsum += sir[1];
-                    boutsum += sir[2];
-                }
-            }
-            stackpointer = radius;
-
-            for (x = 0; x < w; x++) {
-
-                r[yi] = dv[rsum];
-                g[yi] = dv[gsum];
-                b[yi] = dv[bsum];
-
-                rsum -= routsum;
-                gsum -= goutsum;
-                bsum -= boutsum;
-
-                stackstart = stackpointer - radius + div;
-                sir = stack[stackstart % div];
-
-                routsum -= sir[0];
-                goutsum -= sir[1];
-                boutsum -= sir[2];
-
-                if (y == 0) {
-                    vmin[x] = Math.min(x + radius + 1, wm);
-                }
-                p = pix[yw + vmin[x]];
-
-                sir[0] = (p & 0xff0000) >> 16;
-                sir[1] = (p & 0x00ff00) >> 8;
-                sir[2] = (p & 0x0000ff);
-
-                rinsum += sir[0];
-                ginsum += sir[1];
-                binsum += sir[2];
-
-                rsum += rinsum;
-                gsum += ginsum;
-                bsum += binsum;
-
-                stackpointer = (stackpointer + 1) % div;
-                sir = stack[(stackpointer) % div];
-
-                routsum += sir[0];
-                goutsum += sir[1];
-                boutsum += sir[2];
-
-                rinsum -= sir[0];
-                ginsum -= sir[1];
-                binsum -= sir[2];
-
-                yi++;
-            }
-            yw += w;
-        }
-        for (x = 0; x < w; x++) {
-            rinsum = ginsum = binsum = routsum = goutsum = boutsum = rsum = gsum = bsum = 0;
-            yp = -radius * w;
-            for (i = -radius; i <= radius; i++) {
-                yi = Math.max(0, yp) + x;
-
-                sir = stack[i + radius];
-
-                sir[0] = r[yi];
-                sir[1] = g[yi];
-                sir[2] = b[yi];
-
-                rbs = r1 - Math.abs(i);
-
-                rsum += r[yi] * rbs;
-                gsum += g[yi] * rbs;
-                bsum += b[yi] * rbs;
-
-                if (i > 0) {
-                    rinsum += sir[0];
-                    ginsum += sir[1];
-                    binsum += sir[2];
-                } else {
-                    routsum += sir[0];
-                    goutsum += sir[1];
-                    boutsum += sir[2];
-                }
-
-                if (i < hm) {
-                    yp += w;
-                }
-            }
-            yi = x;
-            stackpointer = radius;
-            for (y = 0; y < h; y++) {
-                // Preserve alpha channel: ( 0xff000000 & pix[yi] )
-                pix[yi] = (0xff000000 & pix[yi]) | (dv[rsum] << 16) | (dv[gsum] << 8) | dv[bsum];
-
-                rsum -= routsum;
-                gsum -= goutsum;
-                bsum -= boutsum;
-
-                stackstart = stackpointer - radius + div;
-                sir = stack[stackstart % div];
-
-                routsum -= sir[0];
-                goutsum -= sir[1];
-                boutsum -= sir[2];
-
-                if (x == 0) {
-                    vmin[y] = Math.min(y + r1, hm) * w;
-                }
-                p = x + vmin[y];
-
-                sir[0] = r[p];
-                sir[1] = g[p];
-                sir[2] = b[p];
-
-                rinsum += sir[0];
-                ginsum += sir[1];
-                binsum += sir[2];
-
-                rsum += rinsum;
-                gsum += ginsum;
-                bsum += binsum;
-
-                stackpointer = (stackpointer + 1) % div;
-                sir = stack[stackpointer];
-
-                routsum += sir[0];
-                goutsum += sir[1];
-                boutsum += sir[2];
-
-                rinsum -= sir[0];
-                ginsum -= sir[1];
-                binsum -= sir[2];
-
-                yi += w;
-            }
-        }
-        ret.setPixels(pix, 0, w, 0, 0, w, h);
-        return (ret);
+        return StackBlur.get().blur(ret, radius);
     }
 
     /**
@@ -1178,7 +1169,7 @@ public class ImageTool {
      * @return 带颜色边框图
      */
     public static Bitmap addFrame(Bitmap src, int borderWidth, int color) {
-        return addFrame(src, borderWidth, color);
+        return addFrame(src, borderWidth, color, false);
     }
 
     /**
@@ -1194,9 +1185,9 @@ public class ImageTool {
         if (isEmptyBitmap(src)) {
             return null;
         }
-        int newWidth = src.getWidth() + borderWidth >> 1;
-        int newHeight = src.getHeight() + borderWidth >> 1;
-        Bitmap ret = Bitmap.createBitmap(newWidth, newHeight, src.getConfig());
+        int newWidth = src.getWidth() + (borderWidth << 1);
+        int newHeight = src.getHeight() + (borderWidth << 1);
+        Bitmap ret = obtainBitmap(newWidth, newHeight, src);
         Canvas canvas = new Canvas(ret);
         Rect rec = canvas.getClipBounds();
         Paint paint = new Paint();
@@ -1205,8 +1196,8 @@ public class ImageTool {
         paint.setStrokeWidth(borderWidth);
         canvas.drawRect(rec, paint);
         canvas.drawBitmap(src, borderWidth, borderWidth, null);
-        if (recycle && !src.isRecycled()) {
-            src.recycle();
+        if (recycle) {
+            recycle(src);
         }
         return ret;
     }
@@ -1240,17 +1231,16 @@ public class ImageTool {
         if (0 == srcWidth || srcHeight == 0) {
             return null;
         }
-        Matrix matrix = new Matrix();
-        matrix.preScale(1, -1);
-        Bitmap reflectionBitmap = Bitmap.createBitmap(src, 0, srcHeight - reflectionHeight,
-                srcWidth, reflectionHeight, matrix, false);
-        if (null == reflectionBitmap) {
-            return null;
-        }
-        Bitmap ret = Bitmap.createBitmap(srcWidth, srcHeight + reflectionHeight, src.getConfig());
+        Bitmap ret = obtainBitmap(srcWidth, srcHeight + reflectionHeight, src);
         Canvas canvas = new Canvas(ret);
         canvas.drawBitmap(src, 0, 0, null);
-        canvas.drawBitmap(reflectionBitmap, 0, srcHeight + REFLECTION_GAP, null);
+        // 直接把底部区域上下翻转画到原图下方，不再生成中间图片
+        canvas.save();
+        canvas.translate(0, srcHeight + REFLECTION_GAP + reflectionHeight);
+        canvas.scale(1, -1);
+        canvas.drawBitmap(src, new Rect(0, srcHeight - reflectionHeight, srcWidth, srcHeight),
+                new Rect(0, 0, srcWidth, reflectionHeight), null);
+        canvas.restore();
         Paint paint = new Paint();
         paint.setAntiAlias(true);
         LinearGradient shader = new LinearGradient(0, srcHeight, 0,
@@ -1263,11 +1253,8 @@ public class ImageTool {
         canvas.drawRect(0, srcHeight, srcWidth,
                 ret.getHeight() + REFLECTION_GAP, paint);
         canvas.restore();
-        if (!reflectionBitmap.isRecycled()) {
-            reflectionBitmap.recycle();
-        }
-        if (recycle && !src.isRecycled()) {
-            src.recycle();
+        if (recycle) {
+            recycle(src);
         }
         return ret;
     }
@@ -1305,7 +1292,7 @@ public class ImageTool {
         if (isEmptyBitmap(src) || content == null) {
             return null;
         }
-        Bitmap ret = src.copy(src.getConfig(), true);
+        Bitmap ret = obtainCopy(src);
         Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
         Canvas canvas = new Canvas(ret);
         paint.setAlpha(alpha);
@@ -1314,8 +1301,8 @@ public class ImageTool {
         Rect bounds = new Rect();
         paint.getTextBounds(content, 0, content.length(), bounds);
         canvas.drawText(content, x, y, paint);
-        if (recycle && !src.isRecycled()) {
-            src.recycle();
+        if (recycle) {
+            recycle(src);
         }
         return ret;
     }
@@ -1349,15 +1336,15 @@ public class ImageTool {
         if (isEmptyBitmap(src)) {
             return null;
         }
-        Bitmap ret = src.copy(src.getConfig(), true);
+        Bitmap ret = obtainCopy(src);
         if (!isEmptyBitmap(watermark)) {
             Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
             Canvas canvas = new Canvas(ret);
             paint.setAlpha(alpha);
             canvas.drawBitmap(watermark, x, y, paint);
         }
-        if (recycle && !src.isRecycled()) {
-            src.recycle();
+        if (recycle) {
+            recycle(src);
         }
         return ret;
     }
@@ -1369,7 +1356,7 @@ public class ImageTool {
      * @return alpha位图
      */
     public static Bitmap toAlpha(Bitmap src) {
-        return toAlpha(src);
+        return toAlpha(src, false);
     }
 
     /**
@@ -1384,8 +1371,8 @@ public class ImageTool {
             return null;
         }
         Bitmap ret = src.extractAlpha();
-        if (recycle && !src.isRecycled()) {
-            src.recycle();
+        if (recycle) {
+            recycle(src);
         }
         return ret;
     }
@@ -1441,8 +1428,7 @@ public class ImageTool {
         if (isEmptyBitmap(src)) {
             return null;
         }
-        Bitmap grayBitmap = Bitmap.createBitmap(src.getWidth(),
-                src.getHeight(), Bitmap.Config.RGB_565);
+        Bitmap grayBitmap = BitmapPool.get().get(src.getWidth(), src.getHeight(), Bitmap.Config.RGB_565);
         Canvas canvas = new Canvas(grayBitmap);
         Paint paint = new Paint();
         ColorMatrix colorMatrix = new ColorMatrix();
@@ -1450,8 +1436,8 @@ public class ImageTool {
         ColorMatrixColorFilter colorMatrixColorFilter = new ColorMatrixColorFilter(colorMatrix);
         paint.setColorFilter(colorMatrixColorFilter);
         canvas.drawBitmap(src, 0, 0, paint);
-        if (recycle && !src.isRecycled()) {
-            src.recycle();
+        if (recycle) {
+            recycle(src);
         }
         return grayBitmap;
     }
@@ -1503,17 +1489,16 @@ public class ImageTool {
      * @return {@code true}: 成功<br>{@code false}: 失败
      */
     public static boolean save(Bitmap src, File file, CompressFormat format, boolean recycle) {
-        if (isEmptyBitmap(src) || FileTool.get().getFileOperatorUtil().createFile(file) != null) {
+        if (isEmptyBitmap(src) || FileTool.get().getFileOperatorUtil().createFile(file, true) == null) {
             return false;
         }
-        System.out.println(src.getWidth() + ", " + src.getHeight());
         OutputStream os = null;
         boolean ret = false;
         try {
             os = new BufferedOutputStream(new FileOutputStream(file));
             ret = src.compress(format, 100, os);
-            if (recycle && !src.isRecycled()) {
-                src.recycle();
+            if (recycle) {
+                recycle(src);
             }
         } catch (IOException e) {
             e.printStackTrace();
@@ -1654,6 +1639,96 @@ public class ImageTool {
         return src == null || src.getWidth() == 0 || src.getHeight() == 0;
     }
 
+    /**
+     * 回收图片，可复用的图片会放入 {@link BitmapPool}，之后不能再使用该图片
+     *
+     * @param bitmap 要回收的图片
+     */
+    public static void recycle(Bitmap bitmap) {
+        BitmapPool.get().put(bitmap);
+    }
+
+    /**
+     * 从复用池获取与源图片格式相同的透明图片
+     *
+     * @param width  宽度
+     * @param height 高度
+     * @param src    源图片
+     * @return 可绘制的图片
+     */
+    private static Bitmap obtainBitmap(int width, int height, Bitmap src) {
+        Bitmap ret = BitmapPool.get().get(width, height, src.getConfig());
+        ret.setHasAlpha(src.hasAlpha());
+        ret.setDensity(src.getDensity());
+        return ret;
+    }
+
+    /**
+     * 从复用池获取源图片的可变副本
+     *
+     * @param src 源图片
+     * @return 源图片的副本
+     */
+    private static Bitmap obtainCopy(Bitmap src) {
+        Bitmap ret = obtainBitmap(src.getWidth(), src.getHeight(), src);
+        new Canvas(ret).drawBitmap(src, 0, 0, null);
+        return ret;
+    }
+
+    /**
+     * 按矩阵变换图片，结果的左上角对齐变换后的边界，多个变换可以先合并到一个矩阵中只绘制一次
+     *
+     * @param src    源图片
+     * @param matrix 变换矩阵
+     * @return 变换后的图片
+     */
+    public static Bitmap transform(Bitmap src, Matrix matrix) {
+        if (isEmptyBitmap(src)) {
+            return null;
+        }
+        if (matrix.isIdentity()) {
+            return src;
+        }
+        return transform(src, matrix, true);
+    }
+
+    /**
+     * 按矩阵变换图片，输出与 {@link Bitmap#createBitmap(Bitmap, int, int, int, int, Matrix, boolean)} 一致，
+     * 目标图片从复用池获取
+     *
+     * @param src    源图片
+     * @param matrix 变换矩阵
+     * @param filter 是否过滤
+     * @return 变换后的图片
+     */
+    private static Bitmap transform(Bitmap src, Matrix matrix, boolean filter) {
+        RectF bounds = new RectF(0, 0, src.getWidth(), src.getHeight());
+        matrix.mapRect(bounds);
+        int width = Math.round(bounds.width());
+        int height = Math.round(bounds.height());
+        if (width <= 0 || height <= 0) {
+            return null;
+        }
+        boolean transformed = !matrix.rectStaysRect();
+        Bitmap.Config config = src.getConfig();
+        if (transformed || (config != Bitmap.Config.RGB_565 && config != Bitmap.Config.ALPHA_8)) {
+            config = Bitmap.Config.ARGB_8888;
+        }
+        Bitmap ret = BitmapPool.get().get(width, height, config);
+        ret.setHasAlpha(transformed || src.hasAlpha());
+        ret.setDensity(src.getDensity());
+        Paint paint = new Paint();
+        paint.setFilterBitmap(filter);
+        if (transformed) {
+            paint.setAntiAlias(true);
+        }
+        Canvas canvas = new Canvas(ret);
+        canvas.translate(-bounds.left, -bounds.top);
+        canvas.concat(matrix);
+        canvas.drawBitmap(src, 0, 0, paint);
+        return ret;
+    }
+
     /**
      * 按缩放压缩
      *
@@ -1732,8 +1807,8 @@ public class ImageTool {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         src.compress(CompressFormat.JPEG, quality, baos);
         byte[] bytes = baos.toByteArray();
-        if (recycle && !src.isRecycled()) {
-            src.recycle();
+        if (recycle) {
+            recycle(src);
         }
         return BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
     }
@@ -1761,23 +1836,31 @@ public class ImageTool {
         if (isEmptyBitmap(src) || maxByteSize <= 0) {
             return null;
         }
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        int quality = 100;
-        src.compress(CompressFormat.JPEG, quality, baos);
-        while (baos.toByteArray().length > maxByteSize && quality >= 0) {
-            baos.reset();
-            src.compress(CompressFormat.JPEG, quality -= 5, baos);
-        }
-        if (quality < 0) {
+        byte[] bytes = new QualityCompressor().compress(src, maxByteSize);
+        if (bytes == null) {
             return null;
         }
-        byte[] bytes = baos.toByteArray();
-        if (recycle && !src.isRecycled()) {
-            src.recycle();
+        if (recycle) {
+            recycle(src);
         }
         return BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
     }
 
+    /**
+     * 按质量压缩到不超过指定大小，直接返回 JPEG 数据，适合上传前的处理
+     * <p>二分查找满足大小的最高质量，最低质量仍超出时按比例缩小图片</p>
+     *
+     * @param src         源图片
+     * @param maxByteSize 允许最大值字节数
+     * @return JPEG 数据，无法压缩到指定大小时返回 null
+     */
+    public static byte[] compressToBytes(Bitmap src, long maxByteSize) {
+        if (isEmptyBitmap(src) || maxByteSize <= 0) {
+            return null;
+        }
+        return new QualityCompressor().setAllowDownscale(true).compress(src, maxByteSize);
+    }
+
     /**
      * 按采样大小压缩
      *
@@ -1806,8 +1889,8 @@ public class ImageTool {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         src.compress(CompressFormat.JPEG, 100, baos);
         byte[] bytes = baos.toByteArray();
-        if (recycle && !src.isRecycled()) {
-            src.recycle();
+        if (recycle) {
+            recycle(src);
         }
         return BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
     }
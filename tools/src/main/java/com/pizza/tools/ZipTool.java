@@ -1,6 +1,8 @@
 package com.pizza.tools;
 
 import com.pizza.tools.file.FileTool;
+import com.pizza.tools.zip.ParallelZipWriter;
+import com.pizza.tools.zip.ZipIndex;
 
 import net.lingala.zip4j.exception.ZipException;
 import net.lingala.zip4j.model.ZipParameters;
@@ -14,22 +16,19 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.List;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
 import java.util.zip.ZipOutputStream;
 
-import static com.pizza.tools.ConstantsTool.KB;
-
 /**
  * @author BoWei
  * 压缩相关工具类
+ * <p>zipFiles / zipFile 使用 {@link ParallelZipWriter} 多线程压缩，需要调整线程数或压缩级别时直接使用它；
+ * 读取类方法每次调用都会重新建立 {@link ZipIndex}，需要反复读取同一个压缩文件时直接持有 ZipIndex</p>
  */
 public class ZipTool {
 
@@ -87,21 +86,7 @@ public class ZipTool {
         if (resFiles == null || zipFile == null) {
             return false;
         }
-        ZipOutputStream zos = null;
-        try {
-            zos = new ZipOutputStream(new FileOutputStream(zipFile));
-            for (File resFile : resFiles) {
-                if (!zipFile(resFile, "", zos, comment)) {
-                    return false;
-                }
-            }
-            return true;
-        } finally {
-            if (zos != null) {
-                zos.finish();
-                FileTool.get().getFileOperatorUtil().closeIo(zos);
-            }
-        }
+        return new ParallelZipWriter().setComment(comment).zip(resFiles, zipFile);
     }
 
     /**
@@ -159,69 +144,7 @@ public class ZipTool {
         if (resFile == null || zipFile == null) {
             return false;
         }
-        ZipOutputStream zos = null;
-        try {
-            zos = new ZipOutputStream(new FileOutputStream(zipFile));
-            return zipFile(resFile, "", zos, comment);
-        } finally {
-            if (zos != null) {
-                zos.finish();
-                FileTool.get().getFileOperatorUtil().closeIo(zos);
-            }
-        }
-    }
-
-    /**
-     * 压缩文件
-     *
-     * @param resFile  待压缩文件
-     * @param rootPath 相对于压缩文件的路径
-     * @param zos      压缩文件输出流
-     * @param comment  压缩文件的注释
-     * @return {@code true}: 压缩成功<br>{@code false}: 压缩失败
-     * @throws IOException IO错误时抛出
-     */
-    private static boolean zipFile(File resFile, String rootPath, ZipOutputStream zos, String comment)
-            throws IOException {
-        rootPath = rootPath + (DataTool.isNullString(rootPath) ? "" : File.separator) + resFile.getName();
-        if (resFile.isDirectory()) {
-            File[] fileList = resFile.listFiles();
-            // 如果是空文件夹那么创建它，我把'/'换为File.separator测试就不成功，eggPain
-            if (fileList.length <= 0) {
-                ZipEntry entry = new ZipEntry(rootPath + '/');
-                if (!DataTool.isNullString(comment)) {
-                    entry.setComment(comment);
-                }
-                zos.putNextEntry(entry);
-                zos.closeEntry();
-            } else {
-                for (File file : fileList) {
-                    // 如果递归返回false则返回false
-                    if (!zipFile(file, rootPath, zos, comment)) {
-                        return false;
-                    }
-                }
-            }
-        } else {
-            InputStream is = null;
-            try {
-                is = new BufferedInputStream(new FileInputStream(resFile));
-                ZipEntry entry = new ZipEntry(rootPath);
-                if (!DataTool.isNullString(comment)) {
-                    entry.setComment(comment);
-                }
-                zos.putNextEntry(entry);
-                byte[] buffer = new byte[KB];
-                int len;
-                while ((len = is.read(buffer, 0, KB)) != -1) {
-                    zos.write(buffer, 0, len);
-                }
-                zos.closeEntry();
-            } finally {
-                FileTool.get().getFileOperatorUtil().closeIo(is);
-            }
-        }
-        return true;
+        return new ParallelZipWriter().setComment(comment).zip(resFile, zipFile);
     }
 
     /**
@@ -315,14 +238,16 @@ public class ZipTool {
             return null;
         }
         List<File> files = new ArrayList<>();
-        ZipFile zf = new ZipFile(zipFile);
-        Enumeration<?> entries = zf.entries();
-        while (entries.hasMoreElements()) {
-            ZipEntry entry = ((ZipEntry) entries.nextElement());
-            String entryName = entry.getName();
-            if (DataTool.isNullString(keyword) ||
-                    FileTool.get().getFileGlobalUtil().getFileName(entryName).toLowerCase().contains(keyword.toLowerCase())) {
+        String destPath = destDir.getCanonicalPath() + File.separator;
+        ZipIndex index = new ZipIndex(zipFile);
+        try {
+            for (ZipIndex.Entry entry : index.findByKeyword(keyword)) {
+                String entryName = entry.getName();
                 String filePath = destDir + File.separator + entryName;
+                // 拒绝通过 ../ 写到目标目录以外的条目
+                if (!(new File(filePath).getCanonicalPath() + File.separator).startsWith(destPath)) {
+                    throw new IOException("Entry is outside of the target dir: " + entryName);
+                }
                 if (entry.isDirectory()) {
                     if (!FileTool.get().createDir(filePath)) {
                         return null;
@@ -330,24 +255,14 @@ public class ZipTool {
                 } else {
                     File file = new File(filePath);
                     files.add(file);
-                    if (FileTool.get().createOrSaveFile(file) != null) {
+                    if (FileTool.get().getFileOperatorUtil().createFile(file, true) == null) {
                         return null;
                     }
-                    InputStream in = null;
-                    OutputStream out = null;
-                    try {
-                        in = new BufferedInputStream(zf.getInputStream(entry));
-                        out = new BufferedOutputStream(new FileOutputStream(file));
-                        byte buffer[] = new byte[KB];
-                        int len;
-                        while ((len = in.read(buffer)) != -1) {
-                            out.write(buffer, 0, len);
-                        }
-                    } finally {
-                        FileTool.get().getFileOperatorUtil().closeIo(in, out);
-                    }
+                    index.extract(entry, file);
                 }
             }
+        } finally {
+            FileTool.get().getFileOperatorUtil().closeIo(index);
         }
         return files;
     }
@@ -376,12 +291,16 @@ public class ZipTool {
         if (zipFile == null) {
             return null;
         }
-        List<String> paths = new ArrayList<>();
-        Enumeration<?> entries = getEntries(zipFile);
-        while (entries.hasMoreElements()) {
-            paths.add(((ZipEntry) entries.nextElement()).getName());
+        ZipIndex index = new ZipIndex(zipFile);
+        try {
+            List<String> paths = new ArrayList<>(index.size());
+            for (ZipIndex.Entry entry : index.getEntries()) {
+                paths.add(entry.getName());
+            }
+            return paths;
+        } finally {
+            FileTool.get().getFileOperatorUtil().closeIo(index);
         }
-        return paths;
     }
 
     /**
@@ -409,13 +328,16 @@ public class ZipTool {
         if (zipFile == null) {
             return null;
         }
-        List<String> comments = new ArrayList<>();
-        Enumeration<?> entries = getEntries(zipFile);
-        while (entries.hasMoreElements()) {
-            ZipEntry entry = ((ZipEntry) entries.nextElement());
-            comments.add(entry.getComment());
+        ZipIndex index = new ZipIndex(zipFile);
+        try {
+            List<String> comments = new ArrayList<>(index.size());
+            for (ZipIndex.Entry entry : index.getEntries()) {
+                comments.add(entry.getComment());
+            }
+            return comments;
+        } finally {
+            FileTool.get().getFileOperatorUtil().closeIo(index);
         }
-        return comments;
     }
 
     /**
@@ -442,7 +364,16 @@ public class ZipTool {
         if (zipFile == null) {
             return null;
         }
-        return new ZipFile(zipFile).entries();
+        ZipIndex index = new ZipIndex(zipFile);
+        try {
+            List<ZipEntry> entries = new ArrayList<>(index.size());
+            for (ZipIndex.Entry entry : index.getEntries()) {
+                entries.add(entry.toZipEntry());
+            }
+            return Collections.enumeration(entries);
+        } finally {
+            FileTool.get().getFileOperatorUtil().closeIo(index);
+        }
     }
 
     //----------------------------------------加密压缩------------------------------------------------
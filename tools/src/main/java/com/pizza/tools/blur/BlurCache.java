@@ -0,0 +1,158 @@
+package com.pizza.tools.blur;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.util.LruCache;
+
+/**
+ * @Description: 模糊结果缓存
+ * <p>
+ * 以截图内容的哈希和 {@link BlurFactor} 的各项参数为键，按字节数限制大小，最近最少使用的先淘汰。
+ * 同一界面上反复弹出的对话框可以直接复用上一次的模糊结果，不需要重新模糊。
+ * 缓存中的图片被共享，使用者不能回收或修改。
+ * </p>
+ */
+public class BlurCache {
+
+    private static volatile BlurCache singleton;
+
+    private final LruCache<Key, Bitmap> cache;
+    private boolean callbacksRegistered;
+
+    private final ComponentCallbacks2 callbacks = new ComponentCallbacks2() {
+        @Override
+        public void onTrimMemory(int level) {
+            trimMemory(level);
+        }
+
+        @Override
+        public void onConfigurationChanged(Configuration newConfig) {
+        }
+
+        @Override
+        public void onLowMemory() {
+            clear();
+        }
+    };
+
+    public BlurCache(int maxSize) {
+        cache = new LruCache<Key, Bitmap>(maxSize) {
+            @Override
+            protected int sizeOf(Key key, Bitmap value) {
+                return value.getAllocationByteCount();
+            }
+        };
+    }
+
+    /**
+     * 全局缓存，默认为最大可用内存的 1/16
+     */
+    public static BlurCache get() {
+        if (singleton == null) {
+            synchronized (BlurCache.class) {
+                if (singleton == null) {
+                    singleton = new BlurCache((int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 16));
+                }
+            }
+        }
+        return singleton;
+    }
+
+    Bitmap get(Key key) {
+        Bitmap bitmap = cache.get(key);
+        if (bitmap != null && bitmap.isRecycled()) {
+            cache.remove(key);
+            return null;
+        }
+        return bitmap;
+    }
+
+    void put(Key key, Bitmap bitmap) {
+        if (bitmap != null) {
+            cache.put(key, bitmap);
+        }
+    }
+
+    /**
+     * 向 Application 注册内存回调，只注册一次。第一次截图时自动调用
+     */
+    synchronized void registerCallbacks(Context context) {
+        if (callbacksRegistered) {
+            return;
+        }
+        Context appContext = context.getApplicationContext();
+        if (appContext == null) {
+            appContext = context;
+        }
+        appContext.registerComponentCallbacks(callbacks);
+        callbacksRegistered = true;
+    }
+
+    /**
+     * 清空缓存，同时释放截图使用的缓冲
+     */
+    public void clear() {
+        cache.evictAll();
+        ViewCapture.release();
+    }
+
+    /**
+     * 响应系统内存回调，第一次截图时已向 Application 注册，一般不需要手动调用。
+     * 界面不可见后截图已经没有用处，和一半的缓存一起释放
+     *
+     * @param level
+     */
+    public void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            clear();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            cache.trimToSize(cache.maxSize() / 2);
+            ViewCapture.release();
+        }
+    }
+
+    /**
+     * 缓存键，参数在创建时拷贝，之后修改 {@link BlurFactor} 不影响已有的键
+     */
+    static final class Key {
+        final long contentHash;
+        final int width;
+        final int height;
+        final int radius;
+        final int sampling;
+        final int color;
+
+        Key(long contentHash, BlurFactor factor) {
+            this.contentHash = contentHash;
+            this.width = factor.width;
+            this.height = factor.height;
+            this.radius = factor.radius;
+            this.sampling = factor.sampling;
+            this.color = factor.color;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return contentHash == other.contentHash && width == other.width && height == other.height
+                    && radius == other.radius && sampling == other.sampling && color == other.color;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = (int) (contentHash ^ (contentHash >>> 32));
+            result = 31 * result + width;
+            result = 31 * result + height;
+            result = 31 * result + radius;
+            result = 31 * result + sampling;
+            result = 31 * result + color;
+            return result;
+        }
+    }
+}
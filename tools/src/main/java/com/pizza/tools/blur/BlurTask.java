@@ -7,8 +7,13 @@ import android.os.Looper;
 import android.view.View;
 
 import java.lang.ref.WeakReference;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Copyright (C) 2020 Wasabeef
@@ -26,51 +31,183 @@ import java.util.concurrent.Executors;
  * limitations under the License.
  */
 
+/**
+ * 模糊在固定大小的线程池中执行，只有结果回调切换到主线程。
+ * 指定了目标 View 的任务，同一目标只保留最新的一个，目标从窗口移除时取消。
+ */
 class BlurTask {
 
   public interface Callback {
     void done(Bitmap bitmap);
   }
 
+  private static final int POOL_SIZE =
+    Math.max(1, Math.min(2, Runtime.getRuntime().availableProcessors() - 1));
+  private static final ThreadPoolExecutor THREAD_POOL = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE,
+    30L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+    @Override
+    public Thread newThread(Runnable r) {
+      Thread thread = new Thread(r, "BlurTask");
+      thread.setDaemon(true);
+      return thread;
+    }
+  });
+  private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+  /**
+   * 每个目标正在等待或执行的任务，只在主线程访问
+   */
+  private static final Map<View, BlurTask> PENDING = new WeakHashMap<>();
+
+  static {
+    THREAD_POOL.allowCoreThreadTimeOut(true);
+  }
+
   private final WeakReference<Context> contextWeakRef;
   private final BlurFactor factor;
   private final Bitmap bitmap;
   private final Callback callback;
-  private static final ExecutorService THREAD_POOL = Executors.newCachedThreadPool();
+  private final View target;
+  /**
+   * 截图的缓存键和命中的结果，直接传入图片时为空
+   */
+  private final BlurCache.Key key;
+  private final Bitmap cached;
+  private Future<?> future;
+  private volatile boolean cancelled;
+
+  private final View.OnAttachStateChangeListener detachListener = new View.OnAttachStateChangeListener() {
+    @Override
+    public void onViewAttachedToWindow(View v) {
+    }
+
+    @Override
+    public void onViewDetachedFromWindow(View v) {
+      cancel();
+    }
+  };
 
   public BlurTask(View target, BlurFactor factor, Callback callback) {
+    this(target, factor, target, callback);
+  }
+
+  /**
+   * @param capture 截图的 View
+   * @param target  结果显示的 View，用于合并同一目标的请求和在移除时取消，可以为空
+   */
+  public BlurTask(View capture, BlurFactor factor, View target, Callback callback) {
     this.factor = factor;
     this.callback = callback;
-    this.contextWeakRef = new WeakReference<>(target.getContext());
+    this.contextWeakRef = new WeakReference<>(capture.getContext());
+    this.target = target;
 
-    target.setDrawingCacheEnabled(true);
-    target.destroyDrawingCache();
-    target.setDrawingCacheQuality(View.DRAWING_CACHE_QUALITY_LOW);
-    bitmap = target.getDrawingCache();
+    Bitmap captured = ViewCapture.capture(capture, factor);
+    if (captured == null) {
+      key = null;
+      cached = null;
+      bitmap = null;
+      return;
+    }
+    key = new BlurCache.Key(ViewCapture.hash(captured), factor);
+    cached = BlurCache.get().get(key);
+    // 截图会被下一次截图覆盖，未命中缓存时拷贝一份给后台线程
+    bitmap = cached == null ? captured.copy(Bitmap.Config.ARGB_8888, true) : null;
   }
 
   public BlurTask(Context context, Bitmap bitmap, BlurFactor factor, Callback callback) {
+    this(context, bitmap, factor, null, callback);
+  }
+
+  /**
+   * @param target 结果显示的 View，用于合并同一目标的请求和在移除时取消，可以为空
+   */
+  public BlurTask(Context context, Bitmap bitmap, BlurFactor factor, View target, Callback callback) {
     this.factor = factor;
     this.callback = callback;
     this.contextWeakRef = new WeakReference<>(context);
+    this.target = target;
+    this.key = null;
+    this.cached = null;
 
     this.bitmap = bitmap;
   }
 
+  /**
+   * 提交任务，需要在主线程调用
+   */
   public void execute() {
-    THREAD_POOL.execute(new Runnable() {
+    if (target != null) {
+      BlurTask previous = PENDING.put(target, this);
+      if (previous != null) {
+        previous.cancel();
+      }
+      target.addOnAttachStateChangeListener(detachListener);
+    }
+    if (cached != null) {
+      // 命中缓存时不经过线程池，直接在主线程回调
+      deliver(cached);
+      return;
+    }
+    future = THREAD_POOL.submit(new Runnable() {
       @Override
       public void run() {
         Context context = contextWeakRef.get();
-        if (callback != null) {
-          new Handler(Looper.getMainLooper()).post(new Runnable() {
+        if (cancelled || context == null || callback == null) {
+          MAIN_HANDLER.post(new Runnable() {
             @Override
             public void run() {
-              callback.done(Blur.of(context, bitmap, factor));
+              finish();
             }
           });
+          return;
+        }
+        Bitmap blurred = null;
+        if (key == null) {
+          blurred = Blur.of(context, bitmap, factor);
+        } else if (bitmap != null) {
+          blurred = Blur.blurSampled(context, bitmap, factor);
+          BlurCache.get().put(key, blurred);
         }
+        deliver(blurred);
       }
     });
   }
+
+  private void deliver(final Bitmap blurred) {
+    MAIN_HANDLER.post(new Runnable() {
+      @Override
+      public void run() {
+        boolean deliver = !cancelled && callback != null;
+        finish();
+        if (deliver) {
+          callback.done(blurred);
+        } else if (key == null && blurred != null) {
+          // 缓存中的结果可能被其他地方使用，只回收自己生成的
+          blurred.recycle();
+        }
+      }
+    });
+  }
+
+  /**
+   * 取消任务，已经开始的模糊会执行完，但结果不会回调，需要在主线程调用
+   */
+  public void cancel() {
+    if (cancelled) {
+      return;
+    }
+    cancelled = true;
+    if (future != null && future.cancel(false)) {
+      THREAD_POOL.purge();
+    }
+    finish();
+  }
+
+  private void finish() {
+    if (target != null) {
+      target.removeOnAttachStateChangeListener(detachListener);
+      if (PENDING.get(target) == this) {
+        PENDING.remove(target);
+      }
+    }
+  }
 }
@@ -102,8 +102,7 @@ public class Blurry {
         BlurTask task = new BlurTask(target, factor, new BlurTask.Callback() {
           @Override
           public void done(Bitmap bitmap) {
-            final BitmapDrawable drawable =
-              new BitmapDrawable(target.getResources(), Blur.of(context, bitmap, factor));
+            final BitmapDrawable drawable = new BitmapDrawable(target.getResources(), bitmap);
             addView(target, drawable);
           }
         });
@@ -143,7 +142,7 @@ public class Blurry {
       factor.height = bitmap.getHeight();
 
       if (async) {
-        BlurTask task = new BlurTask(target.getContext(), bitmap, factor, new BlurTask.Callback() {
+        BlurTask task = new BlurTask(target.getContext(), bitmap, factor, target, new BlurTask.Callback() {
           @Override
           public void done(Bitmap bitmap) {
             BitmapDrawable drawable = new BitmapDrawable(context.getResources(), bitmap);
@@ -178,7 +177,7 @@ public class Blurry {
       factor.height = capture.getMeasuredHeight();
 
       if (async) {
-        BlurTask task = new BlurTask(capture, factor, new BlurTask.Callback() {
+        BlurTask task = new BlurTask(capture, factor, target, new BlurTask.Callback() {
           @Override
           public void done(Bitmap bitmap) {
             BitmapDrawable drawable = new BitmapDrawable(context.getResources(), bitmap);
@@ -192,6 +191,9 @@ public class Blurry {
       }
     }
 
+    /**
+     * 返回的图片可能来自模糊缓存，不能回收
+     */
     public Bitmap get() {
       if (async) throw new IllegalArgumentException("Use getAsync() instead of async().");
       factor.width = capture.getMeasuredWidth();
@@ -0,0 +1,209 @@
+package com.pizza.tools.blur;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.renderscript.Allocation;
+import android.renderscript.Element;
+import android.renderscript.RSRuntimeException;
+import android.renderscript.RenderScript;
+import android.renderscript.ScriptIntrinsicBlur;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+
+/**
+ * @Description: RenderScript 模糊引擎
+ * <p>
+ * 长期持有一个 RenderScript 上下文和 {@link ScriptIntrinsicBlur}，
+ * 输入输出的 Allocation 按图片尺寸和格式缓存最近使用的几组，连续模糊同尺寸的图片时只需拷贝像素。
+ * 首次创建上下文时向 Application 注册内存回调，系统内存紧张时释放全部资源，下次使用时重新创建。
+ * 只支持 ARGB_8888 格式，其他格式或 RenderScript 不可用时抛出 {@link RSRuntimeException}，
+ * 调用者可以回退到 {@link StackBlur}。
+ * </p>
+ */
+public class RenderScriptBlur {
+
+    /**
+     * ScriptIntrinsicBlur 支持的最大半径
+     */
+    public static final float MAX_RADIUS = 25f;
+    /**
+     * 缓存的 Allocation 组数
+     */
+    private static final int MAX_CACHED_ALLOCATIONS = 3;
+
+    private static volatile RenderScriptBlur singleton;
+
+    private final LinkedList<Allocations> allocations = new LinkedList<>();
+    private RenderScript rs;
+    private ScriptIntrinsicBlur script;
+    private boolean callbacksRegistered;
+
+    private final ComponentCallbacks2 callbacks = new ComponentCallbacks2() {
+        @Override
+        public void onTrimMemory(int level) {
+            trimMemory(level);
+        }
+
+        @Override
+        public void onConfigurationChanged(Configuration newConfig) {
+        }
+
+        @Override
+        public void onLowMemory() {
+            release();
+        }
+    };
+
+    public static RenderScriptBlur get() {
+        if (singleton == null) {
+            synchronized (RenderScriptBlur.class) {
+                if (singleton == null) {
+                    singleton = new RenderScriptBlur();
+                }
+            }
+        }
+        return singleton;
+    }
+
+    /**
+     * 原地模糊图片
+     *
+     * @param context 上下文，只使用其 Application
+     * @param bitmap  ARGB_8888 格式的可变图片
+     * @param radius  模糊半径，会被限制在 (0, 25] 内
+     * @return 传入的图片
+     * @throws RSRuntimeException 格式不支持或 RenderScript 不可用
+     */
+    public synchronized Bitmap blur(Context context, Bitmap bitmap, float radius) throws RSRuntimeException {
+        if (bitmap.getConfig() != Bitmap.Config.ARGB_8888) {
+            throw new RSRuntimeException("Unsupported bitmap config: " + bitmap.getConfig());
+        }
+        if (radius > MAX_RADIUS) {
+            radius = MAX_RADIUS;
+        } else if (radius <= 0) {
+            radius = 1.0f;
+        }
+        ensureScript(context);
+        Allocations entry = obtainAllocations(bitmap);
+        entry.input.copyFrom(bitmap);
+        script.setInput(entry.input);
+        script.setRadius(radius);
+        script.forEach(entry.output);
+        entry.output.copyTo(bitmap);
+        return bitmap;
+    }
+
+    /**
+     * 释放缓存的 Allocation，保留上下文和脚本
+     */
+    public synchronized void clearAllocations() {
+        for (Allocations entry : allocations) {
+            entry.destroy();
+        }
+        allocations.clear();
+    }
+
+    /**
+     * 释放全部资源，下次模糊时重新创建
+     */
+    public synchronized void release() {
+        clearAllocations();
+        if (script != null) {
+            script.destroy();
+            script = null;
+        }
+        if (rs != null) {
+            rs.destroy();
+            rs = null;
+        }
+    }
+
+    /**
+     * 响应系统内存回调，创建上下文时已自动注册
+     *
+     * @param level
+     */
+    public void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            release();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            clearAllocations();
+        }
+    }
+
+    private void ensureScript(Context context) {
+        if (rs != null) {
+            return;
+        }
+        Context appContext = context.getApplicationContext();
+        if (appContext == null) {
+            appContext = context;
+        }
+        rs = RenderScript.create(appContext);
+        rs.setMessageHandler(new RenderScript.RSMessageHandler());
+        try {
+            script = ScriptIntrinsicBlur.create(rs, Element.U8_4(rs));
+        } catch (RuntimeException e) {
+            rs.destroy();
+            rs = null;
+            throw e;
+        }
+        if (!callbacksRegistered) {
+            appContext.registerComponentCallbacks(callbacks);
+            callbacksRegistered = true;
+        }
+    }
+
+    /**
+     * 查找尺寸和格式相同的 Allocation，没有时新建并淘汰最久未用的
+     */
+    private Allocations obtainAllocations(Bitmap bitmap) {
+        Iterator<Allocations> iterator = allocations.iterator();
+        while (iterator.hasNext()) {
+            Allocations entry = iterator.next();
+            if (entry.matches(bitmap)) {
+                iterator.remove();
+                allocations.addFirst(entry);
+                return entry;
+            }
+        }
+        Allocation input = Allocation.createFromBitmap(rs, bitmap, Allocation.MipmapControl.MIPMAP_NONE,
+                Allocation.USAGE_SCRIPT);
+        Allocation output = Allocation.createTyped(rs, input.getType());
+        Allocations entry = new Allocations(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig(), input, output);
+        allocations.addFirst(entry);
+        while (allocations.size() > MAX_CACHED_ALLOCATIONS) {
+            allocations.removeLast().destroy();
+        }
+        return entry;
+    }
+
+    private static final class Allocations {
+        final int width;
+        final int height;
+        final Bitmap.Config config;
+        final Allocation input;
+        final Allocation output;
+
+        Allocations(int width, int height, Bitmap.Config config, Allocation input, Allocation output) {
+            this.width = width;
+            this.height = height;
+            this.config = config;
+            this.input = input;
+            this.output = output;
+        }
+
+        boolean matches(Bitmap bitmap) {
+            return bitmap.getWidth() == width && bitmap.getHeight() == height && bitmap.getConfig() == config;
+        }
+
+        void destroy() {
+            input.destroy();
+            output.destroy();
+        }
+    }
+}
@@ -0,0 +1,389 @@
+package com.pizza.tools.blur;
+
+import android.graphics.Bitmap;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * @Description: Stack 模糊引擎，RenderScript 不可用时的模糊实现
+ * <p>
+ * 算法来自 Mario Klingemann 的 Stack Blur，输出与原实现逐像素一致，保留源图片的透明通道。
+ * 水平和垂直两趟分别按行、按列切分为若干段，在 {@link ForkJoinPool} 中并行执行；
+ * 每个线程持有自己的滑动窗口，不超过 1024 * 1024 像素的整帧缓冲在调用之间复用，
+ * 相同半径的除法查找表只生成一次，连续模糊同尺寸的帧时不会产生新的分配。
+ * </p>
+ */
+public class StackBlur {
+
+    /**
+     * 像素数少于该值时在调用线程中直接执行，拆分的开销高于并行的收益
+     */
+    private static final int PARALLEL_THRESHOLD = 128 * 128;
+    /**
+     * 每个线程分到的段数，段数多一些便于负载均衡
+     */
+    private static final int BANDS_PER_THREAD = 4;
+    /**
+     * 超过该像素数的缓冲用完后不保留，避免偶尔模糊一张大图后长期占用内存
+     */
+    private static final int MAX_RETAINED_PIXELS = 1024 * 1024;
+
+    private static volatile StackBlur singleton;
+
+    private final ForkJoinPool pool;
+    /**
+     * 各线程的滑动窗口，按半径扩容
+     */
+    private final ThreadLocal<int[]> windows = new ThreadLocal<>();
+    /**
+     * 最近一次使用的查找表，半径相同时复用
+     */
+    private volatile DivTable divTable;
+    /**
+     * 空闲的整帧缓冲，被占用时为 null，并发调用或尺寸变大时另行分配
+     */
+    private int[] pixelBuffer;
+    private int[] rowBuffer;
+
+    public StackBlur(int parallelism) {
+        this.pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+    }
+
+    /**
+     * 全局引擎，并行度为 CPU 核数
+     */
+    public static StackBlur get() {
+        if (singleton == null) {
+            synchronized (StackBlur.class) {
+                if (singleton == null) {
+                    singleton = new StackBlur(Runtime.getRuntime().availableProcessors());
+                }
+            }
+        }
+        return singleton;
+    }
+
+    /**
+     * 原地模糊图片
+     *
+     * @param bitmap 可变的图片
+     * @param radius 模糊半径，小于 1 时不处理
+     * @return 传入的图片
+     */
+    public Bitmap blur(Bitmap bitmap, int radius) {
+        if (radius < 1) {
+            return bitmap;
+        }
+        int w = bitmap.getWidth();
+        int h = bitmap.getHeight();
+        int[] pix = takePixelBuffer(w * h);
+        bitmap.getPixels(pix, 0, w, 0, 0, w, h);
+        blur(pix, w, h, radius);
+        bitmap.setPixels(pix, 0, w, 0, 0, w, h);
+        if (pix.length <= MAX_RETAINED_PIXELS) {
+            synchronized (this) {
+                if (pixelBuffer == null || pixelBuffer.length < pix.length) {
+                    pixelBuffer = pix;
+                }
+            }
+        }
+        return bitmap;
+    }
+
+    /**
+     * 原地模糊像素数组，适合调用者自己管理缓冲的场景
+     *
+     * @param pix    ARGB 像素，行宽为 w
+     * @param w      宽度
+     * @param h      高度
+     * @param radius 模糊半径，小于 1 时不处理
+     */
+    public void blur(int[] pix, int w, int h, int radius) {
+        if (radius < 1) {
+            return;
+        }
+        int[] rows = takeRowBuffer(w * h);
+        blur(pix, rows, w, h, radius);
+        if (rows.length <= MAX_RETAINED_PIXELS) {
+            synchronized (this) {
+                if (rowBuffer == null || rowBuffer.length < rows.length) {
+                    rowBuffer = rows;
+                }
+            }
+        }
+    }
+
+    private synchronized int[] takePixelBuffer(int size) {
+        int[] buffer = pixelBuffer;
+        if (buffer == null || buffer.length < size) {
+            return new int[size];
+        }
+        pixelBuffer = null;
+        return buffer;
+    }
+
+    private synchronized int[] takeRowBuffer(int size) {
+        int[] buffer = rowBuffer;
+        if (buffer == null || buffer.length < size) {
+            return new int[size];
+        }
+        rowBuffer = null;
+        return buffer;
+    }
+
+    /**
+     * 释放空闲的整帧缓冲和查找表
+     */
+    public void clear() {
+        synchronized (this) {
+            pixelBuffer = null;
+            rowBuffer = null;
+        }
+        divTable = null;
+    }
+
+    private void blur(int[] pix, int[] rows, int w, int h, int radius) {
+        int[] dv = getDivTable(radius);
+        if (pool == null || w * h < PARALLEL_THRESHOLD) {
+            blurRows(pix, rows, w, h, radius, dv, 0, h);
+            blurColumns(pix, rows, w, h, radius, dv, 0, w);
+            return;
+        }
+        int bands = pool.getParallelism() * BANDS_PER_THREAD;
+        pool.invoke(new Pass(pix, rows, w, h, radius, dv, false, 0, h, Math.max(1, h / bands)));
+        pool.invoke(new Pass(pix, rows, w, h, radius, dv, true, 0, w, Math.max(1, w / bands)));
+    }
+
+    private int[] getDivTable(int radius) {
+        DivTable table = divTable;
+        if (table == null || table.radius != radius) {
+            table = new DivTable(radius);
+            divTable = table;
+        }
+        return table.dv;
+    }
+
+    private int[] getWindow(int div) {
+        int[] window = windows.get();
+        if (window == null || window.length < div * 3) {
+            window = new int[div * 3];
+            windows.set(window);
+        }
+        return window;
+    }
+
+    /**
+     * 水平一趟，读取 pix 的 [from, to) 行，RGB 结果打包写入 rows
+     */
+    private void blurRows(int[] pix, int[] rows, int w, int h, int radius, int[] dv, int from, int to) {
+        int wm = w - 1;
+        int div = radius + radius + 1;
+        int r1 = radius + 1;
+        int[] stack = getWindow(div);
+        int rsum, gsum, bsum, routsum, goutsum, boutsum, rinsum, ginsum, binsum;
+        int p, s, rbs, stackpointer;
+        for (int y = from; y < to; y++) {
+            int yw = y * w;
+            rinsum = ginsum = binsum = routsum = goutsum = boutsum = rsum = gsum = bsum = 0;
+            for (int i = -radius; i <= radius; i++) {
+                p = pix[yw + Math.min(wm, Math.max(i, 0))];
+                s = (i + radius) * 3;
+                stack[s] = (p & 0xff0000) >> 16;
+                stack[s + 1] = (p & 0x00ff00) >> 8;
+                stack[s + 2] = (p & 0x0000ff);
+                rbs = r1 - Math.abs(i);
+                rsum += stack[s] * rbs;
+                gsum += stack[s + 1] * rbs;
+                bsum += stack[s + 2] * rbs;
+                if (i > 0) {
+                    rinsum += stack[s];
+                    ginsum += stack[s + 1];
+                    binsum += stack[s + 2];
+                } else {
+                    routsum += stack[s];
+                    goutsum += stack[s + 1];
+                    boutsum += stack[s + 2];
+                }
+            }
+            stackpointer = radius;
+            for (int x = 0; x < w; x++) {
+                rows[yw + x] = (dv[rsum] << 16) | (dv[gsum] << 8) | dv[bsum];
+
+                rsum -= routsum;
+                gsum -= goutsum;
+                bsum -= boutsum;
+
+                s = ((stackpointer - radius + div) % div) * 3;
+                routsum -= stack[s];
+                goutsum -= stack[s + 1];
+                boutsum -= stack[s + 2];
+
+                p = pix[yw + Math.min(x + r1, wm)];
+                stack[s] = (p & 0xff0000) >> 16;
+                stack[s + 1] = (p & 0x00ff00) >> 8;
+                stack[s + 2] = (p & 0x0000ff);
+
+                rinsum += stack[s];
+                ginsum += stack[s + 1];
+                binsum += stack[s + 2];
+
+                rsum += rinsum;
+                gsum += ginsum;
+                bsum += binsum;
+
+                stackpointer = (stackpointer + 1) % div;
+                s = stackpointer * 3;
+                routsum += stack[s];
+                goutsum += stack[s + 1];
+                boutsum += stack[s + 2];
+
+                rinsum -= stack[s];
+                ginsum -= stack[s + 1];
+                binsum -= stack[s + 2];
+            }
+        }
+    }
+
+    /**
+     * 垂直一趟，读取 rows 的 [from, to) 列，结果写回 pix 并保留原透明度
+     */
+    private void blurColumns(int[] pix, int[] rows, int w, int h, int radius, int[] dv, int from, int to) {
+        int hm = h - 1;
+        int div = radius + radius + 1;
+        int r1 = radius + 1;
+        int[] stack = getWindow(div);
+        int rsum, gsum, bsum, routsum, goutsum, boutsum, rinsum, ginsum, binsum;
+        int p, s, rbs, stackpointer, yp, yi;
+        for (int x = from; x < to; x++) {
+            rinsum = ginsum = binsum = routsum = goutsum = boutsum = rsum = gsum = bsum = 0;
+            yp = -radius * w;
+            for (int i = -radius; i <= radius; i++) {
+                p = rows[Math.max(0, yp) + x];
+                s = (i + radius) * 3;
+                stack[s] = (p >> 16) & 0xff;
+                stack[s + 1] = (p >> 8) & 0xff;
+                stack[s + 2] = p & 0xff;
+                rbs = r1 - Math.abs(i);
+                rsum += stack[s] * rbs;
+                gsum += stack[s + 1] * rbs;
+                bsum += stack[s + 2] * rbs;
+                if (i > 0) {
+                    rinsum += stack[s];
+                    ginsum += stack[s + 1];
+                    binsum += stack[s + 2];
+                } else {
+                    routsum += stack[s];
+                    goutsum += stack[s + 1];
+                    boutsum += stack[s + 2];
+                }
+                if (i < hm) {
+                    yp += w;
+                }
+            }
+            yi = x;
+            stackpointer = radius;
+            for (int y = 0; y < h; y++) {
+                pix[yi] = (0xff000000 & pix[yi]) | (dv[rsum] << 16) | (dv[gsum] << 8) | dv[bsum];
+
+                rsum -= routsum;
+                gsum -= goutsum;
+                bsum -= boutsum;
+
+                s = ((stackpointer - radius + div) % div) * 3;
+                routsum -= stack[s];
+                goutsum -= stack[s + 1];
+                boutsum -= stack[s + 2];
+
+                p = rows[x + Math.min(y + r1, hm) * w];
+                stack[s] = (p >> 16) & 0xff;
+                stack[s + 1] = (p >> 8) & 0xff;
+                stack[s + 2] = p & 0xff;
+
+                rinsum += stack[s];
+                ginsum += stack[s + 1];
+                binsum += stack[s + 2];
+
+                rsum += rinsum;
+                gsum += ginsum;
+                bsum += binsum;
+
+                stackpointer = (stackpointer + 1) % div;
+                s = stackpointer * 3;
+                routsum += stack[s];
+                goutsum += stack[s + 1];
+                boutsum += stack[s + 2];
+
+                rinsum -= stack[s];
+                ginsum -= stack[s + 1];
+                binsum -= stack[s + 2];
+
+                yi += w;
+            }
+        }
+    }
+
+    /**
+     * 一趟模糊中的一段行或列，超过段大小时对半拆分
+     */
+    private final class Pass extends RecursiveAction {
+        private final int[] pix;
+        private final int[] rows;
+        private final int w;
+        private final int h;
+        private final int radius;
+        private final int[] dv;
+        private final boolean vertical;
+        private final int from;
+        private final int to;
+        private final int bandSize;
+
+        Pass(int[] pix, int[] rows, int w, int h, int radius, int[] dv,
+             boolean vertical, int from, int to, int bandSize) {
+            this.pix = pix;
+            this.rows = rows;
+            this.w = w;
+            this.h = h;
+            this.radius = radius;
+            this.dv = dv;
+            this.vertical = vertical;
+            this.from = from;
+            this.to = to;
+            this.bandSize = bandSize;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= bandSize) {
+                if (vertical) {
+                    blurColumns(pix, rows, w, h, radius, dv, from, to);
+                } else {
+                    blurRows(pix, rows, w, h, radius, dv, from, to);
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new Pass(pix, rows, w, h, radius, dv, vertical, from, mid, bandSize),
+                    new Pass(pix, rows, w, h, radius, dv, vertical, mid, to, bandSize));
+        }
+    }
+
+    /**
+     * 加权和除以权重总和的查找表
+     */
+    private static final class DivTable {
+        final int radius;
+        final int[] dv;
+
+        DivTable(int radius) {
+            this.radius = radius;
+            int div = radius + radius + 1;
+            int divsum = (div + 1) >> 1;
+            divsum *= divsum;
+            dv = new int[256 * divsum];
+            for (int i = 0; i < dv.length; i++) {
+                dv[i] = i / divsum;
+            }
+        }
+    }
+}
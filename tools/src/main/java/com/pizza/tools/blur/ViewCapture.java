@@ -0,0 +1,96 @@
+package com.pizza.tools.blur;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.PorterDuff;
+import android.view.View;
+
+/**
+ * @Description: View 截图
+ * <p>
+ * 按 {@link BlurFactor#sampling} 缩小后直接把 View 绘制到复用的 Bitmap 上，并叠加遮罩颜色，
+ * 代替每次都要分配整张图片的 drawing cache。截图只在下一次截图前有效，需要保留时先拷贝。
+ * 只能在主线程调用。
+ * </p>
+ */
+final class ViewCapture {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private static Bitmap bitmap;
+    private static Canvas canvas;
+    /**
+     * 逐行计算哈希时复用的一行像素
+     */
+    private static int[] row;
+
+    private ViewCapture() {
+    }
+
+    /**
+     * 截取 View 当前的内容，尺寸为 factor.width / factor.sampling 乘 factor.height / factor.sampling
+     *
+     * @return 复用的截图，尺寸为 0 时返回 null
+     */
+    static Bitmap capture(View view, BlurFactor factor) {
+        int width = factor.width / factor.sampling;
+        int height = factor.height / factor.sampling;
+        if (Helper.hasZero(width, height)) {
+            return null;
+        }
+        if (bitmap == null || bitmap.getWidth() != width || bitmap.getHeight() != height) {
+            // 截图和模糊缓存在内存不足时由系统回调释放
+            BlurCache.get().registerCallbacks(view.getContext());
+            bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            if (canvas == null) {
+                canvas = new Canvas();
+            }
+            canvas.setBitmap(bitmap);
+        } else {
+            bitmap.eraseColor(Color.TRANSPARENT);
+        }
+        int saveCount = canvas.save();
+        canvas.scale(1 / (float) factor.sampling, 1 / (float) factor.sampling);
+        canvas.translate(-view.getScrollX(), -view.getScrollY());
+        view.draw(canvas);
+        canvas.restoreToCount(saveCount);
+        if (factor.color != Color.TRANSPARENT) {
+            canvas.drawColor(factor.color, PorterDuff.Mode.SRC_ATOP);
+        }
+        return bitmap;
+    }
+
+    /**
+     * 计算截图像素的哈希，用作缓存键。逐行读取像素，不需要整张图片大小的缓冲
+     */
+    static long hash(Bitmap capture) {
+        int width = capture.getWidth();
+        int height = capture.getHeight();
+        if (row == null || row.length < width) {
+            row = new int[width];
+        }
+        long hash = FNV_OFFSET_BASIS;
+        hash = (hash ^ width) * FNV_PRIME;
+        hash = (hash ^ height) * FNV_PRIME;
+        for (int y = 0; y < height; y++) {
+            capture.getPixels(row, 0, width, 0, y, width, 1);
+            for (int x = 0; x < width; x++) {
+                hash = (hash ^ row[x]) * FNV_PRIME;
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * 释放复用的截图和像素缓冲
+     */
+    static void release() {
+        bitmap = null;
+        row = null;
+        if (canvas != null) {
+            canvas.setBitmap(null);
+        }
+    }
+}
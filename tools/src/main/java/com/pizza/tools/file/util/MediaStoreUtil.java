@@ -30,11 +30,13 @@ import androidx.annotation.RequiresApi;
 import com.pizza.tools.file.model.MediaInfoBean;
 import com.pizza.tools.file.model.RenameResult;
 import com.pizza.tools.log.LogTool;
+import com.pizza.tools.ImageTool;
 import com.pizza.tools.ToolInit;
 import com.pizza.tools.file.FileTool;
 import com.pizza.tools.file.model.MediaStoreImage;
 import com.pizza.tools.file.model.MediaStoreVideo;
 import com.pizza.tools.file.model.QuerySelectionStatement;
+import com.pizza.tools.image.RegionImageDecoder;
 
 import java.io.BufferedReader;
 import java.io.File;
@@ -808,6 +810,52 @@ public class MediaStoreUtil {
         return null;
     }
 
+    /**
+     * 获取不超过指定尺寸的图片，按采样解码，不会解码原图
+     *
+     * @param uri       图片 uri
+     * @param maxWidth  最大宽度
+     * @param maxHeight 最大高度
+     */
+    public Bitmap getBitmapFromUri(Uri uri, int maxWidth, int maxHeight) {
+        Context context = ToolInit.getApplicationContext();
+        ContentResolver contentResolver = context.getContentResolver();
+
+        ParcelFileDescriptor parcelFileDescriptor = null;
+        try {
+            parcelFileDescriptor = contentResolver.openFileDescriptor(uri, FileGlobalUtil.MODE_READ_ONLY);
+            if (parcelFileDescriptor != null) {
+                return ImageTool.getBitmap(parcelFileDescriptor.getFileDescriptor(), maxWidth, maxHeight);
+            }
+        } catch (FileNotFoundException e) {
+            LogTool.e(FileTool.TAG, e.getMessage());
+        } finally {
+            FileTool.get().getFileOperatorUtil().closeIo(parcelFileDescriptor);
+        }
+        return null;
+    }
+
+    /**
+     * 打开大图的分块解码器，用于只解码图片的部分区域，使用完后需要调用 {@link RegionImageDecoder#close()}
+     *
+     * @param uri 图片 uri
+     */
+    public RegionImageDecoder openRegionDecoder(Uri uri) {
+        Context context = ToolInit.getApplicationContext();
+        InputStream inputStream = null;
+        try {
+            inputStream = context.getContentResolver().openInputStream(uri);
+            if (inputStream != null) {
+                return RegionImageDecoder.newInstance(inputStream);
+            }
+        } catch (IOException e) {
+            LogTool.e(FileTool.TAG, e.getMessage());
+        } finally {
+            FileTool.get().getFileOperatorUtil().closeIo(inputStream);
+        }
+        return null;
+    }
+
     /**
      * ### 读取文档信息
      *
@@ -0,0 +1,257 @@
+package com.pizza.tools.image;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * @Description: Bitmap 复用池
+ * <p>
+ * 按像素格式和分配字节数分桶保存可变 Bitmap，按最近放入的顺序淘汰，总大小不超过字节预算。
+ * 取出时通过 {@link Bitmap#reconfigure(int, int, Bitmap.Config)} 调整为需要的尺寸，
+ * 也可以作为 {@link android.graphics.BitmapFactory.Options#inBitmap} 供解码复用。
+ * 放入池中的 Bitmap 不能再被外部使用。
+ * </p>
+ */
+public class BitmapPool {
+
+    /**
+     * 复用的 Bitmap 最多是需要大小的几倍，避免大图被小图长期占用
+     */
+    private static final int MAX_SIZE_MULTIPLE = 4;
+
+    private static volatile BitmapPool singleton;
+
+    private final Map<Bitmap.Config, TreeMap<Integer, ArrayDeque<Bitmap>>> buckets =
+            new EnumMap<>(Bitmap.Config.class);
+    /**
+     * 按放入顺序排列，最早放入的最先淘汰
+     */
+    private final LinkedHashMap<Bitmap, Integer> lru = new LinkedHashMap<>();
+    private long maxSize;
+    private long currentSize;
+    private int hitCount;
+    private int missCount;
+
+    public BitmapPool(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * 全局复用池，默认预算为最大可用内存的 1/8
+     */
+    public static BitmapPool get() {
+        if (singleton == null) {
+            synchronized (BitmapPool.class) {
+                if (singleton == null) {
+                    singleton = new BitmapPool(Runtime.getRuntime().maxMemory() / 8);
+                }
+            }
+        }
+        return singleton;
+    }
+
+    /**
+     * 设置字节预算，超出部分立即淘汰
+     */
+    public synchronized BitmapPool setMaxSize(long maxSize) {
+        this.maxSize = maxSize;
+        trimToSize(maxSize);
+        return this;
+    }
+
+    public synchronized long getMaxSize() {
+        return maxSize;
+    }
+
+    public synchronized long getCurrentSize() {
+        return currentSize;
+    }
+
+    public synchronized int getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized int getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * 放入复用池，不可复用的 Bitmap 会被直接回收
+     *
+     * @param bitmap
+     * @return 是否放入了复用池
+     */
+    public boolean put(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) {
+            return false;
+        }
+        if (!bitmap.isMutable() || bitmap.getConfig() == null) {
+            bitmap.recycle();
+            return false;
+        }
+        int size = bitmap.getAllocationByteCount();
+        synchronized (this) {
+            if (lru.containsKey(bitmap)) {
+                return true;
+            }
+            if (size > maxSize) {
+                bitmap.recycle();
+                return false;
+            }
+            TreeMap<Integer, ArrayDeque<Bitmap>> sizes = buckets.get(bitmap.getConfig());
+            if (sizes == null) {
+                sizes = new TreeMap<>();
+                buckets.put(bitmap.getConfig(), sizes);
+            }
+            ArrayDeque<Bitmap> bucket = sizes.get(size);
+            if (bucket == null) {
+                bucket = new ArrayDeque<>();
+                sizes.put(size, bucket);
+            }
+            bucket.addLast(bitmap);
+            lru.put(bitmap, size);
+            currentSize += size;
+            trimToSize(maxSize);
+        }
+        return true;
+    }
+
+    /**
+     * 获取指定尺寸的透明 Bitmap，池中没有合适的时新建
+     *
+     * @param width
+     * @param height
+     * @param config 为空时使用 ARGB_8888
+     * @return
+     */
+    public Bitmap get(int width, int height, Bitmap.Config config) {
+        if (config == null) {
+            config = Bitmap.Config.ARGB_8888;
+        }
+        Bitmap bitmap = getDirty(width, height, config);
+        if (bitmap == null) {
+            return Bitmap.createBitmap(width, height, config);
+        }
+        bitmap.eraseColor(Color.TRANSPARENT);
+        return bitmap;
+    }
+
+    /**
+     * 获取指定尺寸的 Bitmap，内容未清空，适合解码或整体覆盖绘制
+     *
+     * @param width
+     * @param height
+     * @param config
+     * @return 池中没有合适的时返回 null
+     */
+    public Bitmap getDirty(int width, int height, Bitmap.Config config) {
+        if (width <= 0 || height <= 0 || config == null) {
+            return null;
+        }
+        int size = getBitmapByteSize(width, height, config);
+        while (true) {
+            Bitmap bitmap = take(config, size);
+            if (bitmap == null) {
+                return null;
+            }
+            try {
+                bitmap.reconfigure(width, height, config);
+                bitmap.setHasAlpha(true);
+                return bitmap;
+            } catch (IllegalArgumentException e) {
+                // 无法调整，丢弃后继续查找
+                bitmap.recycle();
+            }
+        }
+    }
+
+    private synchronized Bitmap take(Bitmap.Config config, int size) {
+        TreeMap<Integer, ArrayDeque<Bitmap>> sizes = buckets.get(config);
+        Map.Entry<Integer, ArrayDeque<Bitmap>> entry = sizes == null ? null : sizes.ceilingEntry(size);
+        if (entry == null || entry.getKey() > (long) size * MAX_SIZE_MULTIPLE) {
+            missCount++;
+            return null;
+        }
+        // 同一分桶中取最近放入的，最早放入的留给淘汰
+        Bitmap bitmap = entry.getValue().pollLast();
+        if (entry.getValue().isEmpty()) {
+            sizes.remove(entry.getKey());
+        }
+        lru.remove(bitmap);
+        currentSize -= entry.getKey();
+        hitCount++;
+        return bitmap;
+    }
+
+    /**
+     * 淘汰最早放入的 Bitmap 直到总大小不超过指定值
+     */
+    public synchronized void trimToSize(long size) {
+        Iterator<Map.Entry<Bitmap, Integer>> iterator = lru.entrySet().iterator();
+        while (currentSize > size && iterator.hasNext()) {
+            Map.Entry<Bitmap, Integer> eldest = iterator.next();
+            iterator.remove();
+            Bitmap bitmap = eldest.getKey();
+            int bytes = eldest.getValue();
+            TreeMap<Integer, ArrayDeque<Bitmap>> sizes = buckets.get(bitmap.getConfig());
+            ArrayDeque<Bitmap> bucket = sizes.get(bytes);
+            bucket.removeFirstOccurrence(bitmap);
+            if (bucket.isEmpty()) {
+                sizes.remove(bytes);
+            }
+            currentSize -= bytes;
+            bitmap.recycle();
+        }
+    }
+
+    /**
+     * 清空复用池
+     */
+    public void clear() {
+        trimToSize(0);
+    }
+
+    /**
+     * 响应系统内存回调，可在 {@link ComponentCallbacks2#onTrimMemory(int)} 中调用
+     *
+     * @param level
+     */
+    public void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            clear();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            trimToSize(getMaxSize() / 2);
+        }
+    }
+
+    /**
+     * 计算指定尺寸和格式需要的字节数
+     */
+    public static int getBitmapByteSize(int width, int height, Bitmap.Config config) {
+        return width * height * getBytesPerPixel(config);
+    }
+
+    static int getBytesPerPixel(Bitmap.Config config) {
+        if (config == null) {
+            return 4;
+        }
+        switch (config) {
+            case ALPHA_8:
+                return 1;
+            case RGB_565:
+            case ARGB_4444:
+                return 2;
+            default:
+                return config.name().equals("RGBA_F16") ? 8 : 4;
+        }
+    }
+}
@@ -0,0 +1,529 @@
+package com.pizza.tools.image;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * @Description: 基于日志文件的磁盘 LRU 缓存
+ * <p>
+ * 每个键对应目录下的一个文件，所有操作追加记录到 journal 文件：
+ * <pre>
+ * DIRTY key         开始写入
+ * CLEAN key length  写入完成
+ * REMOVE key        写入失败或被删除
+ * READ key          被读取，用于更新访问顺序
+ * </pre>
+ * 打开缓存时回放 journal 恢复条目和访问顺序，未完成的写入会被丢弃。
+ * 总大小超过上限时在后台线程淘汰最久未使用的条目，冗余记录过多时重写 journal。
+ * </p>
+ */
+public final class DiskLruCache implements Closeable {
+
+    static final String JOURNAL_FILE = "journal";
+    static final String JOURNAL_FILE_TEMP = "journal.tmp";
+    static final String JOURNAL_FILE_BACKUP = "journal.bkp";
+    static final String MAGIC = "pizza.DiskLruCache";
+    static final String VERSION = "1";
+
+    private static final Pattern KEY_PATTERN = Pattern.compile("[a-z0-9_-]{1,120}");
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String CLEAN = "CLEAN";
+    private static final String DIRTY = "DIRTY";
+    private static final String REMOVE = "REMOVE";
+    private static final String READ = "READ";
+    /**
+     * 冗余记录超过该值且超过有效条目数时重写 journal
+     */
+    private static final int REDUNDANT_OP_COMPACT_THRESHOLD = 2000;
+
+    private final File directory;
+    private final File journalFile;
+    private final File journalFileTmp;
+    private final File journalFileBackup;
+    private long maxSize;
+    private long size;
+    private Writer journalWriter;
+    private int redundantOpCount;
+    private final LinkedHashMap<String, Entry> lruEntries = new LinkedHashMap<>(0, 0.75f, true);
+
+    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(0, 1, 60L, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "DiskLruCache");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    });
+    private final Callable<Void> cleanupCallable = new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+            synchronized (DiskLruCache.this) {
+                if (journalWriter == null) {
+                    return null;
+                }
+                trimToSize();
+                if (journalRebuildRequired()) {
+                    rebuildJournal();
+                    redundantOpCount = 0;
+                }
+            }
+            return null;
+        }
+    };
+
+    private DiskLruCache(File directory, long maxSize) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+        this.journalFile = new File(directory, JOURNAL_FILE);
+        this.journalFileTmp = new File(directory, JOURNAL_FILE_TEMP);
+        this.journalFileBackup = new File(directory, JOURNAL_FILE_BACKUP);
+    }
+
+    /**
+     * 打开缓存目录，不存在时创建
+     *
+     * @param directory 缓存目录，只能由一个缓存实例使用
+     * @param maxSize   最大字节数
+     * @return
+     * @throws IOException
+     */
+    public static DiskLruCache open(File directory, long maxSize) throws IOException {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize <= 0");
+        }
+        File backupFile = new File(directory, JOURNAL_FILE_BACKUP);
+        if (backupFile.exists()) {
+            File journalFile = new File(directory, JOURNAL_FILE);
+            if (journalFile.exists()) {
+                backupFile.delete();
+            } else {
+                renameTo(backupFile, journalFile, false);
+            }
+        }
+        DiskLruCache cache = new DiskLruCache(directory, maxSize);
+        if (cache.journalFile.exists()) {
+            try {
+                cache.readJournal();
+                cache.processJournal();
+                cache.journalWriter = new BufferedWriter(
+                        new OutputStreamWriter(new FileOutputStream(cache.journalFile, true), UTF_8));
+                return cache;
+            } catch (IOException e) {
+                // journal 损坏，清空后重新创建
+                e.printStackTrace();
+                cache.delete();
+                cache = new DiskLruCache(directory, maxSize);
+            }
+        }
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        cache.rebuildJournal();
+        return cache;
+    }
+
+    private void readJournal() throws IOException {
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(journalFile), UTF_8));
+        try {
+            String magic = reader.readLine();
+            String version = reader.readLine();
+            String blank = reader.readLine();
+            if (!MAGIC.equals(magic) || !VERSION.equals(version) || !"".equals(blank)) {
+                throw new IOException("Unexpected journal header: [" + magic + ", " + version + "]");
+            }
+            int lineCount = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                readJournalLine(line);
+                lineCount++;
+            }
+            redundantOpCount = lineCount - lruEntries.size();
+        } finally {
+            reader.close();
+        }
+    }
+
+    private void readJournalLine(String line) throws IOException {
+        String[] parts = line.split(" ");
+        if (parts.length < 2) {
+            throw new IOException("Unexpected journal line: " + line);
+        }
+        String op = parts[0];
+        String key = parts[1];
+        if (REMOVE.equals(op) && parts.length == 2) {
+            lruEntries.remove(key);
+            return;
+        }
+        Entry entry = lruEntries.get(key);
+        if (entry == null) {
+            entry = new Entry(key);
+            lruEntries.put(key, entry);
+        }
+        if (CLEAN.equals(op) && parts.length == 3) {
+            entry.readable = true;
+            entry.currentEditor = null;
+            try {
+                entry.length = Long.parseLong(parts[2]);
+            } catch (NumberFormatException e) {
+                throw new IOException("Unexpected journal line: " + line);
+            }
+        } else if (DIRTY.equals(op) && parts.length == 2) {
+            entry.currentEditor = new Editor(entry);
+        } else if (!READ.equals(op) || parts.length != 2) {
+            throw new IOException("Unexpected journal line: " + line);
+        }
+    }
+
+    /**
+     * 计算总大小，删除未完成写入的条目
+     */
+    private void processJournal() {
+        deleteIfExists(journalFileTmp);
+        for (Iterator<Entry> i = lruEntries.values().iterator(); i.hasNext(); ) {
+            Entry entry = i.next();
+            if (entry.currentEditor == null) {
+                size += entry.length;
+            } else {
+                entry.currentEditor = null;
+                deleteIfExists(entry.getCleanFile());
+                deleteIfExists(entry.getDirtyFile());
+                i.remove();
+            }
+        }
+    }
+
+    /**
+     * 只保留有效条目重写 journal
+     */
+    private synchronized void rebuildJournal() throws IOException {
+        if (journalWriter != null) {
+            journalWriter.close();
+        }
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(journalFileTmp), UTF_8));
+        try {
+            writer.write(MAGIC);
+            writer.write('\n');
+            writer.write(VERSION);
+            writer.write('\n');
+            writer.write('\n');
+            for (Entry entry : lruEntries.values()) {
+                if (entry.currentEditor != null) {
+                    writer.write(DIRTY + ' ' + entry.key + '\n');
+                } else {
+                    writer.write(CLEAN + ' ' + entry.key + ' ' + entry.length + '\n');
+                }
+            }
+        } finally {
+            writer.close();
+        }
+        if (journalFile.exists()) {
+            renameTo(journalFile, journalFileBackup, true);
+        }
+        renameTo(journalFileTmp, journalFile, false);
+        journalFileBackup.delete();
+        journalWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(journalFile, true), UTF_8));
+    }
+
+    /**
+     * 打开条目的输入流，条目不存在或正在首次写入时返回 null
+     *
+     * @param key 键，只能包含小写字母、数字、下划线和横线
+     * @return 由调用者负责关闭
+     * @throws IOException
+     */
+    public synchronized FileInputStream get(String key) throws IOException {
+        checkNotClosed();
+        validateKey(key);
+        Entry entry = lruEntries.get(key);
+        if (entry == null || !entry.readable) {
+            return null;
+        }
+        FileInputStream in;
+        try {
+            in = new FileInputStream(entry.getCleanFile());
+        } catch (FileNotFoundException e) {
+            // 文件被外部删除
+            return null;
+        }
+        redundantOpCount++;
+        journalWriter.append(READ + ' ' + key + '\n');
+        if (journalRebuildRequired()) {
+            executor.submit(cleanupCallable);
+        }
+        return in;
+    }
+
+    /**
+     * 开始写入条目
+     *
+     * @param key
+     * @return 该条目正在被写入时返回 null
+     * @throws IOException
+     */
+    public synchronized Editor edit(String key) throws IOException {
+        checkNotClosed();
+        validateKey(key);
+        Entry entry = lruEntries.get(key);
+        if (entry == null) {
+            entry = new Entry(key);
+            lruEntries.put(key, entry);
+        } else if (entry.currentEditor != null) {
+            return null;
+        }
+        Editor editor = new Editor(entry);
+        entry.currentEditor = editor;
+        // 写入前先刷新 journal，避免文件泄漏
+        journalWriter.write(DIRTY + ' ' + key + '\n');
+        journalWriter.flush();
+        return editor;
+    }
+
+    private synchronized void completeEdit(Editor editor, boolean success) throws IOException {
+        Entry entry = editor.entry;
+        if (entry.currentEditor != editor) {
+            throw new IllegalStateException();
+        }
+        File dirty = entry.getDirtyFile();
+        if (success && dirty.exists()) {
+            File clean = entry.getCleanFile();
+            renameTo(dirty, clean, true);
+            long oldLength = entry.length;
+            entry.length = clean.length();
+            size = size - oldLength + entry.length;
+        } else {
+            deleteIfExists(dirty);
+            success = false;
+        }
+        redundantOpCount++;
+        entry.currentEditor = null;
+        if (entry.readable || success) {
+            entry.readable = true;
+            journalWriter.write(CLEAN + ' ' + entry.key + ' ' + entry.length + '\n');
+        } else {
+            lruEntries.remove(entry.key);
+            journalWriter.write(REMOVE + ' ' + entry.key + '\n');
+        }
+        journalWriter.flush();
+        if (size > maxSize || journalRebuildRequired()) {
+            executor.submit(cleanupCallable);
+        }
+    }
+
+    private boolean journalRebuildRequired() {
+        return redundantOpCount >= REDUNDANT_OP_COMPACT_THRESHOLD && redundantOpCount >= lruEntries.size();
+    }
+
+    /**
+     * 删除条目，正在写入的条目不能删除
+     *
+     * @param key
+     * @return 是否删除
+     * @throws IOException
+     */
+    public synchronized boolean remove(String key) throws IOException {
+        checkNotClosed();
+        validateKey(key);
+        Entry entry = lruEntries.get(key);
+        if (entry == null || entry.currentEditor != null) {
+            return false;
+        }
+        deleteIfExists(entry.getCleanFile());
+        size -= entry.length;
+        entry.length = 0;
+        redundantOpCount++;
+        journalWriter.append(REMOVE + ' ' + key + '\n');
+        lruEntries.remove(key);
+        if (journalRebuildRequired()) {
+            executor.submit(cleanupCallable);
+        }
+        return true;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public synchronized long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * 修改最大字节数，超出部分在后台淘汰
+     */
+    public synchronized void setMaxSize(long maxSize) {
+        this.maxSize = maxSize;
+        executor.submit(cleanupCallable);
+    }
+
+    /**
+     * 当前所有条目的字节数，可能暂时超过上限
+     */
+    public synchronized long size() {
+        return size;
+    }
+
+    public synchronized boolean isClosed() {
+        return journalWriter == null;
+    }
+
+    private void checkNotClosed() {
+        if (journalWriter == null) {
+            throw new IllegalStateException("cache is closed");
+        }
+    }
+
+    public synchronized void flush() throws IOException {
+        checkNotClosed();
+        trimToSize();
+        journalWriter.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (journalWriter == null) {
+            return;
+        }
+        for (Entry entry : new ArrayList<>(lruEntries.values())) {
+            if (entry.currentEditor != null) {
+                entry.currentEditor.abort();
+            }
+        }
+        trimToSize();
+        journalWriter.close();
+        journalWriter = null;
+    }
+
+    private void trimToSize() throws IOException {
+        Iterator<Map.Entry<String, Entry>> iterator = lruEntries.entrySet().iterator();
+        while (size > maxSize && iterator.hasNext()) {
+            Entry entry = iterator.next().getValue();
+            if (entry.currentEditor != null) {
+                continue;
+            }
+            deleteIfExists(entry.getCleanFile());
+            size -= entry.length;
+            redundantOpCount++;
+            journalWriter.append(REMOVE + ' ' + entry.key + '\n');
+            iterator.remove();
+        }
+    }
+
+    /**
+     * 关闭缓存并删除目录下的所有缓存文件
+     */
+    public void delete() throws IOException {
+        close();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isFile()) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    private void validateKey(String key) {
+        if (key == null || !KEY_PATTERN.matcher(key).matches()) {
+            throw new IllegalArgumentException("keys must match regex [a-z0-9_-]{1,120}: \"" + key + "\"");
+        }
+    }
+
+    private static void deleteIfExists(File file) {
+        if (file.exists() && !file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+    private static void renameTo(File from, File to, boolean deleteDestination) throws IOException {
+        if (deleteDestination) {
+            deleteIfExists(to);
+        }
+        if (!from.renameTo(to)) {
+            throw new IOException("Cannot rename " + from + " to " + to);
+        }
+    }
+
+    /**
+     * 条目写入器，必须调用 {@link #commit()} 或 {@link #abort()} 结束
+     */
+    public final class Editor {
+        private final Entry entry;
+        private boolean done;
+
+        private Editor(Entry entry) {
+            this.entry = entry;
+        }
+
+        /**
+         * 写入临时文件的输出流，提交后替换原有内容
+         */
+        public OutputStream newOutputStream() throws IOException {
+            synchronized (DiskLruCache.this) {
+                if (done || entry.currentEditor != this) {
+                    throw new IllegalStateException();
+                }
+                return new FileOutputStream(entry.getDirtyFile());
+            }
+        }
+
+        public void commit() throws IOException {
+            if (done) {
+                throw new IllegalStateException("already completed");
+            }
+            done = true;
+            completeEdit(this, true);
+        }
+
+        public void abort() throws IOException {
+            if (done) {
+                return;
+            }
+            done = true;
+            completeEdit(this, false);
+        }
+    }
+
+    private final class Entry {
+        private final String key;
+        private long length;
+        private boolean readable;
+        private Editor currentEditor;
+
+        private Entry(String key) {
+            this.key = key;
+        }
+
+        File getCleanFile() {
+            return new File(directory, key);
+        }
+
+        File getDirtyFile() {
+            return new File(directory, key + ".tmp");
+        }
+    }
+}
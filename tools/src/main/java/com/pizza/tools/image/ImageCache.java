@@ -0,0 +1,401 @@
+package com.pizza.tools.image;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+import android.util.LruCache;
+
+import com.pizza.tools.EncryptTool;
+import com.pizza.tools.ImageTool;
+import com.pizza.tools.ToolInit;
+import com.pizza.tools.file.FileTool;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * @Description: 图片两级缓存
+ * <p>
+ * 内存缓存按 url 和目标尺寸缓存解码后的图片，以字节计算大小；
+ * 磁盘缓存保存下载的原始文件，由 {@link DiskLruCache} 按最近使用淘汰。
+ * 同一 url 的并发请求只下载一次，同一 url 和尺寸的并发请求只解码一次。
+ * 下载内容直接写入磁盘缓存，不会在内存中保留完整的字节数组。
+ * 加载在调用线程中同步执行，不要在主线程中调用。
+ * 网络请求通过 {@link Fetcher} 完成，默认使用 URLConnection，可替换为其他网络库。
+ * </p>
+ */
+public class ImageCache {
+
+    /**
+     * 打开网络图片的数据流
+     */
+    public interface Fetcher {
+        /**
+         * @param url 网络地址
+         * @return 图片数据流，由调用方关闭
+         * @throws IOException 请求失败或响应不是 2xx
+         */
+        InputStream open(String url) throws IOException;
+    }
+
+    /**
+     * 默认的网络请求，使用 URLConnection
+     */
+    public static final Fetcher URL_CONNECTION_FETCHER = new Fetcher() {
+        @Override
+        public InputStream open(String url) throws IOException {
+            URLConnection connection = new URL(url).openConnection();
+            connection.setConnectTimeout(CONNECT_TIMEOUT);
+            connection.setReadTimeout(READ_TIMEOUT);
+            if (connection instanceof HttpURLConnection) {
+                int code = ((HttpURLConnection) connection).getResponseCode();
+                if (code < 200 || code >= 300) {
+                    ((HttpURLConnection) connection).disconnect();
+                    throw new IOException("HTTP " + code + " for " + url);
+                }
+            }
+            return connection.getInputStream();
+        }
+    };
+
+    private static final String DISK_CACHE_DIR = "image_cache";
+    private static final long DEFAULT_DISK_CACHE_SIZE = 50L * 1024 * 1024;
+    private static final int BUFFER_SIZE = 8 * 1024;
+    private static final int CONNECT_TIMEOUT = 15 * 1000;
+    private static final int READ_TIMEOUT = 20 * 1000;
+    private static final String FILE_SCHEME = "file://";
+
+    private static volatile ImageCache singleton;
+
+    private final LruCache<String, Bitmap> memoryCache;
+    private final File diskCacheDir;
+    private final long diskCacheSize;
+    private DiskLruCache diskCache;
+    private boolean diskCacheOpened;
+    private volatile Fetcher fetcher = URL_CONNECTION_FETCHER;
+
+    /**
+     * 正在解码的请求，键为内存缓存的键
+     */
+    private final ConcurrentHashMap<String, FutureTask<Bitmap>> decoding = new ConcurrentHashMap<>();
+    /**
+     * 正在下载的请求，键为磁盘缓存的键
+     */
+    private final ConcurrentHashMap<String, FutureTask<Boolean>> fetching = new ConcurrentHashMap<>();
+
+    /**
+     * @param memoryCacheSize 内存缓存字节数
+     * @param diskCacheDir    磁盘缓存目录，为空时不使用磁盘缓存
+     * @param diskCacheSize   磁盘缓存字节数
+     */
+    public ImageCache(int memoryCacheSize, File diskCacheDir, long diskCacheSize) {
+        this.memoryCache = new LruCache<String, Bitmap>(memoryCacheSize) {
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return value.getAllocationByteCount();
+            }
+        };
+        this.diskCacheDir = diskCacheDir;
+        this.diskCacheSize = diskCacheSize;
+    }
+
+    /**
+     * 默认缓存，内存缓存为最大可用内存的 1/8，磁盘缓存位于应用缓存目录
+     */
+    public static ImageCache get() {
+        if (singleton == null) {
+            synchronized (ImageCache.class) {
+                if (singleton == null) {
+                    File cacheDir = null;
+                    try {
+                        cacheDir = new File(ToolInit.getApplicationContext().getCacheDir(), DISK_CACHE_DIR);
+                    } catch (NullPointerException e) {
+                        e.printStackTrace();
+                    }
+                    int memoryCacheSize = (int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 8);
+                    singleton = new ImageCache(memoryCacheSize, cacheDir, DEFAULT_DISK_CACHE_SIZE);
+                }
+            }
+        }
+        return singleton;
+    }
+
+    /**
+     * 设置网络请求方式，默认为 {@link #URL_CONNECTION_FETCHER}
+     */
+    public ImageCache setFetcher(Fetcher fetcher) {
+        this.fetcher = fetcher == null ? URL_CONNECTION_FETCHER : fetcher;
+        return this;
+    }
+
+    /**
+     * 加载原始尺寸的图片
+     *
+     * @param url 网络地址或 file:// 开头的本地路径
+     * @return 加载失败返回 null
+     */
+    public Bitmap getBitmap(String url) {
+        return getBitmap(url, 0, 0);
+    }
+
+    /**
+     * 加载不超过指定尺寸的图片，先查内存缓存，再查磁盘缓存，最后下载
+     * <p>返回的图片被缓存共享，不能回收或修改</p>
+     *
+     * @param url       网络地址或 file:// 开头的本地路径
+     * @param maxWidth  最大宽度，为 0 时不限制
+     * @param maxHeight 最大高度，为 0 时不限制
+     * @return 加载失败返回 null
+     */
+    public Bitmap getBitmap(final String url, final int maxWidth, final int maxHeight) {
+        if (url == null || url.length() == 0) {
+            return null;
+        }
+        final String key = memoryKey(url, maxWidth, maxHeight);
+        Bitmap bitmap = memoryCache.get(key);
+        if (bitmap != null && !bitmap.isRecycled()) {
+            return bitmap;
+        }
+        return runOnce(decoding, key, new Callable<Bitmap>() {
+            @Override
+            public Bitmap call() throws Exception {
+                Bitmap bitmap = load(url, maxWidth, maxHeight);
+                if (bitmap != null) {
+                    memoryCache.put(key, bitmap);
+                }
+                return bitmap;
+            }
+        });
+    }
+
+    /**
+     * 只下载到磁盘缓存，不解码，已缓存时不会重复下载
+     *
+     * @param url 网络地址，file:// 开头的本地路径不需要下载，直接返回 true
+     * @return 磁盘缓存中是否已有该图片，没有磁盘缓存时返回 false
+     */
+    public boolean prefetch(String url) {
+        if (url == null || url.length() == 0) {
+            return false;
+        }
+        if (url.startsWith(FILE_SCHEME)) {
+            return true;
+        }
+        DiskLruCache cache = getDiskCache();
+        if (cache == null) {
+            return false;
+        }
+        String diskKey = diskKey(url);
+        try {
+            FileInputStream in = cache.get(diskKey);
+            if (in != null) {
+                FileTool.get().getFileOperatorUtil().closeIo(in);
+                return true;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+        Boolean fetched = runOnce(fetching, diskKey, new FetchTask(cache, fetcher, url, diskKey));
+        return fetched != null && fetched;
+    }
+
+    /**
+     * 只查询内存缓存
+     */
+    public Bitmap getFromMemory(String url, int maxWidth, int maxHeight) {
+        Bitmap bitmap = memoryCache.get(memoryKey(url, maxWidth, maxHeight));
+        return bitmap == null || bitmap.isRecycled() ? null : bitmap;
+    }
+
+    /**
+     * 删除 url 对应的磁盘缓存，内存中不同尺寸的缓存会在淘汰时释放
+     */
+    public void remove(String url) {
+        DiskLruCache cache = getDiskCache();
+        if (cache == null) {
+            return;
+        }
+        try {
+            cache.remove(diskKey(url));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public void clearMemory() {
+        memoryCache.evictAll();
+    }
+
+    /**
+     * 清空磁盘缓存
+     */
+    public synchronized void clearDisk() {
+        if (diskCache != null) {
+            try {
+                diskCache.delete();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            diskCache = null;
+            diskCacheOpened = false;
+        }
+    }
+
+    /**
+     * 响应系统内存回调，可在 {@link ComponentCallbacks2#onTrimMemory(int)} 中调用
+     */
+    public void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            clearMemory();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            memoryCache.trimToSize(memoryCache.maxSize() / 2);
+        }
+    }
+
+    private Bitmap load(String url, int maxWidth, int maxHeight) throws IOException {
+        if (url.startsWith(FILE_SCHEME)) {
+            String path = url.substring(FILE_SCHEME.length());
+            return ImageTool.getBitmap(path.startsWith("/") ? path : "/" + path, maxWidth, maxHeight);
+        }
+        DiskLruCache cache = getDiskCache();
+        if (cache == null) {
+            // 没有磁盘缓存时直接从网络流解码
+            InputStream in = null;
+            try {
+                in = fetcher.open(url);
+                return ImageTool.getBitmap(in, maxWidth, maxHeight);
+            } finally {
+                FileTool.get().getFileOperatorUtil().closeIo(in);
+            }
+        }
+        String diskKey = diskKey(url);
+        Bitmap bitmap = decodeFromDisk(cache, diskKey, maxWidth, maxHeight);
+        if (bitmap != null) {
+            return bitmap;
+        }
+        Boolean fetched = runOnce(fetching, diskKey, new FetchTask(cache, fetcher, url, diskKey));
+        if (fetched == null || !fetched) {
+            return null;
+        }
+        return decodeFromDisk(cache, diskKey, maxWidth, maxHeight);
+    }
+
+    private static Bitmap decodeFromDisk(DiskLruCache cache, String diskKey, int maxWidth, int maxHeight)
+            throws IOException {
+        FileInputStream in = cache.get(diskKey);
+        if (in == null) {
+            return null;
+        }
+        try {
+            return ImageTool.getBitmap(in.getFD(), maxWidth, maxHeight);
+        } finally {
+            FileTool.get().getFileOperatorUtil().closeIo(in);
+        }
+    }
+
+    /**
+     * 下载到磁盘缓存
+     */
+    private static final class FetchTask implements Callable<Boolean> {
+        private final DiskLruCache cache;
+        private final Fetcher fetcher;
+        private final String url;
+        private final String diskKey;
+
+        FetchTask(DiskLruCache cache, Fetcher fetcher, String url, String diskKey) {
+            this.cache = cache;
+            this.fetcher = fetcher;
+            this.url = url;
+            this.diskKey = diskKey;
+        }
+
+        @Override
+        public Boolean call() throws Exception {
+            DiskLruCache.Editor editor = cache.edit(diskKey);
+            if (editor == null) {
+                return false;
+            }
+            InputStream in = null;
+            OutputStream out = null;
+            boolean success = false;
+            try {
+                in = fetcher.open(url);
+                out = editor.newOutputStream();
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+                out.close();
+                out = null;
+                success = true;
+            } finally {
+                FileTool.get().getFileOperatorUtil().closeIo(in, out);
+                if (success) {
+                    editor.commit();
+                } else {
+                    editor.abort();
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * 同一个键同时只执行一次任务，其他线程等待并共享结果
+     */
+    private static <T> T runOnce(ConcurrentHashMap<String, FutureTask<T>> running, String key, Callable<T> callable) {
+        FutureTask<T> task = new FutureTask<>(callable);
+        FutureTask<T> existing = running.putIfAbsent(key, task);
+        if (existing == null) {
+            existing = task;
+            try {
+                task.run();
+            } finally {
+                running.remove(key, task);
+            }
+        }
+        try {
+            return existing.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            e.getCause().printStackTrace();
+            return null;
+        }
+    }
+
+    private synchronized DiskLruCache getDiskCache() {
+        if (!diskCacheOpened) {
+            diskCacheOpened = true;
+            if (diskCacheDir != null) {
+                try {
+                    diskCache = DiskLruCache.open(diskCacheDir, diskCacheSize);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        return diskCache;
+    }
+
+    private static String memoryKey(String url, int maxWidth, int maxHeight) {
+        return url + '#' + maxWidth + 'x' + maxHeight;
+    }
+
+    private static String diskKey(String url) {
+        return EncryptTool.md5(url);
+    }
+}
@@ -0,0 +1,615 @@
+package com.pizza.tools.image;
+
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.CompressFormat;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.graphics.RectF;
+
+import com.pizza.tools.ImageTool;
+import com.pizza.tools.file.FileTool;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Description: 批量图片处理流水线
+ * <p>
+ * 把 {@link ImageTool} 的解码、旋转、缩放、倾斜、水印、保存组合为一条流水线：
+ * 相邻的缩放、旋转、倾斜合并为一个矩阵，只绘制一次；每一步的中间图片在下一步完成后自动回收到 {@link BitmapPool}；
+ * 批量处理时在固定大小的线程池中并行，每个文件开始前按预计的像素内存占用申请内存额度，
+ * 额度不足时等待其他文件完成，避免同时解码过多大图导致内存溢出；每一步的耗时按名称统计。
+ * </p>
+ * <pre>
+ * ImagePipeline pipeline = new ImagePipeline()
+ *         .decode(2048, 2048)
+ *         .autoRotate()
+ *         .scale(0.5f, 0.5f)
+ *         .textWatermark("pizza", 36, Color.WHITE, 200, 20, 60)
+ *         .encode(CompressFormat.JPEG, 85);
+ * List&lt;ImagePipeline.Result&gt; results = pipeline.process(files, outputDir);
+ * </pre>
+ * 流水线配置完成后可以在多个线程中同时使用，不要在主线程中调用 process。
+ */
+public class ImagePipeline {
+
+    public static final String STAGE_DECODE = "decode";
+    public static final String STAGE_ENCODE = "encode";
+
+    /**
+     * 预计内存时每个像素的字节数，按 ARGB_8888 计算
+     */
+    private static final int BYTES_PER_PIXEL = 4;
+    /**
+     * 同一时刻最多同时存在的图片数，源图片和一个中间结果
+     */
+    private static final int LIVE_BITMAPS = 2;
+
+    /**
+     * 单步操作
+     */
+    public interface Operation {
+        /**
+         * @param src 输入图片，返回新图片时由流水线回收，不要在这里回收
+         * @return 输出图片，可以返回输入本身
+         */
+        Bitmap apply(Bitmap src);
+    }
+
+    private final List<Stage> stages = new ArrayList<>();
+    private final Map<String, long[]> timings = new LinkedHashMap<>();
+    private int maxWidth;
+    private int maxHeight;
+    private boolean autoRotate;
+    private CompressFormat format = CompressFormat.JPEG;
+    private int quality = 90;
+    private long maxByteSize;
+    private int parallelism = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    private long memoryBudget = Runtime.getRuntime().maxMemory() / 2;
+
+    /**
+     * 解码时限制的最大尺寸，按比例缩小，为 0 时不限制
+     */
+    public ImagePipeline decode(int maxWidth, int maxHeight) {
+        this.maxWidth = maxWidth;
+        this.maxHeight = maxHeight;
+        return this;
+    }
+
+    /**
+     * 按 EXIF 信息把图片转正，与后续的矩阵变换合并
+     */
+    public ImagePipeline autoRotate() {
+        this.autoRotate = true;
+        return this;
+    }
+
+    public ImagePipeline scale(final float scaleWidth, final float scaleHeight) {
+        return addMatrix("scale", new MatrixOp() {
+            @Override
+            public void concat(Matrix matrix, RectF bounds) {
+                matrix.postScale(scaleWidth, scaleHeight);
+            }
+        });
+    }
+
+    /**
+     * 缩放到指定尺寸
+     */
+    public ImagePipeline scale(final int newWidth, final int newHeight) {
+        return addMatrix("scale", new MatrixOp() {
+            @Override
+            public void concat(Matrix matrix, RectF bounds) {
+                matrix.postScale(newWidth / bounds.width(), newHeight / bounds.height());
+            }
+        });
+    }
+
+    /**
+     * 按比例缩小到不超过指定尺寸，已经不超过时不处理
+     */
+    public ImagePipeline fitInside(final int maxWidth, final int maxHeight) {
+        return addMatrix("scale", new MatrixOp() {
+            @Override
+            public void concat(Matrix matrix, RectF bounds) {
+                float ratio = Math.min(maxWidth / bounds.width(), maxHeight / bounds.height());
+                if (ratio < 1) {
+                    matrix.postScale(ratio, ratio);
+                }
+            }
+        });
+    }
+
+    /**
+     * 绕图片中心旋转
+     */
+    public ImagePipeline rotate(final int degrees) {
+        return addMatrix("rotate", new MatrixOp() {
+            @Override
+            public void concat(Matrix matrix, RectF bounds) {
+                matrix.postRotate(degrees, bounds.width() / 2, bounds.height() / 2);
+            }
+        });
+    }
+
+    public ImagePipeline rotate(final int degrees, final float px, final float py) {
+        return addMatrix("rotate", new MatrixOp() {
+            @Override
+            public void concat(Matrix matrix, RectF bounds) {
+                matrix.postRotate(degrees, px, py);
+            }
+        });
+    }
+
+    public ImagePipeline skew(final float kx, final float ky) {
+        return addMatrix("skew", new MatrixOp() {
+            @Override
+            public void concat(Matrix matrix, RectF bounds) {
+                matrix.postSkew(kx, ky);
+            }
+        });
+    }
+
+    /**
+     * @see ImageTool#addTextWatermark(Bitmap, String, int, int, int, float, float)
+     */
+    public ImagePipeline textWatermark(final String content, final int textSize, final int color, final int alpha,
+                                       final float x, final float y) {
+        return then("watermark", new Operation() {
+            @Override
+            public Bitmap apply(Bitmap src) {
+                return ImageTool.addTextWatermark(src, content, textSize, color, alpha, x, y);
+            }
+        });
+    }
+
+    /**
+     * @see ImageTool#addImageWatermark(Bitmap, Bitmap, int, int, int)
+     */
+    public ImagePipeline imageWatermark(final Bitmap watermark, final int x, final int y, final int alpha) {
+        return then("watermark", new Operation() {
+            @Override
+            public Bitmap apply(Bitmap src) {
+                return ImageTool.addImageWatermark(src, watermark, x, y, alpha);
+            }
+        });
+    }
+
+    /**
+     * 添加自定义操作
+     *
+     * @param name      统计耗时使用的名称
+     * @param operation 操作
+     */
+    public ImagePipeline then(String name, Operation operation) {
+        stages.add(new Stage(name, operation));
+        return this;
+    }
+
+    /**
+     * 设置输出格式和质量，默认 JPEG 90
+     */
+    public ImagePipeline encode(CompressFormat format, int quality) {
+        this.format = format;
+        this.quality = quality;
+        return this;
+    }
+
+    /**
+     * 输出不超过指定字节数，由 {@link QualityCompressor} 查找质量，必要时缩小，为 0 时不限制
+     */
+    public ImagePipeline maxByteSize(long maxByteSize) {
+        this.maxByteSize = maxByteSize;
+        return this;
+    }
+
+    /**
+     * 批量处理的并行数，默认为 CPU 核数，最多 4
+     */
+    public ImagePipeline parallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+        return this;
+    }
+
+    /**
+     * 批量处理时同时处理的图片允许占用的像素内存，默认为最大可用内存的一半
+     */
+    public ImagePipeline memoryBudget(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+        return this;
+    }
+
+    /**
+     * 对内存中的图片执行流水线中的操作，不包含解码和保存
+     *
+     * @param src     源图片
+     * @param recycle 是否回收源图片
+     * @return 处理后的图片
+     */
+    public Bitmap apply(Bitmap src, boolean recycle) {
+        return run(src, recycle, 0, null);
+    }
+
+    /**
+     * 处理单个文件
+     *
+     * @param input  输入文件
+     * @param output 输出文件
+     * @return 处理结果
+     */
+    public Result process(File input, File output) {
+        Result result = new Result(input, output);
+        long start = System.nanoTime();
+        Bitmap bitmap = ImageTool.getBitmap(input, maxWidth, maxHeight);
+        result.record(STAGE_DECODE, System.nanoTime() - start);
+        if (bitmap == null) {
+            result.error = new IOException("Failed to decode " + input);
+            record(result);
+            return result;
+        }
+        int degree = autoRotate ? ImageTool.getRotateDegree(input.getPath()) : 0;
+        bitmap = run(bitmap, true, degree, result);
+        if (bitmap == null) {
+            result.error = new IllegalStateException("Pipeline produced no bitmap for " + input);
+            record(result);
+            return result;
+        }
+        start = System.nanoTime();
+        try {
+            result.success = write(bitmap, output);
+            if (!result.success) {
+                result.error = new IOException("Failed to encode " + input);
+            }
+        } catch (IOException e) {
+            result.error = e;
+        } finally {
+            ImageTool.recycle(bitmap);
+        }
+        result.record(STAGE_ENCODE, System.nanoTime() - start);
+        record(result);
+        return result;
+    }
+
+    /**
+     * 批量处理，输出到指定目录，文件名与输入相同，阻塞直到全部完成
+     *
+     * @param inputs    输入文件
+     * @param outputDir 输出目录
+     * @return 与输入顺序一致的处理结果
+     */
+    public List<Result> process(List<File> inputs, final File outputDir) {
+        List<File> outputs = new ArrayList<>(inputs.size());
+        for (File input : inputs) {
+            outputs.add(new File(outputDir, input.getName()));
+        }
+        return process(inputs, outputs);
+    }
+
+    /**
+     * 批量处理，阻塞直到全部完成
+     *
+     * @param inputs  输入文件
+     * @param outputs 与输入一一对应的输出文件
+     * @return 与输入顺序一致的处理结果
+     */
+    public List<Result> process(List<File> inputs, List<File> outputs) {
+        if (inputs.size() != outputs.size()) {
+            throw new IllegalArgumentException("inputs and outputs must have the same size");
+        }
+        final MemoryGate gate = new MemoryGate(memoryBudget);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(parallelism, parallelism, 1L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private int count;
+
+            @Override
+            public synchronized Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "ImagePipeline-" + (++count));
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        List<Future<Result>> futures = new ArrayList<>(inputs.size());
+        try {
+            for (int i = 0; i < inputs.size(); i++) {
+                final File input = inputs.get(i);
+                final File output = outputs.get(i);
+                futures.add(executor.submit(new Callable<Result>() {
+                    @Override
+                    public Result call() throws Exception {
+                        long bytes = estimateBytes(input);
+                        gate.acquire(bytes);
+                        try {
+                            return process(input, output);
+                        } finally {
+                            gate.release(bytes);
+                        }
+                    }
+                }));
+            }
+            List<Result> results = new ArrayList<>(futures.size());
+            for (int i = 0; i < futures.size(); i++) {
+                Result result;
+                try {
+                    result = futures.get(i).get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    result = new Result(inputs.get(i), outputs.get(i));
+                    result.error = e;
+                } catch (ExecutionException e) {
+                    result = new Result(inputs.get(i), outputs.get(i));
+                    result.error = e.getCause();
+                }
+                results.add(result);
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 各步骤累计的耗时，单位毫秒，按步骤第一次出现的顺序
+     */
+    public Map<String, Long> getTimings() {
+        Map<String, Long> ret = new LinkedHashMap<>();
+        synchronized (timings) {
+            for (Map.Entry<String, long[]> entry : timings.entrySet()) {
+                ret.put(entry.getKey(), TimeUnit.NANOSECONDS.toMillis(entry.getValue()[0]));
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * 清空累计的耗时
+     */
+    public void resetTimings() {
+        synchronized (timings) {
+            timings.clear();
+        }
+    }
+
+    private ImagePipeline addMatrix(String name, MatrixOp op) {
+        Stage last = stages.isEmpty() ? null : stages.get(stages.size() - 1);
+        if (last != null && last.matrixOps != null) {
+            // 与前一步的矩阵变换合并
+            last.matrixOps.add(op);
+            last.name = last.name + "+" + name;
+        } else {
+            stages.add(new Stage(name, op));
+        }
+        return this;
+    }
+
+    /**
+     * 依次执行各步骤，新图片产生后回收上一张
+     *
+     * @param degree 先于第一步执行的旋转角度，与第一个矩阵步骤合并
+     */
+    private Bitmap run(Bitmap bitmap, boolean recycleSource, int degree, Result result) {
+        Bitmap current = bitmap;
+        boolean owned = recycleSource;
+        List<Stage> list = stages;
+        if (degree != 0) {
+            list = new ArrayList<>(stages.size() + 1);
+            Stage rotate = new Stage("rotate", new RotateOp(degree));
+            if (!stages.isEmpty() && stages.get(0).matrixOps != null) {
+                Stage first = stages.get(0);
+                rotate.name = "rotate+" + first.name;
+                rotate.matrixOps.addAll(first.matrixOps);
+                list.add(rotate);
+                list.addAll(stages.subList(1, stages.size()));
+            } else {
+                list.add(rotate);
+                list.addAll(stages);
+            }
+        }
+        for (Stage stage : list) {
+            long start = System.nanoTime();
+            Bitmap next = stage.apply(current);
+            if (result != null) {
+                result.record(stage.name, System.nanoTime() - start);
+            }
+            if (next != current && owned) {
+                ImageTool.recycle(current);
+            }
+            if (next == null) {
+                return null;
+            }
+            owned |= next != current;
+            current = next;
+        }
+        return current;
+    }
+
+    private boolean write(Bitmap bitmap, File output) throws IOException {
+        File file = FileTool.get().getFileOperatorUtil().createFile(output, true);
+        if (file == null) {
+            return false;
+        }
+        OutputStream os = null;
+        try {
+            os = new BufferedOutputStream(new FileOutputStream(file));
+            if (maxByteSize > 0) {
+                return new QualityCompressor().setFormat(format).setQualityRange(0, quality).setAllowDownscale(true)
+                        .compress(bitmap, maxByteSize, os) >= 0;
+            }
+            return bitmap.compress(format, quality, os);
+        } finally {
+            FileTool.get().getFileOperatorUtil().closeIo(os);
+        }
+    }
+
+    /**
+     * 预计处理一个文件需要的像素内存，只读取文件头
+     */
+    private long estimateBytes(File input) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(input.getPath(), options);
+        long width = Math.max(1, options.outWidth);
+        long height = Math.max(1, options.outHeight);
+        if (maxWidth > 0 && maxHeight > 0 && (width > maxWidth || height > maxHeight)) {
+            double ratio = Math.min((double) maxWidth / width, (double) maxHeight / height);
+            width = Math.max(1, (long) (width * ratio));
+            height = Math.max(1, (long) (height * ratio));
+        }
+        return width * height * BYTES_PER_PIXEL * LIVE_BITMAPS;
+    }
+
+    private void record(Result result) {
+        synchronized (timings) {
+            for (Map.Entry<String, Long> entry : result.timings.entrySet()) {
+                long[] total = timings.get(entry.getKey());
+                if (total == null) {
+                    total = new long[1];
+                    timings.put(entry.getKey(), total);
+                }
+                total[0] += entry.getValue();
+            }
+        }
+    }
+
+    /**
+     * 单个文件的处理结果
+     */
+    public static final class Result {
+        private final File input;
+        private final File output;
+        private final Map<String, Long> timings = new LinkedHashMap<>();
+        private boolean success;
+        private Throwable error;
+
+        Result(File input, File output) {
+            this.input = input;
+            this.output = output;
+        }
+
+        void record(String stage, long nanos) {
+            Long total = timings.get(stage);
+            timings.put(stage, total == null ? nanos : total + nanos);
+        }
+
+        public File getInput() {
+            return input;
+        }
+
+        public File getOutput() {
+            return output;
+        }
+
+        public boolean isSuccess() {
+            return success;
+        }
+
+        public Throwable getError() {
+            return error;
+        }
+
+        /**
+         * 各步骤的耗时，单位纳秒
+         */
+        public Map<String, Long> getTimings() {
+            return Collections.unmodifiableMap(timings);
+        }
+    }
+
+    /**
+     * 矩阵变换，在当前图片坐标系中追加到矩阵上
+     */
+    private interface MatrixOp {
+        /**
+         * @param matrix 已经合并的矩阵
+         * @param bounds 当前图片的边界，左上角为原点
+         */
+        void concat(Matrix matrix, RectF bounds);
+    }
+
+    private static final class RotateOp implements MatrixOp {
+        private final int degrees;
+
+        RotateOp(int degrees) {
+            this.degrees = degrees;
+        }
+
+        @Override
+        public void concat(Matrix matrix, RectF bounds) {
+            matrix.postRotate(degrees, bounds.width() / 2, bounds.height() / 2);
+        }
+    }
+
+    private static final class Stage {
+        String name;
+        final Operation operation;
+        final List<MatrixOp> matrixOps;
+
+        Stage(String name, Operation operation) {
+            this.name = name;
+            this.operation = operation;
+            this.matrixOps = null;
+        }
+
+        Stage(String name, MatrixOp op) {
+            this.name = name;
+            this.operation = null;
+            this.matrixOps = new ArrayList<>();
+            this.matrixOps.add(op);
+        }
+
+        Bitmap apply(Bitmap src) {
+            if (operation != null) {
+                return operation.apply(src);
+            }
+            Matrix matrix = new Matrix();
+            RectF bounds = new RectF(0, 0, src.getWidth(), src.getHeight());
+            for (MatrixOp op : matrixOps) {
+                op.concat(matrix, bounds);
+                // 每一步之后把结果移回原点，后续操作的坐标与逐步执行时一致
+                bounds.set(0, 0, src.getWidth(), src.getHeight());
+                matrix.mapRect(bounds);
+                matrix.postTranslate(-bounds.left, -bounds.top);
+                bounds.offsetTo(0, 0);
+            }
+            return ImageTool.transform(src, matrix);
+        }
+    }
+
+    /**
+     * 按字节数限制同时处理的图片，单个超出预算的图片在没有其他图片处理时也允许执行
+     */
+    private static final class MemoryGate {
+        private final long budget;
+        private long reserved;
+
+        MemoryGate(long budget) {
+            this.budget = budget;
+        }
+
+        synchronized void acquire(long bytes) throws InterruptedException {
+            while (reserved > 0 && reserved + bytes > budget) {
+                wait();
+            }
+            reserved += bytes;
+        }
+
+        synchronized void release(long bytes) {
+            reserved -= bytes;
+            notifyAll();
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.pizza.tools.image;
+
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.CompressFormat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * @Description: 按目标大小压缩图片
+ * <p>
+ * 二分查找不超过目标字节数的最高质量，最多编码 log2(质量范围) 次；
+ * 编码写入每个线程复用的缓冲，直接读取已写入的长度，不会为了比较大小而拷贝数组。
+ * 最低质量仍然超出目标时，可以按比例缩小图片后重新查找。
+ * 结果以字节数组返回或直接写入输出流，不会再解码回 Bitmap。
+ * </p>
+ * <pre>
+ * byte[] jpeg = new QualityCompressor().setAllowDownscale(true).compress(bitmap, 200 * 1024);
+ * </pre>
+ */
+public class QualityCompressor {
+
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+    /**
+     * 超过该大小的缓冲用完后不保留，避免偶尔的大图长期占用内存
+     */
+    private static final int MAX_RETAINED_BUFFER_SIZE = 4 * 1024 * 1024;
+    /**
+     * 最多缩小的次数
+     */
+    private static final int MAX_DOWNSCALE_STEPS = 6;
+    /**
+     * 每次缩小至少缩小到原来的比例，保证收敛
+     */
+    private static final float MAX_DOWNSCALE_RATIO = 0.9f;
+
+    private static final ThreadLocal<Output[]> BUFFERS = new ThreadLocal<>();
+
+    private CompressFormat format = CompressFormat.JPEG;
+    private int minQuality = 0;
+    private int maxQuality = 100;
+    private boolean allowDownscale;
+
+    /**
+     * 设置编码格式，默认 JPEG；PNG 忽略质量参数，只编码一次
+     */
+    public QualityCompressor setFormat(CompressFormat format) {
+        this.format = format;
+        return this;
+    }
+
+    /**
+     * 设置质量的查找范围，默认 0 - 100
+     */
+    public QualityCompressor setQualityRange(int minQuality, int maxQuality) {
+        if (minQuality < 0 || maxQuality > 100 || minQuality > maxQuality) {
+            throw new IllegalArgumentException("Invalid quality range: " + minQuality + " - " + maxQuality);
+        }
+        this.minQuality = minQuality;
+        this.maxQuality = maxQuality;
+        return this;
+    }
+
+    /**
+     * 最低质量仍超出目标时是否缩小图片，默认不缩小
+     */
+    public QualityCompressor setAllowDownscale(boolean allowDownscale) {
+        this.allowDownscale = allowDownscale;
+        return this;
+    }
+
+    /**
+     * 压缩到不超过指定字节数
+     *
+     * @param src         源图片，不会被回收
+     * @param maxByteSize 允许的最大字节数
+     * @return 编码后的字节，无法满足时返回 null
+     */
+    public byte[] compress(Bitmap src, long maxByteSize) {
+        Output[] buffers = obtainBuffers();
+        try {
+            Output result = encode(src, maxByteSize, buffers);
+            return result == null ? null : result.toByteArray();
+        } finally {
+            releaseBuffers(buffers);
+        }
+    }
+
+    /**
+     * 压缩到不超过指定字节数并写入输出流，不产生中间数组
+     *
+     * @param src         源图片，不会被回收
+     * @param maxByteSize 允许的最大字节数
+     * @param out         输出流，不会被关闭
+     * @return 写入的字节数，无法满足时返回 -1 且不写入
+     * @throws IOException 写入失败
+     */
+    public int compress(Bitmap src, long maxByteSize, OutputStream out) throws IOException {
+        Output[] buffers = obtainBuffers();
+        try {
+            Output result = encode(src, maxByteSize, buffers);
+            if (result == null) {
+                return -1;
+            }
+            result.writeTo(out);
+            return result.size();
+        } finally {
+            releaseBuffers(buffers);
+        }
+    }
+
+    /**
+     * @return 保存结果的缓冲，无法满足时返回 null
+     */
+    private Output encode(Bitmap src, long maxByteSize, Output[] buffers) {
+        if (src == null || src.isRecycled() || maxByteSize <= 0) {
+            return null;
+        }
+        Bitmap bitmap = src;
+        try {
+            for (int step = 0; ; step++) {
+                Output result = search(bitmap, maxByteSize, buffers);
+                if (result != null) {
+                    return result;
+                }
+                // search 失败时 buffers[1] 保存的是最低质量的编码结果
+                int minSize = buffers[1].size();
+                if (!allowDownscale || step >= MAX_DOWNSCALE_STEPS || minSize == 0
+                        || (bitmap.getWidth() == 1 && bitmap.getHeight() == 1)) {
+                    return null;
+                }
+                // 编码大小大致与像素数成正比
+                float ratio = Math.min(MAX_DOWNSCALE_RATIO, (float) Math.sqrt((double) maxByteSize / minSize));
+                int width = Math.max(1, (int) (bitmap.getWidth() * ratio));
+                int height = Math.max(1, (int) (bitmap.getHeight() * ratio));
+                Bitmap scaled = Bitmap.createScaledBitmap(bitmap, width, height, true);
+                if (bitmap != src) {
+                    bitmap.recycle();
+                }
+                bitmap = scaled;
+            }
+        } finally {
+            if (bitmap != src) {
+                bitmap.recycle();
+            }
+        }
+    }
+
+    /**
+     * 二分查找满足大小的最高质量，成功时结果在 buffers[0]
+     */
+    private Output search(Bitmap bitmap, long maxByteSize, Output[] buffers) {
+        Output best = buffers[0];
+        Output scratch = buffers[1];
+        best.reset();
+        bitmap.compress(format, maxQuality, best);
+        if (best.size() <= maxByteSize) {
+            return best;
+        }
+        if (format == CompressFormat.PNG) {
+            // PNG 与质量无关，最低质量的结果就是这一次
+            buffers[0] = scratch;
+            buffers[1] = best;
+            return null;
+        }
+        boolean found = false;
+        int lo = minQuality;
+        int hi = maxQuality - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            scratch.reset();
+            bitmap.compress(format, mid, scratch);
+            if (scratch.size() <= maxByteSize) {
+                Output tmp = best;
+                best = scratch;
+                scratch = tmp;
+                found = true;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        buffers[0] = best;
+        buffers[1] = scratch;
+        if (found) {
+            return best;
+        }
+        if (minQuality == maxQuality) {
+            // 没有进入查找，最低质量的结果在 best 中
+            buffers[0] = scratch;
+            buffers[1] = best;
+        }
+        return null;
+    }
+
+    private static Output[] obtainBuffers() {
+        Output[] buffers = BUFFERS.get();
+        if (buffers == null) {
+            return new Output[]{new Output(INITIAL_BUFFER_SIZE), new Output(INITIAL_BUFFER_SIZE)};
+        }
+        // 重入时不共享同一组缓冲
+        BUFFERS.set(null);
+        return buffers;
+    }
+
+    private static void releaseBuffers(Output[] buffers) {
+        for (int i = 0; i < buffers.length; i++) {
+            if (buffers[i].capacity() > MAX_RETAINED_BUFFER_SIZE) {
+                buffers[i] = new Output(INITIAL_BUFFER_SIZE);
+            } else {
+                buffers[i].reset();
+            }
+        }
+        BUFFERS.set(buffers);
+    }
+
+    /**
+     * 可以查询容量的输出流，{@link #size()} 直接返回已写入的长度
+     */
+    private static final class Output extends ByteArrayOutputStream {
+
+        Output(int size) {
+            super(size);
+        }
+
+        int capacity() {
+            return buf.length;
+        }
+    }
+}
@@ -0,0 +1,435 @@
+package com.pizza.tools.image;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+import android.util.LruCache;
+
+import java.io.Closeable;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Description: 大图分块解码
+ * <p>
+ * 基于 {@link BitmapRegionDecoder}，只解码需要的区域，适合几十上百兆像素的照片。
+ * 按采样等级把原图划分为固定大小的分块，等级越高每块覆盖的原图区域越大；
+ * 解码的分块保存在按字节限制的缓存中，可以预加载视口周围一圈的分块。
+ * </p>
+ * <pre>
+ * RegionImageDecoder decoder = RegionImageDecoder.newInstance(path);
+ * int sampleSize = RegionImageDecoder.sampleSizeForScale(viewWidth / (float) decoder.getWidth());
+ * for (RegionImageDecoder.Tile tile : decoder.getTiles(viewport, sampleSize)) {
+ *     canvas.drawBitmap(tile.getBitmap(), null, tile.getRegion(), paint);
+ * }
+ * decoder.prefetch(viewport, sampleSize);
+ * </pre>
+ * 缓存中的分块可能随时被淘汰，使用者不能回收分块图片，也不应长期持有。
+ * 解码和 {@link #close()} 互斥，关闭时取消还未开始的预加载。
+ */
+public class RegionImageDecoder implements Closeable {
+
+    /**
+     * 默认分块边长，单位为解码后的像素
+     */
+    public static final int DEFAULT_TILE_SIZE = 512;
+    private static final int DEFAULT_CACHE_SIZE = 32 * 1024 * 1024;
+
+    private static volatile ThreadPoolExecutor prefetchExecutor;
+
+    private final BitmapRegionDecoder decoder;
+    private final int width;
+    private final int height;
+    private final int tileSize;
+    private final LruCache<TileKey, Tile> tileCache;
+    /**
+     * 等待或正在执行的预加载任务
+     */
+    private final ConcurrentHashMap<TileKey, FutureTask<Void>> prefetching = new ConcurrentHashMap<>();
+    /**
+     * 保证解码时解码器不会被回收
+     */
+    private final Object decodeLock = new Object();
+    private Bitmap.Config config = Bitmap.Config.RGB_565;
+    private volatile boolean closed;
+
+    /**
+     * @param decoder   区域解码器
+     * @param tileSize  分块边长
+     * @param cacheSize 分块缓存字节数
+     */
+    public RegionImageDecoder(BitmapRegionDecoder decoder, int tileSize, int cacheSize) {
+        if (decoder == null) {
+            throw new NullPointerException("decoder == null");
+        }
+        this.decoder = decoder;
+        this.width = decoder.getWidth();
+        this.height = decoder.getHeight();
+        this.tileSize = tileSize;
+        this.tileCache = new LruCache<TileKey, Tile>(cacheSize) {
+            @Override
+            protected int sizeOf(TileKey key, Tile value) {
+                return value.bitmap.getAllocationByteCount();
+            }
+        };
+    }
+
+    public static RegionImageDecoder newInstance(String filePath) throws IOException {
+        return new RegionImageDecoder(BitmapRegionDecoder.newInstance(filePath, false),
+                DEFAULT_TILE_SIZE, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * 文件描述符需要在使用期间保持打开
+     */
+    public static RegionImageDecoder newInstance(FileDescriptor fd) throws IOException {
+        return new RegionImageDecoder(BitmapRegionDecoder.newInstance(fd, false),
+                DEFAULT_TILE_SIZE, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * 输入流会被读取到末尾，调用者负责关闭
+     */
+    public static RegionImageDecoder newInstance(InputStream is) throws IOException {
+        return new RegionImageDecoder(BitmapRegionDecoder.newInstance(is, false),
+                DEFAULT_TILE_SIZE, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * 设置解码格式，默认 RGB_565，需要透明通道时使用 ARGB_8888
+     */
+    public RegionImageDecoder setConfig(Bitmap.Config config) {
+        this.config = config;
+        tileCache.evictAll();
+        return this;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    /**
+     * 按缩放比例计算采样等级，返回不大于 1 / scale 的 2 的幂
+     *
+     * @param scale 显示尺寸与原图尺寸的比例
+     * @return 采样等级
+     */
+    public static int sampleSizeForScale(float scale) {
+        int sampleSize = 1;
+        if (scale <= 0) {
+            return sampleSize;
+        }
+        while (sampleSize * 2 * scale <= 1) {
+            sampleSize <<= 1;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * 解码原图中的一块区域，不使用分块缓存
+     *
+     * @param region     原图坐标中的区域，超出原图的部分会被裁掉
+     * @param sampleSize 采样等级
+     * @return 区域为空或解码失败时返回 null
+     */
+    public Bitmap decodeRegion(Rect region, int sampleSize) {
+        Rect bounds = new Rect(region);
+        if (closed || !bounds.intersect(new Rect(0, 0, width, height))) {
+            return null;
+        }
+        sampleSize = Math.max(1, sampleSize);
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSize;
+        options.inPreferredConfig = config;
+        options.inMutable = true;
+        int outWidth = (bounds.width() + sampleSize - 1) / sampleSize;
+        int outHeight = (bounds.height() + sampleSize - 1) / sampleSize;
+        options.inBitmap = BitmapPool.get().getDirty(outWidth, outHeight, config);
+        Bitmap inBitmap = options.inBitmap;
+        Bitmap ret;
+        synchronized (decodeLock) {
+            if (closed) {
+                ret = null;
+            } else {
+                try {
+                    ret = decoder.decodeRegion(bounds, options);
+                } catch (IllegalArgumentException e) {
+                    if (inBitmap == null) {
+                        throw e;
+                    }
+                    options.inBitmap = null;
+                    ret = decoder.decodeRegion(bounds, options);
+                }
+            }
+        }
+        if (inBitmap != null && ret != inBitmap) {
+            BitmapPool.get().put(inBitmap);
+        }
+        return ret;
+    }
+
+    /**
+     * 获取指定采样等级下的一个分块，优先从缓存获取
+     *
+     * @param sampleSize 采样等级
+     * @param col        列
+     * @param row        行
+     * @return 超出范围或解码失败时返回 null
+     */
+    public Tile getTile(int sampleSize, int col, int row) {
+        sampleSize = Math.max(1, sampleSize);
+        TileKey key = new TileKey(sampleSize, col, row);
+        Tile tile = tileCache.get(key);
+        if (tile != null) {
+            return tile;
+        }
+        Rect region = tileRegion(sampleSize, col, row);
+        if (region == null) {
+            return null;
+        }
+        Bitmap bitmap = decodeRegion(region, sampleSize);
+        if (bitmap == null) {
+            return null;
+        }
+        tile = new Tile(sampleSize, col, row, region, bitmap);
+        if (!closed) {
+            tileCache.put(key, tile);
+        }
+        return tile;
+    }
+
+    /**
+     * 获取与视口相交的所有分块，在调用线程中解码缺失的分块
+     *
+     * @param viewport   原图坐标中的可见区域
+     * @param sampleSize 采样等级
+     * @return 分块列表
+     */
+    public List<Tile> getTiles(Rect viewport, int sampleSize) {
+        sampleSize = Math.max(1, sampleSize);
+        List<Tile> tiles = new ArrayList<>();
+        Rect range = tileRange(viewport, sampleSize, 0);
+        if (range == null) {
+            return tiles;
+        }
+        for (int row = range.top; row <= range.bottom; row++) {
+            for (int col = range.left; col <= range.right; col++) {
+                Tile tile = getTile(sampleSize, col, row);
+                if (tile != null) {
+                    tiles.add(tile);
+                }
+            }
+        }
+        return tiles;
+    }
+
+    /**
+     * 在后台预加载视口及其周围一圈的分块
+     *
+     * @param viewport   原图坐标中的可见区域
+     * @param sampleSize 采样等级
+     */
+    public void prefetch(Rect viewport, int sampleSize) {
+        sampleSize = Math.max(1, sampleSize);
+        Rect range = tileRange(viewport, sampleSize, 1);
+        if (range == null) {
+            return;
+        }
+        for (int row = range.top; row <= range.bottom; row++) {
+            for (int col = range.left; col <= range.right; col++) {
+                final TileKey key = new TileKey(sampleSize, col, row);
+                if (tileCache.get(key) != null || prefetching.containsKey(key)) {
+                    continue;
+                }
+                FutureTask<Void> task = new FutureTask<Void>(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (closed) {
+                            return;
+                        }
+                        try {
+                            getTile(key.sampleSize, key.col, key.row);
+                        } catch (RuntimeException e) {
+                            e.printStackTrace();
+                        }
+                    }
+                }, null) {
+                    @Override
+                    protected void done() {
+                        // 执行完成或被取消
+                        prefetching.remove(key, this);
+                    }
+                };
+                if (prefetching.putIfAbsent(key, task) == null) {
+                    getPrefetchExecutor().execute(task);
+                }
+            }
+        }
+    }
+
+    /**
+     * 清空分块缓存
+     */
+    public void clearTiles() {
+        tileCache.evictAll();
+    }
+
+    /**
+     * 释放解码器和分块缓存，之后不能再解码。等待正在进行的解码完成，取消还未开始的预加载
+     */
+    @Override
+    public void close() {
+        synchronized (decodeLock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            decoder.recycle();
+        }
+        ThreadPoolExecutor executor = prefetchExecutor;
+        for (FutureTask<Void> task : prefetching.values()) {
+            task.cancel(false);
+            if (executor != null) {
+                executor.remove(task);
+            }
+        }
+        tileCache.evictAll();
+    }
+
+    /**
+     * 分块在原图坐标中的区域
+     */
+    private Rect tileRegion(int sampleSize, int col, int row) {
+        int span = tileSize * sampleSize;
+        int left = col * span;
+        int top = row * span;
+        if (col < 0 || row < 0 || left >= width || top >= height) {
+            return null;
+        }
+        return new Rect(left, top, Math.min(left + span, width), Math.min(top + span, height));
+    }
+
+    /**
+     * 计算与区域相交的分块行列范围，left/right 为列，top/bottom 为行，均包含
+     */
+    private Rect tileRange(Rect viewport, int sampleSize, int margin) {
+        Rect bounds = new Rect(viewport);
+        if (!bounds.intersect(new Rect(0, 0, width, height))) {
+            return null;
+        }
+        int span = tileSize * sampleSize;
+        int maxCol = (width - 1) / span;
+        int maxRow = (height - 1) / span;
+        return new Rect(Math.max(0, bounds.left / span - margin), Math.max(0, bounds.top / span - margin),
+                Math.min(maxCol, (bounds.right - 1) / span + margin),
+                Math.min(maxRow, (bounds.bottom - 1) / span + margin));
+    }
+
+    private static ThreadPoolExecutor getPrefetchExecutor() {
+        if (prefetchExecutor == null) {
+            synchronized (RegionImageDecoder.class) {
+                if (prefetchExecutor == null) {
+                    ThreadPoolExecutor executor = new ThreadPoolExecutor(2, 2, 30L, TimeUnit.SECONDS,
+                            new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread thread = new Thread(r, "RegionImageDecoder");
+                            thread.setDaemon(true);
+                            thread.setPriority(Thread.MIN_PRIORITY);
+                            return thread;
+                        }
+                    });
+                    executor.allowCoreThreadTimeOut(true);
+                    prefetchExecutor = executor;
+                }
+            }
+        }
+        return prefetchExecutor;
+    }
+
+    /**
+     * 解码后的分块
+     */
+    public static final class Tile {
+        private final int sampleSize;
+        private final int col;
+        private final int row;
+        private final Rect region;
+        private final Bitmap bitmap;
+
+        Tile(int sampleSize, int col, int row, Rect region, Bitmap bitmap) {
+            this.sampleSize = sampleSize;
+            this.col = col;
+            this.row = row;
+            this.region = region;
+            this.bitmap = bitmap;
+        }
+
+        public int getSampleSize() {
+            return sampleSize;
+        }
+
+        public int getCol() {
+            return col;
+        }
+
+        public int getRow() {
+            return row;
+        }
+
+        /**
+         * 分块在原图坐标中的区域
+         */
+        public Rect getRegion() {
+            return new Rect(region);
+        }
+
+        public Bitmap getBitmap() {
+            return bitmap;
+        }
+    }
+
+    private static final class TileKey {
+        final int sampleSize;
+        final int col;
+        final int row;
+
+        TileKey(int sampleSize, int col, int row) {
+            this.sampleSize = sampleSize;
+            this.col = col;
+            this.row = row;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof TileKey)) {
+                return false;
+            }
+            TileKey other = (TileKey) o;
+            return sampleSize == other.sampleSize && col == other.col && row == other.row;
+        }
+
+        @Override
+        public int hashCode() {
+            return (sampleSize * 31 + col) * 31 + row;
+        }
+    }
+}
@@ -5,17 +5,22 @@ import android.util.Log;
 import com.pizza.tools.ToolInit;
 import com.pizza.tools.date.TimeTool;
 import com.pizza.tools.file.FileTool;
+import com.pizza.tools.log.common.LogSupplier;
+import com.pizza.tools.log.writer.AsyncLogWriter;
+import com.pizza.tools.log.writer.LogRetentionService;
 
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.FileWriter;
+import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.Locale;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author BoWei
@@ -33,6 +38,15 @@ public class LogTool {
      * sd卡中日志文件的最多保存天数
      */
     private static final int LOG_SAVE_DAYS = 7;
+    /**
+     * saveLogFile 写入的文件，如 20170331.txt
+     */
+    private static final FilenameFilter SAVE_LOG_FILTER = new FilenameFilter() {
+        @Override
+        public boolean accept(File dir, String name) {
+            return name.matches("\\d{8}\\.txt(\\.gz)?");
+        }
+    };
     /**
      * 日志文件总开关
      */
@@ -54,11 +68,20 @@ public class LogTool {
      */
     private static String logFileName;
 
+    /**
+     * 日志最小输出级别
+     */
+    private static volatile int logLevel = Log.VERBOSE;
     /**
      * 是否使用树形 log
      */
     private static boolean isTreeShow = false;
 
+    /**
+     * 异步文件写入器，为空时不启用
+     */
+    private static volatile AsyncLogWriter asyncWriter;
+
     public static void init(boolean isLog) {
         init(isLog, "Log");
     }
@@ -67,12 +90,103 @@ public class LogTool {
         logFilePath = FileTool.get().getCanUseRootPath() + ToolInit.getApplicationContext().getPackageName();
         logFileName = fileName;
         logSwitch = isLog;
+        LogRetentionService.get()
+                .watch(new File(logFilePath), logFileName)
+                .watch(getSaveLogDir(), SAVE_LOG_FILTER);
+    }
+
+    /**
+     * 开启日志文件后台清理，保留 {@link #LOG_SAVE_DAYS} 天内的日志，超过一天的日志会被压缩
+     *
+     * @param maxTotalSize 所有日志文件的总大小上限，小于等于 0 表示不限制
+     */
+    public static void enableRetention(long maxTotalSize) {
+        LogRetentionService.get()
+                .setMaxAge(LOG_SAVE_DAYS, TimeUnit.DAYS)
+                .setMaxTotalSize(maxTotalSize)
+                .start(1, TimeUnit.HOURS);
     }
 
     public static void setIsTreeShow(boolean isTreeShow) {
         LogTool.isTreeShow = isTreeShow;
     }
 
+    /**
+     * 设置日志最小输出级别，低于该级别的日志不会生成内容
+     *
+     * @param logLevel 如 {@link Log#INFO}
+     */
+    public static void setLogLevel(int logLevel) {
+        LogTool.logLevel = logLevel;
+    }
+
+    /**
+     * 开启异步写日志文件，需在 {@link #init(boolean, String)} 之后调用
+     */
+    public static void enableAsyncFile() {
+        enableAsyncFile(AsyncLogWriter.DEFAULT_CAPACITY, AsyncLogWriter.OverflowPolicy.DROP_OLDEST);
+    }
+
+    /**
+     * 开启异步写日志文件，需在 {@link #init(boolean, String)} 之后调用
+     *
+     * @param capacity 队列容量
+     * @param policy   队列满时的处理策略
+     */
+    public static void enableAsyncFile(int capacity, AsyncLogWriter.OverflowPolicy policy) {
+        enableAsyncFile(capacity, policy, false);
+    }
+
+    /**
+     * 开启异步写日志文件，需在 {@link #init(boolean, String)} 之后调用
+     *
+     * @param capacity 队列容量
+     * @param policy   队列满时的处理策略
+     * @param binary   是否使用紧凑二进制格式，可用 {@link com.pizza.tools.log.writer.BinaryLogReader} 读取
+     */
+    public static synchronized void enableAsyncFile(int capacity, AsyncLogWriter.OverflowPolicy policy,
+                                                    boolean binary) {
+        if (logFilePath == null || logFileName == null) {
+            throw new IllegalStateException("LogTool-->请先调用init()方法");
+        }
+        AsyncLogWriter old = asyncWriter;
+        asyncWriter = new AsyncLogWriter(logFilePath, logFileName, capacity, policy, binary);
+        if (old != null) {
+            old.shutdown();
+        }
+    }
+
+    /**
+     * 关闭异步写日志文件，剩余日志会先写入文件
+     */
+    public static synchronized void disableAsyncFile() {
+        AsyncLogWriter old = asyncWriter;
+        asyncWriter = null;
+        if (old != null) {
+            old.shutdown();
+        }
+    }
+
+    /**
+     * 将异步队列中的日志立即写入文件，可在崩溃处理中调用
+     *
+     * @return 是否在超时前写完
+     */
+    public static boolean flush() {
+        AsyncLogWriter writer = asyncWriter;
+        return writer == null || writer.flush();
+    }
+
+    /**
+     * 获取异步写文件时被丢弃的日志数量
+     *
+     * @return
+     */
+    public static long getDroppedLogCount() {
+        AsyncLogWriter writer = asyncWriter;
+        return writer == null ? 0 : writer.getDroppedCount();
+    }
+
     /****************************
      * Warn
      *********************************/
@@ -85,7 +199,20 @@ public class LogTool {
     }
 
     public static void w(String tag, Object msg, Throwable tr) {
-        log(tag, msg.toString(), tr, 'w');
+        log(tag, msg, tr, 'w');
+    }
+
+    /**
+     * 只有日志会输出时才调用 supplier 生成日志内容
+     */
+    public static void w(LogSupplier supplier) {
+        w(LOG_TAG, supplier);
+    }
+
+    public static void w(String tag, LogSupplier supplier) {
+        if (isLoggable('w')) {
+            log(tag, valueOf(supplier), null, 'w');
+        }
     }
 
     /***************************
@@ -100,7 +227,20 @@ public class LogTool {
     }
 
     public static void e(String tag, Object msg, Throwable tr) {
-        log(tag, msg.toString(), tr, 'e');
+        log(tag, msg, tr, 'e');
+    }
+
+    /**
+     * 只有日志会输出时才调用 supplier 生成日志内容
+     */
+    public static void e(LogSupplier supplier) {
+        e(LOG_TAG, supplier);
+    }
+
+    public static void e(String tag, LogSupplier supplier) {
+        if (isLoggable('e')) {
+            log(tag, valueOf(supplier), null, 'e');
+        }
     }
 
     /***************************
@@ -115,7 +255,20 @@ public class LogTool {
     }
 
     public static void d(String tag, Object msg, Throwable tr) {
-        log(tag, msg.toString(), tr, 'd');
+        log(tag, msg, tr, 'd');
+    }
+
+    /**
+     * 只有日志会输出时才调用 supplier 生成日志内容
+     */
+    public static void d(LogSupplier supplier) {
+        d(LOG_TAG, supplier);
+    }
+
+    public static void d(String tag, LogSupplier supplier) {
+        if (isLoggable('d')) {
+            log(tag, valueOf(supplier), null, 'd');
+        }
     }
 
     /****************************
@@ -130,7 +283,20 @@ public class LogTool {
     }
 
     public static void i(String tag, Object msg, Throwable tr) {
-        log(tag, msg.toString(), tr, 'i');
+        log(tag, msg, tr, 'i');
+    }
+
+    /**
+     * 只有日志会输出时才调用 supplier 生成日志内容
+     */
+    public static void i(LogSupplier supplier) {
+        i(LOG_TAG, supplier);
+    }
+
+    public static void i(String tag, LogSupplier supplier) {
+        if (isLoggable('i')) {
+            log(tag, valueOf(supplier), null, 'i');
+        }
     }
 
     /**************************
@@ -145,18 +311,64 @@ public class LogTool {
     }
 
     public static void v(String tag, Object msg, Throwable tr) {
-        log(tag, msg.toString(), tr, 'v');
+        log(tag, msg, tr, 'v');
+    }
+
+    /**
+     * 只有日志会输出时才调用 supplier 生成日志内容
+     */
+    public static void v(LogSupplier supplier) {
+        v(LOG_TAG, supplier);
+    }
+
+    public static void v(String tag, LogSupplier supplier) {
+        if (isLoggable('v')) {
+            log(tag, valueOf(supplier), null, 'v');
+        }
+    }
+
+    /**
+     * 判断该级别的日志是否会被输出
+     *
+     * @param level 日志级别字符，如 'd'
+     * @return
+     */
+    public static boolean isLoggable(char level) {
+        return logSwitch && toLogLevel(level) >= logLevel;
+    }
+
+    private static int toLogLevel(char level) {
+        switch (level) {
+            case 'e':
+                return Log.ERROR;
+            case 'w':
+                return Log.WARN;
+            case 'i':
+                return Log.INFO;
+            case 'd':
+                return Log.DEBUG;
+            default:
+                return Log.VERBOSE;
+        }
+    }
+
+    /**
+     * supplier 为 null 时与直接传入 null 一致，输出 "null"
+     */
+    private static Object valueOf(LogSupplier supplier) {
+        return supplier == null ? null : supplier.get();
     }
 
     /**
      * 根据tag, msg和等级，输出日志
      *
      * @param tag
-     * @param msg
+     * @param object
      * @param level
      */
-    private static void log(String tag, String msg, Throwable tr, char level) {
-        if (logSwitch) {
+    private static void log(String tag, Object object, Throwable tr, char level) {
+        if (isLoggable(level)) {
+            String msg = String.valueOf(object);
             if (!isTreeShow && msg.length() > 4000) {
                 for (int i = 0; i < msg.length(); i += 4000) {
                     // 当前截取的长度<总长度则继续截取最大的长度来打印
@@ -213,7 +425,10 @@ public class LogTool {
                 }
             }
 
-            if (LOG_TO_FILE) {
+            AsyncLogWriter writer = asyncWriter;
+            if (writer != null) {
+                writer.write(level, tag, tr == null ? msg : msg + "\n" + Log.getStackTraceString(tr));
+            } else if (LOG_TO_FILE) {
                 log2File(String.valueOf(level), tag, msg + (tr == null ? "" : "\n") + Log.getStackTraceString(tr));
             }
         }
@@ -267,10 +482,14 @@ public class LogTool {
      */
     public static void delFile() {
         String needDelFile = FILE_SUFFIX.format(getDateBefore());
-        File file = new File(logFilePath, needDelFile + logFileName);
+        File file = new File(logFilePath, logFileName + needDelFile);
         if (file.exists()) {
             file.delete();
         }
+        File gzipFile = new File(file.getPath() + ".gz");
+        if (gzipFile.exists()) {
+            gzipFile.delete();
+        }
     }
 
     /**
@@ -286,9 +505,12 @@ public class LogTool {
         return now.getTime();
     }
 
+    private static File getSaveLogDir() {
+        return new File(FileTool.get().getCanUseRootPath() + File.separator + ToolInit.getApplicationContext().getPackageName());
+    }
+
     public static void saveLogFile(String message) {
-        File fileDir =
-                new File(FileTool.get().getCanUseRootPath() + File.separator + ToolInit.getApplicationContext().getPackageName());
+        File fileDir = getSaveLogDir();
         if (!fileDir.exists()) {
             fileDir.mkdirs();
         }
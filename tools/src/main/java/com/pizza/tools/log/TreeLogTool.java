@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
+import com.pizza.tools.log.common.LogSupplier;
 import com.pizza.tools.log.config.LogConfig;
 import com.pizza.tools.log.config.LogDefaultConfig;
 import com.pizza.tools.log.inner.SoulsTree;
@@ -34,6 +35,13 @@ public class TreeLogTool {
         TREE_OF_SOULS.wtf(object);
     }
 
+    /**
+     * 只有该级别会输出时才调用 supplier 生成日志内容
+     */
+    public static void wtf(LogSupplier supplier) {
+        TREE_OF_SOULS.wtf(supplier);
+    }
+
     public static void e(String message, Object... args) {
         TREE_OF_SOULS.e(message, args);
     }
@@ -42,6 +50,13 @@ public class TreeLogTool {
         TREE_OF_SOULS.e(object);
     }
 
+    /**
+     * 只有该级别会输出时才调用 supplier 生成日志内容
+     */
+    public static void e(LogSupplier supplier) {
+        TREE_OF_SOULS.e(supplier);
+    }
+
     public static void w(String message, Object... args) {
         TREE_OF_SOULS.w(message, args);
     }
@@ -50,6 +65,13 @@ public class TreeLogTool {
         TREE_OF_SOULS.w(object);
     }
 
+    /**
+     * 只有该级别会输出时才调用 supplier 生成日志内容
+     */
+    public static void w(LogSupplier supplier) {
+        TREE_OF_SOULS.w(supplier);
+    }
+
     public static void d(String message, Object... args) {
         TREE_OF_SOULS.d(message, args);
     }
@@ -58,6 +80,13 @@ public class TreeLogTool {
         TREE_OF_SOULS.d(object);
     }
 
+    /**
+     * 只有该级别会输出时才调用 supplier 生成日志内容
+     */
+    public static void d(LogSupplier supplier) {
+        TREE_OF_SOULS.d(supplier);
+    }
+
     public static void i(String message, Object... args) {
         TREE_OF_SOULS.i(message, args);
     }
@@ -66,6 +95,13 @@ public class TreeLogTool {
         TREE_OF_SOULS.i(object);
     }
 
+    /**
+     * 只有该级别会输出时才调用 supplier 生成日志内容
+     */
+    public static void i(LogSupplier supplier) {
+        TREE_OF_SOULS.i(supplier);
+    }
+
     public static void v(String message, Object... args) {
         TREE_OF_SOULS.v(message, args);
     }
@@ -74,6 +110,13 @@ public class TreeLogTool {
         TREE_OF_SOULS.v(object);
     }
 
+    /**
+     * 只有该级别会输出时才调用 supplier 生成日志内容
+     */
+    public static void v(LogSupplier supplier) {
+        TREE_OF_SOULS.v(supplier);
+    }
+
     public static void json(String json) {
         TREE_OF_SOULS.json(json);
     }
@@ -82,6 +125,15 @@ public class TreeLogTool {
         TREE_OF_SOULS.xml(xml);
     }
 
+    /**
+     * 判断该级别的日志是否会被输出，可用于包裹构造成本较高的日志
+     * @param type 日志级别，如 {@link android.util.Log#DEBUG}
+     * @return
+     */
+    public static boolean isLoggable(int type) {
+        return TREE_OF_SOULS.isLoggable(type);
+    }
+
     public static Tree asTree() {
         return TREE_OF_SOULS;
     }
@@ -100,10 +152,8 @@ public class TreeLogTool {
      * @return
      */
     public static Tree setTag(String tag) {
-        Tree[] forest = ((SoulsTree) TREE_OF_SOULS).getForestAsArray();
-        for (Tree tree : forest) {
-            tree.setTag(tag);
-        }
+        // 日志在主干树中生成事件，标签只需设置在主干树上
+        TREE_OF_SOULS.setTag(tag);
         return TREE_OF_SOULS;
     }
 
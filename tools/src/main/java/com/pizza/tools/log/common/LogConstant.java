@@ -57,4 +57,14 @@ public class LogConstant {
     public static List<Parser> getParsers() {
         return LogDefaultConfig.getInstance().getParseList();
     }
+
+    /**
+     * 获取能解析该类型的解析器
+     *
+     * @param cla 对象的具体类型
+     * @return 没有匹配的解析器时返回 null
+     */
+    public static Parser getParser(Class<?> cla) {
+        return LogDefaultConfig.getInstance().findParser(cla);
+    }
 }
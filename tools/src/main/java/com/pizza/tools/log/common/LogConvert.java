@@ -4,7 +4,9 @@ import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.pizza.tools.log.parser.Parser;
 
@@ -13,6 +15,28 @@ import com.pizza.tools.log.parser.Parser;
  */
 public class LogConvert {
 
+    /**
+     * 循环引用时的占位输出
+     */
+    private static final String CIRCULAR_REFERENCE = "{circular reference}";
+
+    /**
+     * 每个类的字段描述缓存，Android 低版本没有 ClassValue，这里用并发 Map 代替
+     */
+    private static final ConcurrentHashMap<Class<?>, ClassDescriptor> CLASS_DESCRIPTORS =
+            new ConcurrentHashMap<>();
+
+    /**
+     * 当前线程正在解析的对象，用于检测循环引用
+     */
+    private static final ThreadLocal<IdentityHashMap<Object, Boolean>> VISITING =
+            new ThreadLocal<IdentityHashMap<Object, Boolean>>() {
+                @Override
+                protected IdentityHashMap<Object, Boolean> initialValue() {
+                    return new IdentityHashMap<>();
+                }
+            };
+
     /**
      * 获取数组的纬度
      *
@@ -20,13 +44,10 @@ public class LogConvert {
      * @return
      */
     private static int getArrayDimension(Object object) {
+        String name = object.getClass().getName();
         int dim = 0;
-        for (int i = 0; i < object.toString().length(); ++i) {
-            if (object.toString().charAt(i) == '[') {
-                ++dim;
-            } else {
-                break;
-            }
+        while (dim < name.length() && name.charAt(dim) == '[') {
+            ++dim;
         }
         return dim;
     }
@@ -49,8 +70,8 @@ public class LogConvert {
      */
     private static char getType(Object object) {
         if (isArray(object)) {
-            String str = object.toString();
-            return str.substring(str.lastIndexOf("[") + 1, str.lastIndexOf("[") + 2).charAt(0);
+            String name = object.getClass().getName();
+            return name.charAt(name.lastIndexOf('[') + 1);
         }
         return 0;
     }
@@ -86,11 +107,14 @@ public class LogConvert {
                     case 'F':
                         result.append(Arrays.toString((float[]) array));
                         break;
+                    case 'C':
+                        result.append(Arrays.toString((char[]) array));
+                        break;
                     case 'L':
                         Object[] objects = (Object[]) array;
                         result.append("[");
                         for (int i = 0; i < objects.length; ++i) {
-                            result.append(objectToString(objects[i]));
+                            appendObject(result, objects[i], 0);
                             if (i != objects.length - 1) {
                                 result.append(",");
                             }
@@ -104,7 +128,12 @@ public class LogConvert {
             } else {
                 result.append("[");
                 for (int i = 0; i < ((Object[]) array).length; i++) {
-                    traverseArray(result, ((Object[]) array)[i]);
+                    Object item = ((Object[]) array)[i];
+                    if (item == null) {
+                        result.append("null");
+                    } else {
+                        traverseArray(result, item);
+                    }
                     if (i != ((Object[]) array).length - 1) {
                         result.append(",");
                     }
@@ -116,18 +145,6 @@ public class LogConvert {
         }
     }
 
-    /**
-     * 将数组内容转化为字符串
-     *
-     * @param array
-     * @return
-     */
-    private static String parseArray(Object array) {
-        StringBuilder result = new StringBuilder();
-        traverseArray(result, array);
-        return result.toString();
-    }
-
     /**
      * 将对象转化为String
      *
@@ -135,7 +152,12 @@ public class LogConvert {
      * @return
      */
     public static String objectToString(Object object) {
-        return objectToString(object, 0);
+        if (object == null) {
+            return LogConstant.STRING_OBJECT_NULL;
+        }
+        StringBuilder builder = new StringBuilder();
+        appendObject(builder, object, 0);
+        return builder.toString();
     }
 
     /**
@@ -155,102 +177,177 @@ public class LogConvert {
     }
 
     /**
-     * 将对象转化为String
+     * 将对象直接写入 builder
      *
+     * @param builder
      * @param object
      * @param childLevel 对象包含子对象层级
-     * @return
      */
-    private static String objectToString(Object object, int childLevel) {
+    private static void appendObject(StringBuilder builder, Object object, int childLevel) {
         if (object == null) {
-            return LogConstant.STRING_OBJECT_NULL;
+            builder.append(LogConstant.STRING_OBJECT_NULL);
+            return;
         }
         if (childLevel > LogConstant.MAX_CHILD_LEVEL) {
-            return object.toString();
-        }
-        if (LogConstant.getParsers() != null && LogConstant.getParsers().size() > 0) {
-            for (Parser parser : LogConstant.getParsers()) {
-                if (parser.parseClassType().isAssignableFrom(object.getClass())) {
-                    return parser.parseString(object);
-                }
-            }
+            builder.append(object);
+            return;
         }
-        if (isArray(object)) {
-            return parseArray(object);
+        IdentityHashMap<Object, Boolean> visiting = VISITING.get();
+        if (visiting.containsKey(object)) {
+            builder.append(CIRCULAR_REFERENCE);
+            return;
         }
-        if (object.toString().startsWith(object.getClass().getName() + "@")) {
-            StringBuilder builder = new StringBuilder();
-            getClassFields(object.getClass(), builder, object, false, childLevel);
-            Class superClass = object.getClass().getSuperclass();
-            while (!superClass.equals(Object.class)) {
-                getClassFields(superClass, builder, object, true, childLevel);
+        visiting.put(object, Boolean.TRUE);
+        try {
+            Class<?> cla = object.getClass();
+            Parser parser = LogConstant.getParser(cla);
+            if (parser != null) {
+                builder.append(parser.parseString(object));
+                return;
+            }
+            if (cla.isArray()) {
+                traverseArray(builder, object);
+                return;
+            }
+            ClassDescriptor descriptor = getClassDescriptor(cla);
+            if (descriptor.customToString) {
+                // 若对象重写toString()方法默认走toString()
+                builder.append(object.toString());
+                return;
+            }
+            appendClassFields(descriptor, builder, object, false, childLevel);
+            Class<?> superClass = cla.getSuperclass();
+            while (superClass != null && !superClass.equals(Object.class)) {
+                appendClassFields(getClassDescriptor(superClass), builder, object, true, childLevel);
                 superClass = superClass.getSuperclass();
             }
-            return builder.toString();
-        } else {
-            // 若对象重写toString()方法默认走toString()
-            return object.toString();
+        } finally {
+            visiting.remove(object);
         }
     }
 
     /**
      * 拼接class的字段和值
      *
-     * @param cla
+     * @param descriptor  class 的字段描述
      * @param builder
      * @param o           对象
      * @param isSubClass  死否为子class
      * @param childOffset 递归解析属性的层级
      */
-    private static void getClassFields(Class cla, StringBuilder builder, Object o, boolean
-            isSubClass,
-                                       int childOffset) {
-        if (cla.equals(Object.class)) {
-            return;
-        }
+    private static void appendClassFields(ClassDescriptor descriptor, StringBuilder builder, Object o,
+                                          boolean isSubClass, int childOffset) {
         if (isSubClass) {
             builder.append(LogConstant.BR).append(LogConstant.BR).append("=> ");
         }
-        String breakLine = "";
-        builder.append(cla.getSimpleName()).append(" {");
-        Field[] fields = cla.getDeclaredFields();
-        for (int i = 0; i < fields.length; ++i) {
-            Field field = fields[i];
-            field.setAccessible(true);
-            if (cla.isMemberClass() && !isStaticInnerClass(cla) && i == 0) {
-                continue;
-            }
-            Object subObject = null;
+        builder.append(descriptor.simpleName).append(" {");
+        int start = builder.length();
+        for (Field field : descriptor.fields) {
+            Object subObject;
             try {
                 subObject = field.get(o);
             } catch (IllegalAccessException e) {
                 subObject = e;
-            } finally {
-                if (subObject != null) {
-                    // 解决Instant Run情况下内部类死循环的问题
-                    if (!isStaticInnerClass(cla) && (field.getName().equals("$change") || field
-                            .getName().equalsIgnoreCase("this$0"))) {
-                        continue;
-                    }
-                    if (subObject instanceof String) {
-                        subObject = "\"" + subObject + "\"";
-                    } else if (subObject instanceof Character) {
-                        subObject = "\'" + subObject + "\'";
-                    }
-                    if (childOffset < LogConstant.MAX_CHILD_LEVEL) {
-                        subObject = objectToString(subObject, childOffset + 1);
-                    }
-                }
-                String formatString = breakLine + "%s = %s, ";
-                builder.append(String.format(formatString, field.getName(),
-                        subObject == null ? "null" : subObject.toString()));
             }
+            builder.append(field.getName()).append(" = ");
+            if (subObject == null) {
+                builder.append("null");
+            } else if (subObject instanceof String) {
+                builder.append('"').append((String) subObject).append('"');
+            } else if (subObject instanceof Character) {
+                builder.append('\'').append(((Character) subObject).charValue()).append('\'');
+            } else if (childOffset < LogConstant.MAX_CHILD_LEVEL) {
+                appendObject(builder, subObject, childOffset + 1);
+            } else {
+                builder.append(subObject);
+            }
+            builder.append(", ");
         }
-        if (builder.toString().endsWith("{")) {
+        if (builder.length() == start) {
             builder.append("}");
         } else {
-            builder.replace(builder.length() - 2, builder.length() - 1, breakLine + "}");
+            builder.replace(builder.length() - 2, builder.length() - 1, "}");
+        }
+    }
+
+    /**
+     * 获取 class 的缓存描述，首次访问时解析字段并设置可访问
+     *
+     * @param cla
+     * @return
+     */
+    private static ClassDescriptor getClassDescriptor(Class<?> cla) {
+        ClassDescriptor descriptor = CLASS_DESCRIPTORS.get(cla);
+        if (descriptor == null) {
+            descriptor = new ClassDescriptor(cla);
+            ClassDescriptor exist = CLASS_DESCRIPTORS.putIfAbsent(cla, descriptor);
+            if (exist != null) {
+                descriptor = exist;
+            }
+        }
+        return descriptor;
+    }
+
+    /**
+     * 类的字段描述，包括可访问的字段和是否重写了 toString()
+     */
+    private static final class ClassDescriptor {
+        final String simpleName;
+        final Field[] fields;
+        final boolean customToString;
+
+        ClassDescriptor(Class<?> cla) {
+            simpleName = cla.getSimpleName();
+            boolean custom;
+            try {
+                custom = cla.getMethod("toString").getDeclaringClass() != Object.class;
+            } catch (NoSuchMethodException e) {
+                custom = false;
+            }
+            customToString = custom;
+            if (custom) {
+                // 重写了 toString() 时不会解析字段
+                fields = new Field[0];
+                return;
+            }
+            boolean staticInner = isStaticInnerClass(cla);
+            List<Field> list = new ArrayList<>();
+            for (Field field : cla.getDeclaredFields()) {
+                // 解决Instant Run情况下内部类死循环的问题，跳过编译器生成的外部类引用
+                if (field.isSynthetic() || (!staticInner && (field.getName().equals("$change")
+                        || field.getName().equalsIgnoreCase("this$0")))) {
+                    continue;
+                }
+                try {
+                    field.setAccessible(true);
+                } catch (RuntimeException ignored) {
+                    // 无法设置时读取会抛出 IllegalAccessException，作为字段值输出
+                }
+                list.add(field);
+            }
+            fields = list.toArray(new Field[list.size()]);
+        }
+    }
+
+    /**
+     * 追加调用位置，格式与 {@link StackTraceElement#toString()} 括号内的部分一致
+     *
+     * @param builder
+     * @param caller
+     */
+    public static void appendCallerLocation(StringBuilder builder, StackTraceElement caller) {
+        builder.append('(');
+        if (caller.isNativeMethod()) {
+            builder.append("Native Method");
+        } else if (caller.getFileName() == null) {
+            builder.append("Unknown Source");
+        } else {
+            builder.append(caller.getFileName());
+            if (caller.getLineNumber() >= 0) {
+                builder.append(':').append(caller.getLineNumber());
+            }
         }
+        builder.append(')');
     }
 
     /**
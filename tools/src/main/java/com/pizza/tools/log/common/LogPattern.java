@@ -6,6 +6,7 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -27,9 +28,31 @@ public abstract class LogPattern {
         return LogConvert.shorten(string, count, length);
     }
 
+    /**
+     * 将格式化结果追加到调用者提供的 builder 中，没有截取长度设置时不产生中间字符串
+     *
+     * @param builder
+     * @param caller
+     */
+    public final void appendTo(StringBuilder builder, StackTraceElement caller) {
+        if (isUnbounded()) {
+            doAppend(builder, caller);
+        } else {
+            builder.append(apply(caller));
+        }
+    }
+
     protected abstract String doApply(StackTraceElement caller);
 
-    protected boolean isCallerNeeded() {
+    protected void doAppend(StringBuilder builder, StackTraceElement caller) {
+        builder.append(doApply(caller));
+    }
+
+    private boolean isUnbounded() {
+        return count == 0 && length == 0;
+    }
+
+    public boolean isCallerNeeded() {
         return false;
     }
 
@@ -54,11 +77,20 @@ public abstract class LogPattern {
         protected String doApply(StackTraceElement caller) {
             return string;
         }
+
+        @Override
+        protected void doAppend(StringBuilder builder, StackTraceElement caller) {
+            builder.append(string);
+        }
     }
 
     public static class DateLogPattern extends LogPattern {
 
         private final SimpleDateFormat dateFormat;
+        /**
+         * 最近一次格式化的结果，同一毫秒内直接复用
+         */
+        private volatile CachedTime cachedTime = new CachedTime(Long.MIN_VALUE, null);
 
         @SuppressLint("SimpleDateFormat")
         public DateLogPattern(int count, int length, String dateFormat) {
@@ -73,15 +105,41 @@ public abstract class LogPattern {
 
         @Override
         protected String doApply(StackTraceElement caller) {
-            return dateFormat.format(new Date());
+            long now = System.currentTimeMillis();
+            CachedTime cached = cachedTime;
+            if (cached.millis == now) {
+                return cached.text;
+            }
+            String text;
+            // SimpleDateFormat 不是线程安全的，只在缓存未命中时加锁格式化
+            synchronized (dateFormat) {
+                text = dateFormat.format(new Date(now));
+            }
+            cachedTime = new CachedTime(now, text);
+            return text;
         }
 
+        private static final class CachedTime {
+            final long millis;
+            final String text;
+
+            CachedTime(long millis, String text) {
+                this.millis = millis;
+                this.text = text;
+            }
+        }
     }
 
     public static class CallerLogPattern extends LogPattern {
 
+        private static final int MAX_CACHED_CALLERS = 512;
+
         private int callerCount;
         private int callerLength;
+        /**
+         * 调用位置对应的格式化结果
+         */
+        private final ConcurrentHashMap<StackTraceElement, String> callerCache = new ConcurrentHashMap<>();
 
         public CallerLogPattern(int count, int length, int callerCount, int callerLength) {
             super(count, length);
@@ -93,28 +151,33 @@ public abstract class LogPattern {
         protected String doApply(StackTraceElement caller) {
             if (caller == null) {
                 throw new IllegalArgumentException("Caller not found");
+            }
+            String cached = callerCache.get(caller);
+            if (cached != null) {
+                return cached;
+            }
+            StringBuilder builder = new StringBuilder(64);
+            if (caller.getLineNumber() < 0) {
+                builder.append(caller.getClassName()).append('#').append(caller.getMethodName());
             } else {
-                String callerString;
-                if (caller.getLineNumber() < 0) {
-                    callerString = String.format("%s#%s", caller.getClassName(), caller
-                            .getMethodName());
-                } else {
-                    String stackTrace = caller.toString();
-                    stackTrace = stackTrace.substring(stackTrace.lastIndexOf('('), stackTrace
-                            .length());
-                    callerString = String.format("%s.%s%s", caller.getClassName(), caller
-                            .getMethodName(), stackTrace);
-                }
-                try {
-                    return LogConvert.shortenClassName(callerString, callerCount, callerLength);
-                } catch (Exception e) {
-                    return e.getMessage();
-                }
+                builder.append(caller.getClassName()).append('.').append(caller.getMethodName());
+                LogConvert.appendCallerLocation(builder, caller);
+            }
+            String callerString;
+            try {
+                callerString = LogConvert.shortenClassName(builder.toString(), callerCount, callerLength);
+            } catch (Exception e) {
+                return e.getMessage();
             }
+            if (callerCache.size() >= MAX_CACHED_CALLERS) {
+                callerCache.clear();
+            }
+            callerCache.put(caller, callerString);
+            return callerString;
         }
 
         @Override
-        protected boolean isCallerNeeded() {
+        public boolean isCallerNeeded() {
             return true;
         }
     }
@@ -122,6 +185,10 @@ public abstract class LogPattern {
     public static class ConcatenateLogPattern extends LogPattern {
 
         private final List<LogPattern> patternList;
+        /**
+         * 展开后的渲染操作，没有截取长度的子组合会被拍平，相邻的纯文本会被合并
+         */
+        private volatile LogPattern[] ops;
 
         public ConcatenateLogPattern(int count, int length, List<LogPattern> patternList) {
             super(count, length);
@@ -130,19 +197,67 @@ public abstract class LogPattern {
 
         public void addPattern(LogPattern pattern) {
             patternList.add(pattern);
+            ops = null;
         }
 
         @Override
         protected String doApply(StackTraceElement caller) {
             StringBuilder builder = new StringBuilder();
-            for (LogPattern pattern : patternList) {
-                builder.append(pattern.apply(caller));
-            }
+            doAppend(builder, caller);
             return builder.toString();
         }
 
         @Override
-        protected boolean isCallerNeeded() {
+        protected void doAppend(StringBuilder builder, StackTraceElement caller) {
+            LogPattern[] ops = this.ops;
+            if (ops == null) {
+                ops = compileOps();
+                this.ops = ops;
+            }
+            for (LogPattern op : ops) {
+                op.appendTo(builder, caller);
+            }
+        }
+
+        private LogPattern[] compileOps() {
+            List<LogPattern> result = new ArrayList<>();
+            flatten(this, result);
+            List<LogPattern> merged = new ArrayList<>(result.size());
+            StringBuilder plain = null;
+            for (LogPattern op : result) {
+                if (op instanceof PlainLogPattern && op.isUnbounded()) {
+                    if (plain == null) {
+                        plain = new StringBuilder();
+                    }
+                    plain.append(((PlainLogPattern) op).string);
+                    continue;
+                }
+                if (plain != null) {
+                    if (plain.length() > 0) {
+                        merged.add(new PlainLogPattern(0, 0, plain.toString()));
+                    }
+                    plain = null;
+                }
+                merged.add(op);
+            }
+            if (plain != null && plain.length() > 0) {
+                merged.add(new PlainLogPattern(0, 0, plain.toString()));
+            }
+            return merged.toArray(new LogPattern[merged.size()]);
+        }
+
+        private static void flatten(ConcatenateLogPattern pattern, List<LogPattern> out) {
+            for (LogPattern child : pattern.patternList) {
+                if (child instanceof ConcatenateLogPattern && child.isUnbounded()) {
+                    flatten((ConcatenateLogPattern) child, out);
+                } else {
+                    out.add(child);
+                }
+            }
+        }
+
+        @Override
+        public boolean isCallerNeeded() {
             for (LogPattern pattern : patternList) {
                 if (pattern.isCallerNeeded()) {
                     return true;
@@ -161,6 +276,11 @@ public abstract class LogPattern {
         protected String doApply(StackTraceElement caller) {
             return Thread.currentThread().getName();
         }
+
+        @Override
+        protected void doAppend(StringBuilder builder, StackTraceElement caller) {
+            builder.append(Thread.currentThread().getName());
+        }
     }
 
     public static class Compiler {
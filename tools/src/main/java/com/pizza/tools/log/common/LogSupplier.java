@@ -0,0 +1,17 @@
+package com.pizza.tools.log.common;
+
+/**
+ * @Description: 延迟生成日志内容
+ * <p>
+ * 只有日志确定会输出时才会调用 {@link #get()}，
+ * 关闭日志或级别被过滤时不会产生任何字符串拼接和 toString() 开销。
+ * </p>
+ */
+public interface LogSupplier {
+    /**
+     * 生成日志内容
+     *
+     * @return 日志对象，会按普通对象的方式转换为字符串
+     */
+    Object get();
+}
@@ -4,7 +4,9 @@ import android.text.TextUtils;
 import android.util.Log;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.pizza.tools.log.common.LogPattern;
 import com.pizza.tools.log.parser.Parser;
@@ -18,12 +20,14 @@ public class LogDefaultConfig implements LogConfig {
     private boolean showBorder = false;
     private int logLevel = Log.VERBOSE;
     private List<Parser> parseList;
+    private volatile ParserIndex parserIndex = new ParserIndex(new Parser[0]);
     private String formatTag;
+    private volatile LogPattern logPattern;
 
     private static LogDefaultConfig singleton;
 
     private LogDefaultConfig() {
-        parseList = new ArrayList<>();
+        parseList = Collections.emptyList();
     }
 
     public static LogDefaultConfig getInstance() {
@@ -52,19 +56,38 @@ public class LogDefaultConfig implements LogConfig {
     @Override
     public LogConfig configFormatTag(String formatTag) {
         this.formatTag = formatTag;
+        this.logPattern = TextUtils.isEmpty(formatTag) ? null : LogPattern.compile(formatTag);
         return this;
     }
 
+    /**
+     * 获取编译好的格式化标签，未设置时返回 null
+     *
+     * @return
+     */
+    public LogPattern getLogPattern() {
+        return logPattern;
+    }
+
     public String getFormatTag(StackTraceElement caller) {
-        if (TextUtils.isEmpty(formatTag) || caller == null) {
-            return null;
-        }
-        LogPattern logPattern = LogPattern.compile(formatTag);
-        if (logPattern != null) {
-            return logPattern.apply(caller);
-        } else {
-            return null;
+        StringBuilder builder = new StringBuilder();
+        return appendFormatTag(builder, caller) ? builder.toString() : null;
+    }
+
+    /**
+     * 将格式化标签直接追加到 builder 中，不产生中间字符串
+     *
+     * @param builder
+     * @param caller
+     * @return 未设置格式化标签时返回 false，builder 不变
+     */
+    public boolean appendFormatTag(StringBuilder builder, StackTraceElement caller) {
+        LogPattern logPattern = this.logPattern;
+        if (logPattern == null || caller == null) {
+            return false;
         }
+        logPattern.appendTo(builder, caller);
+        return true;
     }
 
     @Override
@@ -81,16 +104,45 @@ public class LogDefaultConfig implements LogConfig {
 
     @Override
     public LogConfig addParserClass(Class<? extends Parser>... classes) {
-        for (Class<? extends Parser> cla : classes) {
-            try {
-                parseList.add(0, cla.newInstance());
-            } catch (Exception e) {
-                e.printStackTrace();
+        synchronized (this) {
+            List<Parser> newList = new ArrayList<>(parseList);
+            for (Class<? extends Parser> cla : classes) {
+                if (isParserRegistered(newList, cla)) {
+                    // 已注册的解析器不再重复添加，避免每次创建树都插入默认解析器
+                    continue;
+                }
+                try {
+                    newList.add(0, cla.newInstance());
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
             }
+            parseList = Collections.unmodifiableList(newList);
+            // 解析器变化后整体替换索引，旧索引中的缓存随之失效
+            parserIndex = new ParserIndex(newList.toArray(new Parser[newList.size()]));
         }
         return this;
     }
 
+    private static boolean isParserRegistered(List<Parser> list, Class<? extends Parser> cla) {
+        for (Parser parser : list) {
+            if (parser.getClass() == cla) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 查找能解析该类型的解析器，结果按具体类型缓存
+     *
+     * @param cla 对象的具体类型
+     * @return 没有匹配的解析器时返回 null
+     */
+    public Parser findParser(Class<?> cla) {
+        return parserIndex.find(cla);
+    }
+
     public boolean isEnable() {
         return enable;
     }
@@ -113,4 +165,43 @@ public class LogDefaultConfig implements LogConfig {
     public List<Parser> getParseList() {
         return parseList;
     }
+
+    /**
+     * 解析器索引，按具体类型缓存查找结果，没有匹配的类型也会缓存
+     */
+    private static final class ParserIndex {
+        private static final Parser NO_PARSER = new Parser<Object>() {
+            @Override
+            public Class<Object> parseClassType() {
+                return Object.class;
+            }
+
+            @Override
+            public String parseString(Object o) {
+                return null;
+            }
+        };
+
+        private final Parser[] parsers;
+        private final ConcurrentHashMap<Class<?>, Parser> resolved = new ConcurrentHashMap<>();
+
+        ParserIndex(Parser[] parsers) {
+            this.parsers = parsers;
+        }
+
+        Parser find(Class<?> cla) {
+            Parser parser = resolved.get(cla);
+            if (parser == null) {
+                parser = NO_PARSER;
+                for (Parser candidate : parsers) {
+                    if (candidate.parseClassType().isAssignableFrom(cla)) {
+                        parser = candidate;
+                        break;
+                    }
+                }
+                resolved.put(cla, parser);
+            }
+            return parser == NO_PARSER ? null : parser;
+        }
+    }
 }
@@ -7,16 +7,22 @@ import android.os.Build;
 import android.os.Environment;
 import android.util.Log;
 
-import java.io.BufferedWriter;
+import com.pizza.tools.log.writer.BinaryLogEncoder;
+import com.pizza.tools.log.writer.LogRetentionService;
+import com.pizza.tools.log.writer.RollingFileAppender;
+
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FilenameFilter;
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.Locale;
 
 /**
  * @Description: 文件树-输出日志信息到文件
+ * <p>
+ * 每个日志级别保持一个打开的滚动文件，按时间周期和文件大小滚动，关闭的分段压缩为 gzip。
+ * </p>
  */
 public class FileTree extends Tree {
 
@@ -28,14 +34,113 @@ public class FileTree extends Tree {
     private static final String FILE_NAME_ERROR = "error_";
     private static final String FILE_NAME_ASSERT = "assert_";
     private static final String FILE_NAME_SUFFIX = ".log";
+    /**
+     * 该树写入的日志文件，包括压缩后的分段
+     */
+    private static final FilenameFilter LOG_FILE_FILTER = new FilenameFilter() {
+        @Override
+        public boolean accept(File dir, String name) {
+            return name.endsWith(FILE_NAME_SUFFIX) || name.endsWith(FILE_NAME_SUFFIX + ".gz")
+                    || name.endsWith(BinaryLogEncoder.FILE_SUFFIX)
+                    || name.endsWith(BinaryLogEncoder.FILE_SUFFIX + ".gz");
+        }
+    };
     private Context mContext;
     private String mDirectory;
-    private File mLogFile;
-    private boolean mIsPrintPhoneInfo = false;
+    private final RollingFileAppender[] mAppenders = new RollingFileAppender[Log.ASSERT + 1];
+    private long mMaxFileSize = RollingFileAppender.DEFAULT_MAX_FILE_SIZE;
+    private int mMaxBackupCount = RollingFileAppender.DEFAULT_MAX_BACKUP_COUNT;
+    private boolean mCompress = true;
+    private boolean mBinary = false;
+    /**
+     * 与 mAppenders 一一对应，编码器的字典等状态只对所属文件有效，不能在级别之间共享
+     */
+    private final BinaryLogEncoder[] mEncoders = new BinaryLogEncoder[Log.ASSERT + 1];
+    private String mPhoneInfo;
+    private final SimpleDateFormat mTimeFormat = new SimpleDateFormat("yyyy-MM-dd-HH-mm-ss", Locale.getDefault());
+    private long mCachedSecond = Long.MIN_VALUE;
+    private String mCachedTime;
+    private final StringBuilder mBuilder = new StringBuilder(256);
 
     public FileTree(Context mContext, String mDirectory) {
         this.mContext = mContext;
         this.mDirectory = mDirectory;
+        LogRetentionService.get().watch(getLogDirectory(), LOG_FILE_FILTER);
+    }
+
+    /**
+     * 设置单个日志文件的最大字节数，需在输出日志前设置
+     */
+    public FileTree setMaxFileSize(long maxFileSize) {
+        this.mMaxFileSize = maxFileSize;
+        return this;
+    }
+
+    /**
+     * 设置每个级别最多保留的历史文件个数，需在输出日志前设置
+     */
+    public FileTree setMaxBackupCount(int maxBackupCount) {
+        this.mMaxBackupCount = maxBackupCount;
+        return this;
+    }
+
+    /**
+     * 设置是否压缩历史日志文件，需在输出日志前设置
+     */
+    public FileTree setCompress(boolean compress) {
+        this.mCompress = compress;
+        return this;
+    }
+
+    /**
+     * 设置是否使用紧凑二进制格式保存日志，文件后缀为 {@link BinaryLogEncoder#FILE_SUFFIX}，
+     * 可用 {@link com.pizza.tools.log.writer.BinaryLogReader} 读取，需在输出日志前设置
+     */
+    public FileTree setBinary(boolean binary) {
+        this.mBinary = binary;
+        return this;
+    }
+
+    /**
+     * 获取日志目录
+     *
+     * @return
+     */
+    public File getLogDirectory() {
+        return new File(PATH + mDirectory);
+    }
+
+    /**
+     * 将所有级别的日志刷入磁盘
+     */
+    public synchronized void flush() {
+        for (RollingFileAppender appender : mAppenders) {
+            if (appender != null) {
+                appender.flush();
+            }
+        }
+    }
+
+    /**
+     * 关闭所有打开的日志文件
+     */
+    public synchronized void close() {
+        for (int i = 0; i < mAppenders.length; i++) {
+            if (mAppenders[i] != null) {
+                mAppenders[i].close();
+                mAppenders[i] = null;
+            }
+        }
+    }
+
+    @Override
+    protected void log(LogEvent event) {
+        if (!mBinary) {
+            super.log(event);
+            return;
+        }
+        // 二进制格式直接保存原始字段，不需要排版
+        saveEventToSDCard(event);
     }
 
     @Override
@@ -43,105 +148,153 @@ public class FileTree extends Tree {
         saveMessageToSDCard(type, tag, message);
     }
 
-    private void saveMessageToSDCard(int type, String tag, String message) {
-        //如果SD卡不存在或无法使用，则无法把日志信息写入SD卡
-        if (!Environment.getExternalStorageState().equals(Environment.MEDIA_MOUNTED)) {
+    private synchronized void saveEventToSDCard(LogEvent event) {
+        int type = toAppenderIndex(event.getType());
+        RollingFileAppender appender = getAppender(type);
+        if (appender == null) {
+            return;
+        }
+        BinaryLogEncoder encoder = mEncoders[type];
+        if (encoder == null) {
+            encoder = new BinaryLogEncoder();
+            mEncoders[type] = encoder;
+        }
+        try {
+            appender.appendEncoded(encoder, event.getTimeMillis(), event.getType(), event.getTag(),
+                    event.getThreadName(), event.getCallerInfo(), event.getMessage());
+        } catch (IOException e) {
+            e.printStackTrace();
+            appender.close();
+        }
+    }
+
+    private synchronized void saveMessageToSDCard(int type, String tag, String message) {
+        RollingFileAppender appender = getAppender(type);
+        if (appender == null) {
+            //如果SD卡不存在或无法使用，则无法把日志信息写入SD卡
             System.out.print("sdcard unmounted, skip dump exception");
             return;
         }
-        File dir = new File(PATH + mDirectory);
-        if (!dir.exists()) {
-            dir.mkdirs();
+        long now = System.currentTimeMillis();
+        if (now / 1000 != mCachedSecond) {
+            mCachedSecond = now / 1000;
+            mCachedTime = mTimeFormat.format(new Date(now));
+        }
+        StringBuilder builder = mBuilder;
+        builder.setLength(0);
+        //打印日志时间和日志信息
+        builder.append(mCachedTime).append('\n')
+                .append(tag).append('\t').append(message).append("\n\n");
+        try {
+            appender.append(builder);
+        } catch (IOException e) {
+            e.printStackTrace();
+            appender.close();
+        }
+    }
+
+    private int toAppenderIndex(int type) {
+        return type < 0 || type >= mAppenders.length ? Log.VERBOSE : type;
+    }
+
+    private RollingFileAppender getAppender(int type) {
+        type = toAppenderIndex(type);
+        RollingFileAppender appender = mAppenders[type];
+        if (appender != null) {
+            return appender;
+        }
+        // 只在首次打开文件时检查存储状态
+        if (!Environment.getExternalStorageState().equals(Environment.MEDIA_MOUNTED)) {
+            return null;
         }
-        String timeDay = new SimpleDateFormat("yyyy-MM-dd").format(new Date(System.currentTimeMillis()));
-        String timeHour = new SimpleDateFormat("yyyy-MM-dd-HH").format(new Date(System.currentTimeMillis()));
-        String timeMinute = new SimpleDateFormat("yyyy-MM-dd-HH-mm").format(new Date(System.currentTimeMillis()));
-        String timeSecond = new SimpleDateFormat("yyyy-MM-dd-HH-mm-ss").format(new Date(System.currentTimeMillis()));
-        String fileName = FILE_NAME_VERBOSE;
+        String prefix;
+        RollingFileAppender.RollPeriod period;
         switch (type) {
-            case Log.VERBOSE:
-                fileName = FILE_NAME_VERBOSE + timeMinute;
-                break;
             case Log.INFO:
-                fileName = FILE_NAME_INFO + timeHour;
+                prefix = FILE_NAME_INFO;
+                period = RollingFileAppender.RollPeriod.HOUR;
                 break;
             case Log.DEBUG:
-                fileName = FILE_NAME_DEBUG + timeMinute;
+                prefix = FILE_NAME_DEBUG;
+                period = RollingFileAppender.RollPeriod.HOUR;
                 break;
             case Log.WARN:
-                fileName = FILE_NAME_WARN + timeDay;
+                prefix = FILE_NAME_WARN;
+                period = RollingFileAppender.RollPeriod.DAY;
                 break;
             case Log.ERROR:
-                fileName = FILE_NAME_ERROR + timeSecond;
+                prefix = FILE_NAME_ERROR;
+                period = RollingFileAppender.RollPeriod.DAY;
                 break;
             case Log.ASSERT:
-                fileName = FILE_NAME_ASSERT + timeDay;
+                prefix = FILE_NAME_ASSERT;
+                period = RollingFileAppender.RollPeriod.DAY;
                 break;
+            case Log.VERBOSE:
             default:
+                prefix = FILE_NAME_VERBOSE;
+                period = RollingFileAppender.RollPeriod.HOUR;
                 break;
         }
-        mLogFile = new File(PATH + mDirectory + File.separator + fileName + FILE_NAME_SUFFIX);
-        try {
-            if (!mLogFile.exists()) {
-                mLogFile.createNewFile();
-                mIsPrintPhoneInfo = true;
-            } else {
-                mIsPrintPhoneInfo = false;
-            }
-            PrintWriter printWriter = new PrintWriter(new BufferedWriter(new FileWriter(mLogFile, true)));
-            if (!mIsPrintPhoneInfo) {
-                //换行
-                printWriter.println();
-                printWriter.println();
-            }
-            //打印发生异常的时间
-            printWriter.println(timeSecond);
-            if (mIsPrintPhoneInfo) {
-                //打印手机信息
-                printPhoneInfo(printWriter);
-                //换行
-                printWriter.println();
-            }
-            //打印日志信息
-            printWriter.print(tag + "\t" + message);
-            printWriter.close();
-        } catch (IOException e) {
-            e.printStackTrace();
+        appender = new RollingFileAppender(getLogDirectory(), prefix,
+                mBinary ? BinaryLogEncoder.FILE_SUFFIX : FILE_NAME_SUFFIX, period)
+                .setMaxFileSize(mMaxFileSize)
+                .setMaxBackupCount(mMaxBackupCount)
+                .setCompress(mCompress);
+        if (!mBinary) {
+            appender.setHeaderProvider(new RollingFileAppender.HeaderProvider() {
+                @Override
+                public String header() {
+                    return getPhoneInfo();
+                }
+            });
+        }
+        mAppenders[type] = appender;
+        return appender;
+    }
+
+    private String getPhoneInfo() {
+        if (mPhoneInfo == null) {
+            StringBuilder builder = new StringBuilder();
+            printPhoneInfo(builder);
+            builder.append('\n');
+            mPhoneInfo = builder.toString();
         }
+        return mPhoneInfo;
     }
 
     /**
      * 打印手机信息
      *
-     * @param printWriter
+     * @param builder
      */
-    private void printPhoneInfo(PrintWriter printWriter) {
+    private void printPhoneInfo(StringBuilder builder) {
         try {
             //应用的版本名称和版本号
             PackageManager packageManager = mContext.getPackageManager();
             PackageInfo packageInfo = packageManager.getPackageInfo(mContext.getPackageName(), PackageManager.GET_ACTIVITIES);
-            printWriter.print("App Version:");
-            printWriter.print(packageInfo.versionName);
-            printWriter.print('_');
-            printWriter.println(packageInfo.versionCode);
+            builder.append("App Version:");
+            builder.append(packageInfo.versionName);
+            builder.append('_');
+            builder.append(packageInfo.versionCode).append('\n');
 
             //android版本号
-            printWriter.print("OS Version:");
-            printWriter.print(Build.VERSION.RELEASE);
-            printWriter.print('_');
-            printWriter.println(Build.VERSION.SDK_INT);
+            builder.append("OS Version:");
+            builder.append(Build.VERSION.RELEASE);
+            builder.append('_');
+            builder.append(Build.VERSION.SDK_INT).append('\n');
 
             //手机制造商
-            printWriter.print("Vendor:");
-            printWriter.println(Build.MANUFACTURER);
+            builder.append("Vendor:");
+            builder.append(Build.MANUFACTURER).append('\n');
 
             //手机型号
-            printWriter.print("Model:");
-            printWriter.println(Build.MODEL);
+            builder.append("Model:");
+            builder.append(Build.MODEL).append('\n');
 
             //cpu架构
-            printWriter.print("CPU ABI:");
-            printWriter.println(Build.CPU_ABI);
+            builder.append("CPU ABI:");
+            builder.append(Build.CPU_ABI).append('\n');
         } catch (PackageManager.NameNotFoundException e) {
             e.printStackTrace();
         }
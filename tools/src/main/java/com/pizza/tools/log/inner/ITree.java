@@ -1,5 +1,7 @@
 package com.pizza.tools.log.inner;
 
+import com.pizza.tools.log.common.LogSupplier;
+
 /**
  * @Description: 日志树接口
  * @date: 16/12/11 16:05.
@@ -9,26 +11,38 @@ public interface ITree {
 
     void wtf(Object object);
 
+    void wtf(LogSupplier supplier);
+
     void e(String message, Object... args);
 
     void e(Object object);
 
+    void e(LogSupplier supplier);
+
     void w(String message, Object... args);
 
     void w(Object object);
 
+    void w(LogSupplier supplier);
+
     void d(String message, Object... args);
 
     void d(Object object);
 
+    void d(LogSupplier supplier);
+
     void i(String message, Object... args);
 
     void i(Object object);
 
+    void i(LogSupplier supplier);
+
     void v(String message, Object... args);
 
     void v(Object object);
 
+    void v(LogSupplier supplier);
+
     void json(String json);
 
     void xml(String xml);
@@ -0,0 +1,181 @@
+package com.pizza.tools.log.inner;
+
+import com.pizza.tools.log.TreeLogTool;
+import com.pizza.tools.log.common.LogConstant;
+import com.pizza.tools.log.common.LogConvert;
+import com.pizza.tools.log.common.LogPattern;
+import com.pizza.tools.log.config.LogDefaultConfig;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @Description: 日志事件，由主干树格式化一次后分发给所有树
+ * <p>
+ * 调用者信息在第一次获取时才抓取堆栈，且必须在打印日志的线程中获取。
+ * 如果树需要把事件交给其他线程处理，应先调用 {@link #getCallerInfo()} 或 {@link #appendCallerInfo(StringBuilder)}。
+ * </p>
+ */
+public final class LogEvent {
+
+    private static final int MAX_CACHED_CALLERS = 512;
+    /**
+     * 默认调用者格式的缓存，同一调用位置只拼接一次
+     */
+    private static final ConcurrentHashMap<StackTraceElement, String> DEFAULT_CALLER_CACHE =
+            new ConcurrentHashMap<>();
+
+    private final int type;
+    private final String tag;
+    private final long timeMillis;
+    private final String threadName;
+    private final String message;
+    private String callerInfo;
+    private boolean callerResolved;
+    private LogPattern pattern;
+    private StackTraceElement caller;
+
+    public LogEvent(int type, String tag, String message) {
+        this.type = type;
+        this.tag = tag;
+        this.message = message;
+        this.timeMillis = System.currentTimeMillis();
+        this.threadName = Thread.currentThread().getName();
+    }
+
+    public int getType() {
+        return type;
+    }
+
+    public String getTag() {
+        return tag;
+    }
+
+    public long getTimeMillis() {
+        return timeMillis;
+    }
+
+    public String getThreadName() {
+        return threadName;
+    }
+
+    /**
+     * 获取已经格式化好的日志内容
+     *
+     * @return
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * 获取调用者信息，只有格式化标签需要调用者信息时才抓取堆栈，结果会被缓存
+     *
+     * @return
+     */
+    public String getCallerInfo() {
+        if (callerInfo == null) {
+            resolveCaller();
+            if (pattern == null) {
+                callerInfo = defaultCallerInfo(caller);
+            } else {
+                StringBuilder builder = new StringBuilder(64);
+                appendPattern(builder);
+                callerInfo = builder.toString();
+            }
+        }
+        return callerInfo;
+    }
+
+    /**
+     * 将调用者信息直接追加到 builder 中。
+     * 使用格式化标签且还没有调用过 {@link #getCallerInfo()} 时，格式化结果直接写入 builder，不产生中间字符串
+     *
+     * @param builder
+     */
+    public void appendCallerInfo(StringBuilder builder) {
+        if (callerInfo != null) {
+            builder.append(callerInfo);
+            return;
+        }
+        resolveCaller();
+        if (pattern == null) {
+            builder.append(getCallerInfo());
+        } else {
+            appendPattern(builder);
+        }
+    }
+
+    /**
+     * 第一次获取调用者信息时确定格式化标签，需要时抓取堆栈，之后不再变化
+     */
+    private void resolveCaller() {
+        if (callerResolved) {
+            return;
+        }
+        pattern = LogDefaultConfig.getInstance().getLogPattern();
+        if (pattern == null || pattern.isCallerNeeded()) {
+            caller = getCurrentStackTrace();
+        }
+        callerResolved = true;
+    }
+
+    private void appendPattern(StringBuilder builder) {
+        if (!pattern.isCallerNeeded() || caller != null) {
+            pattern.appendTo(builder, caller);
+        }
+    }
+
+    private static String defaultCallerInfo(StackTraceElement caller) {
+        if (caller == null) {
+            return "";
+        }
+        String callerInfo = DEFAULT_CALLER_CACHE.get(caller);
+        if (callerInfo == null) {
+            String callerClazzName = caller.getClassName();
+            StringBuilder builder = new StringBuilder(64);
+            builder.append(callerClazzName, callerClazzName.lastIndexOf('.') + 1, callerClazzName.length())
+                    .append('.').append(caller.getMethodName());
+            LogConvert.appendCallerLocation(builder, caller);
+            callerInfo = builder.toString();
+            if (DEFAULT_CALLER_CACHE.size() >= MAX_CACHED_CALLERS) {
+                DEFAULT_CALLER_CACHE.clear();
+            }
+            DEFAULT_CALLER_CACHE.put(caller, callerInfo);
+        }
+        return callerInfo;
+    }
+
+    /**
+     * 获取当前堆栈信息
+     * @return
+     */
+    private static StackTraceElement getCurrentStackTrace() {
+        StackTraceElement[] trace = Thread.currentThread().getStackTrace();
+        int stackOffset = getStackOffset(trace, TreeLogTool.class);
+        if (stackOffset == -1) {
+            return null;
+        }
+        return trace[stackOffset];
+    }
+
+    /**
+     * 获取堆栈信息下标
+     * @param trace
+     * @param cla
+     * @return
+     */
+    private static int getStackOffset(StackTraceElement[] trace, Class cla) {
+        for (int i = LogConstant.MIN_STACK_OFFSET; i < trace.length; i++) {
+            StackTraceElement e = trace[i];
+            String name = e.getClassName();
+            if (cla.equals(TreeLogTool.class) && i < trace.length - 1 && trace[i + 1].getClassName()
+                    .equals(TreeLogTool.class.getName())) {
+                continue;
+            }
+            if (name.equals(cla.getName())) {
+                return ++i;
+            }
+        }
+        return -1;
+    }
+}
@@ -2,120 +2,36 @@ package com.pizza.tools.log.inner;
 
 /**
  * @Description: 日志主干树实现
+ * <p>
+ * 日志只在主干树中格式化一次，生成 {@link LogEvent} 后分发给每一颗接受该级别的树。
+ * 所有树都不接受该级别时，直接跳过格式化。
+ * </p>
  */
 public class SoulsTree extends Tree {
 
     private volatile Tree[] forestAsArray = new Tree[0];
 
     @Override
-    public void wtf(String message, Object... args) {
-        Tree[] forest = forestAsArray;
-        for (Tree tree : forest) {
-            tree.wtf(message, args);
-        }
-    }
-
-    @Override
-    public void wtf(Object object) {
-        Tree[] forest = forestAsArray;
-        for (Tree tree : forest) {
-            tree.wtf(object);
-        }
-    }
-
-    @Override
-    public void e(String message, Object... args) {
-        Tree[] forest = forestAsArray;
-        for (Tree tree : forest) {
-            tree.e(message, args);
-        }
-    }
-
-    @Override
-    public void e(Object object) {
-        Tree[] forest = forestAsArray;
-        for (Tree tree : forest) {
-            tree.e(object);
-        }
-    }
-
-    @Override
-    public void w(String message, Object... args) {
-        Tree[] forest = forestAsArray;
-        for (Tree tree : forest) {
-            tree.w(message, args);
-        }
-    }
-
-    @Override
-    public void w(Object object) {
-        Tree[] forest = forestAsArray;
-        for (Tree tree : forest) {
-            tree.w(object);
+    public boolean isLoggable(int type) {
+        if (!super.isLoggable(type)) {
+            return false;
         }
-    }
-
-    @Override
-    public void d(String message, Object... args) {
-        Tree[] forest = forestAsArray;
-        for (Tree tree : forest) {
-            tree.d(message, args);
-        }
-    }
-
-    @Override
-    public void d(Object object) {
-        Tree[] forest = forestAsArray;
-        for (Tree tree : forest) {
-            tree.d(object);
-        }
-    }
-
-    @Override
-    public void i(String message, Object... args) {
-        Tree[] forest = forestAsArray;
-        for (Tree tree : forest) {
-            tree.i(message, args);
-        }
-    }
-
-    @Override
-    public void i(Object object) {
-        Tree[] forest = forestAsArray;
-        for (Tree tree : forest) {
-            tree.i(object);
-        }
-    }
-
-    @Override
-    public void v(String message, Object... args) {
-        Tree[] forest = forestAsArray;
-        for (Tree tree : forest) {
-            tree.v(message, args);
-        }
-    }
-
-    @Override
-    public void v(Object object) {
-        Tree[] forest = forestAsArray;
-        for (Tree tree : forest) {
-            tree.v(object);
-        }
-    }
-
-    @Override
-    public void json(String json) {
         Tree[] forest = forestAsArray;
         for (Tree tree : forest) {
-            tree.json(json);
+            if (tree.isLoggable(type)) {
+                return true;
+            }
         }
+        return false;
     }
 
     @Override
-    public void xml(String xml) {
+    protected void log(LogEvent event) {
         Tree[] forest = forestAsArray;
         for (Tree tree : forest) {
-            tree.xml(xml);
+            if (tree.isLoggable(event.getType())) {
+                tree.log(event);
+            }
         }
     }
 
@@ -9,7 +9,7 @@ import org.json.JSONObject;
 
 import java.io.StringReader;
 import java.io.StringWriter;
-import java.util.MissingFormatArgumentException;
+import java.util.IllegalFormatException;
 
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Source;
@@ -19,9 +19,9 @@ import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
 
-import com.pizza.tools.log.TreeLogTool;
 import com.pizza.tools.log.common.LogConstant;
 import com.pizza.tools.log.common.LogConvert;
+import com.pizza.tools.log.common.LogSupplier;
 import com.pizza.tools.log.config.LogDefaultConfig;
 
 /**
@@ -30,13 +30,35 @@ import com.pizza.tools.log.config.LogDefaultConfig;
 public abstract class Tree implements ITree {
 
     private LogDefaultConfig mLogConfig;
+    private volatile int minLevel = Log.VERBOSE;
     private final ThreadLocal<String> localTags = new ThreadLocal<>();
+    // 每个线程复用的行缓冲
+    private static final ThreadLocal<StringBuilder> LINE_BUILDER = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(256);
+        }
+    };
 
     protected Tree() {
         mLogConfig = LogDefaultConfig.getInstance();
         mLogConfig.addParserClass(LogConstant.DEFAULT_PARSE_CLASS);
     }
 
+    /**
+     * 设置该树的最小输出级别，低于该级别的日志在格式化之前就会被跳过
+     * @param minLevel
+     * @return
+     */
+    public Tree setMinLevel(int minLevel) {
+        this.minLevel = minLevel;
+        return this;
+    }
+
+    public int getMinLevel() {
+        return minLevel;
+    }
+
     public ITree setTag(String tag) {
         if (!TextUtils.isEmpty(tag) && mLogConfig.isEnable()) {
             localTags.set(tag);
@@ -54,6 +76,11 @@ public abstract class Tree implements ITree {
         logObject(Log.ASSERT, object);
     }
 
+    @Override
+    public void wtf(LogSupplier supplier) {
+        logSupplier(Log.ASSERT, supplier);
+    }
+
     @Override
     public void e(String message, Object... args) {
         logString(Log.ERROR, message, args);
@@ -64,6 +91,11 @@ public abstract class Tree implements ITree {
         logObject(Log.ERROR, object);
     }
 
+    @Override
+    public void e(LogSupplier supplier) {
+        logSupplier(Log.ERROR, supplier);
+    }
+
     @Override
     public void w(String message, Object... args) {
         logString(Log.WARN, message, args);
@@ -74,6 +106,11 @@ public abstract class Tree implements ITree {
         logObject(Log.WARN, object);
     }
 
+    @Override
+    public void w(LogSupplier supplier) {
+        logSupplier(Log.WARN, supplier);
+    }
+
     @Override
     public void d(String message, Object... args) {
         logString(Log.DEBUG, message, args);
@@ -84,6 +121,11 @@ public abstract class Tree implements ITree {
         logObject(Log.DEBUG, object);
     }
 
+    @Override
+    public void d(LogSupplier supplier) {
+        logSupplier(Log.DEBUG, supplier);
+    }
+
     @Override
     public void i(String message, Object... args) {
         logString(Log.INFO, message, args);
@@ -94,6 +136,11 @@ public abstract class Tree implements ITree {
         logObject(Log.INFO, object);
     }
 
+    @Override
+    public void i(LogSupplier supplier) {
+        logSupplier(Log.INFO, supplier);
+    }
+
     @Override
     public void v(String message, Object... args) {
         logString(Log.VERBOSE, message, args);
@@ -104,6 +151,11 @@ public abstract class Tree implements ITree {
         logObject(Log.VERBOSE, object);
     }
 
+    @Override
+    public void v(LogSupplier supplier) {
+        logSupplier(Log.VERBOSE, supplier);
+    }
+
     @Override
     public void json(String json) {
         int indent = 4;
@@ -145,77 +197,110 @@ public abstract class Tree implements ITree {
         }
     }
 
+    private void logSupplier(int type, LogSupplier supplier) {
+        if (!isLoggable(type)) {
+            return;
+        }
+        // 与直接传入 null 一致，输出 "null"
+        logObject(type, supplier == null ? null : supplier.get());
+    }
+
     private void logObject(int type, Object object) {
+        if (!isLoggable(type)) {
+            return;
+        }
         logString(type, LogConvert.objectToString(object));
     }
 
-    private synchronized void logString(int type, String msg, Object... args) {
-        logString(type, msg, false, args);
+    /**
+     * 判断该级别日志是否需要输出，在任何格式化之前调用
+     * @param type
+     * @return
+     */
+    public boolean isLoggable(int type) {
+        // 判定是否显示日志，判断日志显示最小级别
+        return mLogConfig.isEnable() && type >= mLogConfig.getLogLevel() && type >= minLevel;
     }
 
-    private void logString(int type, String msg, boolean isPart, Object... args) {
-        if (!mLogConfig.isEnable()) {
-            // 判定是否显示日志
-            return;
-        }
-        if (type < mLogConfig.getLogLevel()) {
-            // 判断日志显示最小级别
+    private void logString(int type, String msg, Object... args) {
+        if (!isLoggable(type)) {
             return;
         }
         String tag = generateTag();
-        // 判断信息是否超过一行最大显示
-        if (msg.length() > LogConstant.LINE_MAX) {
-            // 超过一行
-            if (mLogConfig.isShowBorder()) {
-                printLog(type, tag, LogConvert.printDividingLine(LogConstant.DIVIDER_TOP));
-                printLog(type, tag, LogConvert.printDividingLine(LogConstant.DIVIDER_NORMAL) +
-                        getTopStackInfo());
-                printLog(type, tag, LogConvert.printDividingLine(LogConstant.DIVIDER_CENTER));
-            }
-            for (String subMsg : LogConvert.largeStringToList(msg)) {
-                logString(type, subMsg, true, args);
-            }
-            if (mLogConfig.isShowBorder()) {
-                printLog(type, tag, LogConvert.printDividingLine(LogConstant.DIVIDER_BOTTOM));
-            }
-            return;
-        }
-        if (args.length > 0) {
+        if (args != null && args.length > 0) {
             // 有格式化参数
             try {
                 msg = String.format(msg, args);
-            } catch (MissingFormatArgumentException e) {
+            } catch (IllegalFormatException e) {
                 e.printStackTrace();
             }
         }
+        log(new LogEvent(type, tag, msg));
+    }
+
+    /**
+     * 输出一条已经格式化好的日志事件，默认按配置排版后逐行交给 {@link #log(int, String, String)}
+     * @param event
+     */
+    protected synchronized void log(LogEvent event) {
+        int type = event.getType();
+        String tag = event.getTag();
+        String msg = event.getMessage();
+        StringBuilder builder = LINE_BUILDER.get();
         // 判断是否显示排版线条
         if (mLogConfig.isShowBorder()) {
-            // 显示排版线条
-            // 判定是否需要分段显示
-            if (isPart) {
-                // 需要分段显示
-                for (String sub : msg.split(LogConstant.BR)) {
-                    printLog(type, tag, LogConvert.printDividingLine(LogConstant.DIVIDER_NORMAL)
-                            + sub);
-                }
-            } else {
-                // 不需要分段显示
-                printLog(type, tag, LogConvert.printDividingLine(LogConstant.DIVIDER_TOP));
-                printLog(type, tag, LogConvert.printDividingLine(LogConstant.DIVIDER_NORMAL) +
-                        getTopStackInfo());
-                printLog(type, tag, LogConvert.printDividingLine(LogConstant.DIVIDER_CENTER));
-                for (String sub : msg.split(LogConstant.BR)) {
-                    printLog(type, tag, LogConvert.printDividingLine(LogConstant.DIVIDER_NORMAL)
-                            + sub);
-                }
-                printLog(type, tag, LogConvert.printDividingLine(LogConstant.DIVIDER_BOTTOM));
-            }
+            log(type, tag, LogConvert.printDividingLine(LogConstant.DIVIDER_TOP));
+            builder.setLength(0);
+            builder.append(LogConvert.printDividingLine(LogConstant.DIVIDER_NORMAL));
+            event.appendCallerInfo(builder);
+            log(type, tag, builder.toString());
+            log(type, tag, LogConvert.printDividingLine(LogConstant.DIVIDER_CENTER));
+            printBorderLines(type, tag, msg, builder);
+            log(type, tag, LogConvert.printDividingLine(LogConstant.DIVIDER_BOTTOM));
         } else {
-            // 直接显示
-            printLog(type, tag, msg);
+            // 直接显示，超过一行最大长度时分段
+            int length = msg.length();
+            int start = 0;
+            do {
+                int end = Math.min(length, start + LogConstant.LINE_MAX);
+                builder.setLength(0);
+                event.appendCallerInfo(builder);
+                builder.append(": ").append(msg, start, end);
+                log(type, tag, builder.toString());
+                start = end;
+            } while (start < length);
+        }
+        if (builder.capacity() > LogConstant.LINE_MAX * 2) {
+            LINE_BUILDER.remove();
         }
     }
 
+    /**
+     * 按换行符和一行最大长度拆分，逐行加上左侧线条输出
+     * @param type
+     * @param tag
+     * @param msg
+     * @param builder
+     */
+    private void printBorderLines(int type, String tag, String msg, StringBuilder builder) {
+        String prefix = LogConvert.printDividingLine(LogConstant.DIVIDER_NORMAL);
+        String br = LogConstant.BR;
+        int length = msg.length();
+        int start = 0;
+        // 与 split 一致，忽略末尾的空行
+        do {
+            int lineEnd = msg.indexOf(br, start);
+            if (lineEnd == -1) {
+                lineEnd = length;
+            }
+            int end = Math.min(lineEnd, start + LogConstant.LINE_MAX);
+            builder.setLength(0);
+            builder.append(prefix).append(msg, start, end);
+            log(type, tag, builder.toString());
+            start = end == lineEnd ? lineEnd + br.length() : end;
+        } while (start < length);
+    }
+
     /**
      * 生成标签
      * @return
@@ -229,75 +314,6 @@ public abstract class Tree implements ITree {
         return mLogConfig.getTagPrefix();
     }
 
-    /**
-     * 获取当前堆栈信息
-     * @return
-     */
-    private StackTraceElement getCurrentStackTrace() {
-        StackTraceElement[] trace = Thread.currentThread().getStackTrace();
-        int stackOffset = getStackOffset(trace, TreeLogTool.class);
-        if (stackOffset == -1) {
-            return null;
-        }
-        return trace[stackOffset];
-    }
-
-    /**
-     * 获取顶部堆栈信息
-     * @return
-     */
-    private String getTopStackInfo() {
-        String customTag = mLogConfig.getFormatTag(getCurrentStackTrace());
-        if (customTag != null) {
-            return customTag;
-        }
-        StackTraceElement caller = getCurrentStackTrace();
-        if (caller == null) {
-            return "";
-        }
-        String stackTrace = caller.toString();
-        stackTrace = stackTrace.substring(stackTrace.lastIndexOf('('), stackTrace.length());
-        String tag = "%s.%s%s";
-        String callerClazzName = caller.getClassName();
-        callerClazzName = callerClazzName.substring(callerClazzName.lastIndexOf(".") + 1);
-        tag = String.format(tag, callerClazzName, caller.getMethodName(), stackTrace);
-        return tag;
-    }
-
-    /**
-     * 获取堆栈信息下标
-     * @param trace
-     * @param cla
-     * @return
-     */
-    private int getStackOffset(StackTraceElement[] trace, Class cla) {
-        for (int i = LogConstant.MIN_STACK_OFFSET; i < trace.length; i++) {
-            StackTraceElement e = trace[i];
-            String name = e.getClassName();
-            if (cla.equals(TreeLogTool.class) && i < trace.length - 1 && trace[i + 1].getClassName()
-                    .equals(TreeLogTool.class.getName())) {
-                continue;
-            }
-            if (name.equals(cla.getName())) {
-                return ++i;
-            }
-        }
-        return -1;
-    }
-
-    /**
-     * 输出日志
-     * @param type
-     * @param tag
-     * @param msg
-     */
-    private void printLog(int type, String tag, String msg) {
-        if (!mLogConfig.isShowBorder()) {
-            msg = getTopStackInfo() + ": " + msg;
-        }
-        log(type, tag, msg);
-    }
-
     /**
      * 日志具体实现方式，可以是打印、文件存储等
      * @param type
@@ -0,0 +1,528 @@
+package com.pizza.tools.log.writer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * @Description: 异步日志文件写入器
+ * <p>
+ * 生产者把日志记录放入有界无锁环形队列后立即返回，由单独的后台线程批量写入文件。
+ * 后台线程对每天的日志文件只保持一个打开的 {@link FileChannel}，跨天时自动切换。
+ * 文件命名规则与 {@code LogTool.log2File} 一致：{@code 文件名 + yyyy-MM-dd}。
+ * </p>
+ */
+public class AsyncLogWriter {
+
+    /**
+     * 队列满时的处理策略
+     */
+    public enum OverflowPolicy {
+        /**
+         * 阻塞生产者，直到队列有空位
+         */
+        BLOCK,
+        /**
+         * 丢弃当前这条新日志
+         */
+        DROP_NEWEST,
+        /**
+         * 丢弃队列中最旧的一条日志，再放入新日志
+         */
+        DROP_OLDEST
+    }
+
+    /**
+     * 默认队列容量
+     */
+    public static final int DEFAULT_CAPACITY = 1024;
+    /**
+     * 单次批量写入的最大记录数
+     */
+    private static final int MAX_BATCH = 256;
+    /**
+     * 写入缓冲区大小
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+    /**
+     * 后台线程空闲时的最长休眠时间
+     */
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+    /**
+     * flush 的最长等待时间
+     */
+    private static final long FLUSH_TIMEOUT_MS = 3000;
+
+    private final String logFilePath;
+    private final String logFileName;
+    private final OverflowPolicy policy;
+    private final RingBuffer queue;
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong writtenCount = new AtomicLong();
+    private final Thread writerThread;
+
+    private volatile boolean running = true;
+    private volatile boolean writerParked;
+
+    // 以下字段只在写线程中访问
+    private final SimpleDateFormat lineFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.JAPANESE);
+    private final SimpleDateFormat fileFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.JAPANESE);
+    private final CharsetEncoder encoder = Charset.forName("UTF-8").newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final ByteBuffer byteBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final StringBuilder lineBuilder = new StringBuilder(256);
+    private final BinaryLogEncoder binaryEncoder;
+    private FileChannel channel;
+    private File currentFile;
+    private long dayStart = Long.MIN_VALUE;
+    private long dayEnd = Long.MIN_VALUE;
+    private long cachedSecond = Long.MIN_VALUE;
+    private String cachedTime;
+
+    public AsyncLogWriter(String logFilePath, String logFileName) {
+        this(logFilePath, logFileName, DEFAULT_CAPACITY, OverflowPolicy.DROP_OLDEST);
+    }
+
+    /**
+     * @param logFilePath 日志目录
+     * @param logFileName 日志文件名前缀
+     * @param capacity    队列容量，会向上取整为 2 的幂
+     * @param policy      队列满时的处理策略
+     */
+    public AsyncLogWriter(String logFilePath, String logFileName, int capacity, OverflowPolicy policy) {
+        this(logFilePath, logFileName, capacity, policy, false);
+    }
+
+    /**
+     * @param logFilePath 日志目录
+     * @param logFileName 日志文件名前缀
+     * @param capacity    队列容量，会向上取整为 2 的幂
+     * @param policy      队列满时的处理策略
+     * @param binary      是否使用紧凑二进制格式，文件后缀为 {@link BinaryLogEncoder#FILE_SUFFIX}
+     */
+    public AsyncLogWriter(String logFilePath, String logFileName, int capacity, OverflowPolicy policy,
+                          boolean binary) {
+        if (logFilePath == null || logFileName == null) {
+            throw new NullPointerException("logFilePath == null || logFileName == null");
+        }
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.logFilePath = logFilePath;
+        this.logFileName = logFileName;
+        this.policy = policy == null ? OverflowPolicy.DROP_OLDEST : policy;
+        this.queue = new RingBuffer(capacity);
+        this.binaryEncoder = binary ? new BinaryLogEncoder() : null;
+        this.writerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                loop();
+            }
+        }, "AsyncLogWriter");
+        this.writerThread.setDaemon(true);
+        this.writerThread.setPriority(Thread.MIN_PRIORITY);
+        this.writerThread.start();
+    }
+
+    /**
+     * 提交一条日志，按照队列策略决定是否阻塞或丢弃
+     *
+     * @param level 日志级别字符，如 'd'
+     * @param tag   标签
+     * @param text  已经拼接好的日志内容
+     * @return 是否成功放入队列
+     */
+    public boolean write(char level, String tag, String text) {
+        if (!running) {
+            droppedCount.incrementAndGet();
+            return false;
+        }
+        Record record = new Record(System.currentTimeMillis(), level, tag, text,
+                binaryEncoder != null ? Thread.currentThread().getName() : null, null);
+        if (!enqueue(record)) {
+            droppedCount.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 把调用前提交的日志全部写入磁盘，适合在崩溃处理流程中调用
+     *
+     * @return 是否在超时前完成
+     */
+    public boolean flush() {
+        if (!running || Thread.currentThread() == writerThread) {
+            return false;
+        }
+        CountDownLatch latch = new CountDownLatch(1);
+        Record marker = new Record(0, '\0', null, null, null, latch);
+        // 标记记录不能被丢弃，队列满时等待写线程腾出空间
+        while (!queue.offer(marker)) {
+            if (!running) {
+                return false;
+            }
+            wakeWriter();
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+        }
+        wakeWriter();
+        try {
+            return latch.await(FLUSH_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * 写完剩余日志后停止后台线程并关闭文件
+     */
+    public void shutdown() {
+        flush();
+        running = false;
+        wakeWriter();
+        try {
+            writerThread.join(FLUSH_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 获取因队列已满或已关闭而被丢弃的日志数量
+     *
+     * @return
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * 获取已写入文件的日志数量
+     *
+     * @return
+     */
+    public long getWrittenCount() {
+        return writtenCount.get();
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return policy;
+    }
+
+    private boolean enqueue(Record record) {
+        if (queue.offer(record)) {
+            wakeWriter();
+            return true;
+        }
+        switch (policy) {
+            case BLOCK:
+                while (!queue.offer(record)) {
+                    if (!running) {
+                        return false;
+                    }
+                    wakeWriter();
+                    LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(50));
+                }
+                wakeWriter();
+                return true;
+            case DROP_OLDEST:
+                while (!queue.offer(record)) {
+                    Record oldest = queue.poll();
+                    if (oldest != null) {
+                        if (oldest.latch != null) {
+                            // flush 标记不能被丢弃，放回队尾
+                            while (!queue.offer(oldest)) {
+                                Thread.yield();
+                            }
+                        } else {
+                            droppedCount.incrementAndGet();
+                        }
+                    }
+                }
+                wakeWriter();
+                return true;
+            case DROP_NEWEST:
+            default:
+                wakeWriter();
+                return false;
+        }
+    }
+
+    private void wakeWriter() {
+        if (writerParked) {
+            LockSupport.unpark(writerThread);
+        }
+    }
+
+    private void loop() {
+        Record[] batch = new Record[MAX_BATCH];
+        while (true) {
+            int count = queue.drainTo(batch, MAX_BATCH);
+            if (count == 0) {
+                if (!running) {
+                    break;
+                }
+                writerParked = true;
+                if (queue.isEmpty() && running) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+                writerParked = false;
+                continue;
+            }
+            writeBatch(batch, count);
+        }
+        closeChannel();
+    }
+
+    private void writeBatch(Record[] batch, int count) {
+        for (int i = 0; i < count; i++) {
+            Record record = batch[i];
+            batch[i] = null;
+            if (record.latch != null) {
+                flushBuffer(true);
+                record.latch.countDown();
+                continue;
+            }
+            try {
+                ensureChannel(record.time);
+                if (binaryEncoder != null) {
+                    binaryEncoder.encode(record.time, BinaryLogEncoder.toPriority(record.level),
+                            record.tag, record.thread, null, record.text);
+                    if (binaryEncoder.size() >= BUFFER_SIZE) {
+                        drainBuffer();
+                    }
+                } else {
+                    appendLine(record);
+                }
+                writtenCount.incrementAndGet();
+            } catch (IOException e) {
+                droppedCount.incrementAndGet();
+                e.printStackTrace();
+                closeChannel();
+            }
+        }
+        flushBuffer(false);
+    }
+
+    private void ensureChannel(long time) throws IOException {
+        if (channel != null && time >= dayStart && time < dayEnd) {
+            return;
+        }
+        flushBuffer(false);
+        closeChannel();
+        File destDir = new File(logFilePath);
+        if (!destDir.exists()) {
+            destDir.mkdirs();
+        }
+        Date date = new Date(time);
+        String fileName = logFileName + fileFormat.format(date);
+        if (binaryEncoder != null) {
+            fileName += BinaryLogEncoder.FILE_SUFFIX;
+            // 新文件或追加到已有文件都从新的分段开始
+            binaryEncoder.reset();
+        }
+        File file = new File(logFilePath, fileName);
+        currentFile = file;
+        // 打开前登记，避免保留服务在写入期间删除或压缩
+        LogRetentionService.markActive(file);
+        channel = new FileOutputStream(file, true).getChannel();
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTime(date);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        dayStart = calendar.getTimeInMillis();
+        calendar.add(Calendar.DATE, 1);
+        dayEnd = calendar.getTimeInMillis();
+    }
+
+    private void appendLine(Record record) throws IOException {
+        long second = record.time / 1000;
+        if (second != cachedSecond) {
+            cachedSecond = second;
+            cachedTime = lineFormat.format(new Date(record.time));
+        }
+        StringBuilder builder = lineBuilder;
+        builder.setLength(0);
+        builder.append(cachedTime).append(':').append(record.level).append(':')
+                .append(record.tag).append(':').append(record.text).append('\n');
+        CharBuffer chars = CharBuffer.wrap(builder);
+        encoder.reset();
+        while (true) {
+            CoderResult result = encoder.encode(chars, byteBuffer, true);
+            if (result.isOverflow()) {
+                drainBuffer();
+                continue;
+            }
+            break;
+        }
+        while (encoder.flush(byteBuffer).isOverflow()) {
+            drainBuffer();
+        }
+    }
+
+    private void drainBuffer() throws IOException {
+        byteBuffer.flip();
+        while (byteBuffer.hasRemaining()) {
+            channel.write(byteBuffer);
+        }
+        byteBuffer.clear();
+        if (binaryEncoder != null && binaryEncoder.size() > 0) {
+            binaryEncoder.writeTo(channel);
+        }
+    }
+
+    private void flushBuffer(boolean force) {
+        if (channel == null) {
+            clearBuffers();
+            return;
+        }
+        try {
+            drainBuffer();
+            if (force) {
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            clearBuffers();
+            closeChannel();
+        }
+    }
+
+    private void clearBuffers() {
+        byteBuffer.clear();
+        if (binaryEncoder != null) {
+            binaryEncoder.clear();
+        }
+    }
+
+    private void closeChannel() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            channel = null;
+        }
+        if (currentFile != null) {
+            LogRetentionService.markInactive(currentFile);
+            currentFile = null;
+        }
+        dayStart = Long.MIN_VALUE;
+        dayEnd = Long.MIN_VALUE;
+    }
+
+    /**
+     * 一条日志记录，latch 不为空时表示 flush 标记
+     */
+    private static final class Record {
+        final long time;
+        final char level;
+        final String tag;
+        final String text;
+        final String thread;
+        final CountDownLatch latch;
+
+        Record(long time, char level, String tag, String text, String thread, CountDownLatch latch) {
+            this.time = time;
+            this.level = level;
+            this.tag = tag;
+            this.text = text;
+            this.thread = thread;
+            this.latch = latch;
+        }
+    }
+
+    /**
+     * 有界无锁多生产者多消费者环形队列，每个槽位通过序号判断是否可读写
+     */
+    private static final class RingBuffer {
+        private final int mask;
+        private final AtomicReferenceArray<Record> slots;
+        private final AtomicLongArray sequences;
+        private final AtomicLong head = new AtomicLong();
+        private final AtomicLong tail = new AtomicLong();
+
+        RingBuffer(int capacity) {
+            int size = 1;
+            while (size < capacity) {
+                size <<= 1;
+            }
+            mask = size - 1;
+            slots = new AtomicReferenceArray<>(size);
+            sequences = new AtomicLongArray(size);
+            for (int i = 0; i < size; i++) {
+                sequences.set(i, i);
+            }
+        }
+
+        boolean offer(Record record) {
+            while (true) {
+                long pos = tail.get();
+                int index = (int) (pos & mask);
+                long diff = sequences.get(index) - pos;
+                if (diff == 0) {
+                    if (tail.compareAndSet(pos, pos + 1)) {
+                        slots.lazySet(index, record);
+                        sequences.set(index, pos + 1);
+                        return true;
+                    }
+                } else if (diff < 0) {
+                    return false;
+                }
+            }
+        }
+
+        Record poll() {
+            while (true) {
+                long pos = head.get();
+                int index = (int) (pos & mask);
+                long diff = sequences.get(index) - (pos + 1);
+                if (diff == 0) {
+                    if (head.compareAndSet(pos, pos + 1)) {
+                        Record record = slots.get(index);
+                        slots.lazySet(index, null);
+                        sequences.set(index, pos + mask + 1);
+                        return record;
+                    }
+                } else if (diff < 0) {
+                    return null;
+                }
+            }
+        }
+
+        int drainTo(Record[] out, int max) {
+            int count = 0;
+            Record record;
+            while (count < max && (record = poll()) != null) {
+                out[count++] = record;
+            }
+            return count;
+        }
+
+        boolean isEmpty() {
+            return head.get() >= tail.get();
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.pizza.tools.log.writer;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @Description: 紧凑二进制日志编码
+ * <p>
+ * 文件由若干分段组成，每个分段以文件头开始，字符串字典在分段内有效：
+ * <pre>
+ * 分段头：'P' 'Z' 'L' 版本号(1字节) 基准时间(varlong)
+ * 字符串定义：0x01 长度(varint) UTF-8字节，按出现顺序编号
+ * 日志记录：0x02 时间差(zigzag varlong) 级别(1字节) 标签编号(varint)
+ *          线程编号+1(varint) 调用者编号+1(varint) 内容长度(varint) UTF-8字节
+ * </pre>
+ * 时间差相对于上一条记录，第一条记录相对于分段基准时间。
+ * 标签、线程名、调用者只在第一次出现时写入一次，之后只写编号。
+ * 编码器不是线程安全的，由写线程独占使用。
+ * </p>
+ */
+public class BinaryLogEncoder {
+
+    public static final String FILE_SUFFIX = ".blog";
+
+    static final byte MAGIC_0 = 'P';
+    static final byte MAGIC_1 = 'Z';
+    static final byte MAGIC_2 = 'L';
+    static final byte VERSION = 1;
+    static final byte KIND_STRING = 0x01;
+    static final byte KIND_RECORD = 0x02;
+
+    /**
+     * 单个分段的字典上限，超过后开始新的分段
+     */
+    private static final int MAX_DICTIONARY_SIZE = 4096;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final Map<String, Integer> dictionary = new HashMap<>();
+    private byte[] buffer = new byte[4096];
+    private int size;
+    private boolean segmentStarted;
+    private long lastTime;
+
+    /**
+     * 开始新的分段，打开新文件或追加到已有文件时调用
+     */
+    public void reset() {
+        dictionary.clear();
+        segmentStarted = false;
+    }
+
+    /**
+     * 编码一条日志到内部缓冲区
+     *
+     * @param time    时间戳
+     * @param level   日志级别，如 {@code Log.DEBUG}
+     * @param tag     标签
+     * @param thread  线程名，可为空
+     * @param caller  调用者信息，可为空
+     * @param message 日志内容
+     */
+    public void encode(long time, int level, String tag, String thread, String caller, String message) {
+        if (dictionary.size() > MAX_DICTIONARY_SIZE - 3) {
+            reset();
+        }
+        if (!segmentStarted) {
+            ensureCapacity(4 + 10);
+            buffer[size++] = MAGIC_0;
+            buffer[size++] = MAGIC_1;
+            buffer[size++] = MAGIC_2;
+            buffer[size++] = VERSION;
+            writeVarLong(time);
+            lastTime = time;
+            segmentStarted = true;
+        }
+        int tagIndex = stringIndex(tag == null ? "" : tag);
+        int threadIndex = thread == null ? 0 : stringIndex(thread) + 1;
+        int callerIndex = caller == null || caller.length() == 0 ? 0 : stringIndex(caller) + 1;
+        byte[] body = (message == null ? "null" : message).getBytes(UTF_8);
+        ensureCapacity(1 + 10 + 1 + 5 * 4 + body.length);
+        buffer[size++] = KIND_RECORD;
+        long delta = time - lastTime;
+        writeVarLong((delta << 1) ^ (delta >> 63));
+        lastTime = time;
+        buffer[size++] = (byte) level;
+        writeVarLong(tagIndex);
+        writeVarLong(threadIndex);
+        writeVarLong(callerIndex);
+        writeVarLong(body.length);
+        System.arraycopy(body, 0, buffer, size, body.length);
+        size += body.length;
+    }
+
+    /**
+     * 缓冲区中待写入的字节数
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 将缓冲区写入通道并清空
+     *
+     * @param channel
+     * @return 写入的字节数
+     * @throws IOException
+     */
+    public int writeTo(WritableByteChannel channel) throws IOException {
+        ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, size);
+        int written = 0;
+        while (byteBuffer.hasRemaining()) {
+            written += channel.write(byteBuffer);
+        }
+        size = 0;
+        return written;
+    }
+
+    /**
+     * 丢弃缓冲区中未写入的数据，写入失败时调用
+     */
+    public void clear() {
+        size = 0;
+        // 已编码的字典定义被丢弃，下一条日志需要重新开始分段
+        reset();
+        if (buffer.length > 64 * 1024) {
+            buffer = new byte[4096];
+        }
+    }
+
+    private int stringIndex(String value) {
+        Integer index = dictionary.get(value);
+        if (index != null) {
+            return index;
+        }
+        byte[] bytes = value.getBytes(UTF_8);
+        ensureCapacity(1 + 5 + bytes.length);
+        buffer[size++] = KIND_STRING;
+        writeVarLong(bytes.length);
+        System.arraycopy(bytes, 0, buffer, size, bytes.length);
+        size += bytes.length;
+        int newIndex = dictionary.size();
+        dictionary.put(value, newIndex);
+        return newIndex;
+    }
+
+    private void writeVarLong(long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[size++] = (byte) value;
+    }
+
+    private void ensureCapacity(int extra) {
+        int required = size + extra;
+        if (required > buffer.length) {
+            int newLength = Math.max(buffer.length * 2, required);
+            byte[] newBuffer = new byte[newLength];
+            System.arraycopy(buffer, 0, newBuffer, 0, size);
+            buffer = newBuffer;
+        }
+    }
+
+    /**
+     * 将 LogTool 使用的级别字符转换为日志级别
+     *
+     * @param level 如 'd'
+     * @return 如 {@code Log.DEBUG}
+     */
+    public static int toPriority(char level) {
+        switch (level) {
+            case 'e':
+                return Log.ERROR;
+            case 'w':
+                return Log.WARN;
+            case 'i':
+                return Log.INFO;
+            case 'd':
+                return Log.DEBUG;
+            default:
+                return Log.VERBOSE;
+        }
+    }
+}
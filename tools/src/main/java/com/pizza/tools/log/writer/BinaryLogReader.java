@@ -0,0 +1,263 @@
+package com.pizza.tools.log.writer;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * @Description: 二进制日志流式读取
+ * <p>
+ * 按顺序逐条解码 {@link BinaryLogEncoder} 写入的文件，不会把整个文件读入内存。
+ * 可以按最小级别、标签和时间范围过滤，被过滤掉的记录只跳过内容字节，不会解码字符串。
+ * </p>
+ * <pre>
+ * BinaryLogReader reader = BinaryLogReader.open(file).setMinLevel(Log.WARN);
+ * try {
+ *     BinaryLogReader.Entry entry;
+ *     while ((entry = reader.next()) != null) {
+ *         ...
+ *     }
+ * } finally {
+ *     reader.close();
+ * }
+ * </pre>
+ */
+public class BinaryLogReader implements Closeable {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private final InputStream in;
+    private final List<String> dictionary = new ArrayList<>();
+    private byte[] scratch = new byte[256];
+    private boolean inSegment;
+    private long lastTime;
+
+    private int minLevel = 0;
+    private String tag;
+    private long startTime = Long.MIN_VALUE;
+    private long endTime = Long.MAX_VALUE;
+
+    public BinaryLogReader(InputStream in) {
+        if (in == null) {
+            throw new NullPointerException("in == null");
+        }
+        this.in = in instanceof BufferedInputStream ? in : new BufferedInputStream(in, BUFFER_SIZE);
+    }
+
+    /**
+     * 打开日志文件，以 .gz 结尾的文件会自动解压
+     *
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public static BinaryLogReader open(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        if (file.getName().endsWith(".gz")) {
+            in = new GZIPInputStream(in, BUFFER_SIZE);
+        }
+        return new BinaryLogReader(in);
+    }
+
+    /**
+     * 只返回不低于该级别的日志
+     */
+    public BinaryLogReader setMinLevel(int minLevel) {
+        this.minLevel = minLevel;
+        return this;
+    }
+
+    /**
+     * 只返回该标签的日志，为空时不过滤
+     */
+    public BinaryLogReader setTag(String tag) {
+        this.tag = tag;
+        return this;
+    }
+
+    /**
+     * 只返回 [startTime, endTime) 范围内的日志
+     */
+    public BinaryLogReader setTimeRange(long startTime, long endTime) {
+        this.startTime = startTime;
+        this.endTime = endTime;
+        return this;
+    }
+
+    /**
+     * 读取下一条符合条件的日志
+     *
+     * @return 没有更多日志时返回 null
+     * @throws IOException 文件格式错误或读取失败
+     */
+    public Entry next() throws IOException {
+        while (true) {
+            int kind = in.read();
+            if (kind == -1) {
+                return null;
+            }
+            if (kind == BinaryLogEncoder.MAGIC_0) {
+                readSegmentHeader();
+                continue;
+            }
+            if (!inSegment) {
+                throw new IOException("Missing segment header");
+            }
+            if (kind == BinaryLogEncoder.KIND_STRING) {
+                int length = (int) readVarLong();
+                dictionary.add(readString(length));
+                continue;
+            }
+            if (kind != BinaryLogEncoder.KIND_RECORD) {
+                throw new IOException("Unknown entry kind: " + kind);
+            }
+            long zigzag = readVarLong();
+            lastTime += (zigzag >>> 1) ^ -(zigzag & 1);
+            int level = readByte();
+            String entryTag = lookup(readVarLong());
+            long threadIndex = readVarLong();
+            long callerIndex = readVarLong();
+            int length = (int) readVarLong();
+            if (level < minLevel || lastTime < startTime || lastTime >= endTime
+                    || (tag != null && !tag.equals(entryTag))) {
+                skipFully(length);
+                continue;
+            }
+            String thread = threadIndex == 0 ? null : lookup(threadIndex - 1);
+            String caller = callerIndex == 0 ? null : lookup(callerIndex - 1);
+            return new Entry(lastTime, level, entryTag, thread, caller, readString(length));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private void readSegmentHeader() throws IOException {
+        if (readByte() != BinaryLogEncoder.MAGIC_1 || readByte() != BinaryLogEncoder.MAGIC_2) {
+            throw new IOException("Bad segment magic");
+        }
+        int version = readByte();
+        if (version != BinaryLogEncoder.VERSION) {
+            throw new IOException("Unsupported version: " + version);
+        }
+        lastTime = readVarLong();
+        dictionary.clear();
+        inSegment = true;
+    }
+
+    private String lookup(long index) throws IOException {
+        if (index < 0 || index >= dictionary.size()) {
+            throw new IOException("Bad dictionary index: " + index);
+        }
+        return dictionary.get((int) index);
+    }
+
+    private int readByte() throws IOException {
+        int value = in.read();
+        if (value == -1) {
+            throw new EOFException();
+        }
+        return value;
+    }
+
+    private long readVarLong() throws IOException {
+        long result = 0;
+        int shift = 0;
+        while (shift < 64) {
+            int b = readByte();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+            shift += 7;
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private String readString(int length) throws IOException {
+        if (length < 0) {
+            throw new IOException("Bad length: " + length);
+        }
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        int offset = 0;
+        while (offset < length) {
+            int read = in.read(scratch, offset, length - offset);
+            if (read == -1) {
+                throw new EOFException();
+            }
+            offset += read;
+        }
+        return new String(scratch, 0, length, UTF_8);
+    }
+
+    private void skipFully(long length) throws IOException {
+        while (length > 0) {
+            long skipped = in.skip(length);
+            if (skipped <= 0) {
+                if (in.read() == -1) {
+                    throw new EOFException();
+                }
+                skipped = 1;
+            }
+            length -= skipped;
+        }
+    }
+
+    /**
+     * 一条解码后的日志
+     */
+    public static final class Entry {
+        private final long time;
+        private final int level;
+        private final String tag;
+        private final String thread;
+        private final String caller;
+        private final String message;
+
+        Entry(long time, int level, String tag, String thread, String caller, String message) {
+            this.time = time;
+            this.level = level;
+            this.tag = tag;
+            this.thread = thread;
+            this.caller = caller;
+            this.message = message;
+        }
+
+        public long getTime() {
+            return time;
+        }
+
+        public int getLevel() {
+            return level;
+        }
+
+        public String getTag() {
+            return tag;
+        }
+
+        public String getThread() {
+            return thread;
+        }
+
+        public String getCaller() {
+            return caller;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+}
@@ -0,0 +1,365 @@
+package com.pizza.tools.log.writer;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Description: 日志文件保留与压缩服务
+ * <p>
+ * 管理 LogTool、FileTree 等写入的日志目录，在低优先级后台线程中分步执行：
+ * 压缩超过一定时间的日志，删除超过保留时间的日志，总大小超出预算时从最旧的文件开始删除。
+ * 追加器正在写入的文件，以及每个目录中最新的文件，不会被删除或压缩。
+ * 每一步只处理少量文件，处理不完会重新提交，避免长时间占用 IO。
+ * </p>
+ */
+public class LogRetentionService {
+
+    private static final long DAY_MS = TimeUnit.DAYS.toMillis(1);
+    private static final String GZIP_SUFFIX = ".gz";
+    /**
+     * 每一步最多压缩的文件数
+     */
+    private static final int COMPRESS_PER_STEP = 1;
+    /**
+     * 每一步最多删除的文件数
+     */
+    private static final int DELETE_PER_STEP = 32;
+
+    private static volatile LogRetentionService singleton;
+    /**
+     * 追加器当前打开的文件，同一目录下可能同时有多个
+     */
+    private static final Set<File> ACTIVE_FILES = Collections.newSetFromMap(new ConcurrentHashMap<File, Boolean>());
+
+    private final List<Target> targets = new CopyOnWriteArrayList<>();
+    private final ScheduledThreadPoolExecutor executor;
+    private volatile long maxAgeMillis = 7 * DAY_MS;
+    private volatile long maxTotalSize = 50L * 1024 * 1024;
+    private volatile long compressAfterMillis = DAY_MS;
+    private ScheduledFuture<?> periodicFuture;
+    private boolean stepPending;
+
+    private LogRetentionService() {
+        executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "LogRetention");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+    }
+
+    public static LogRetentionService get() {
+        if (singleton == null) {
+            synchronized (LogRetentionService.class) {
+                if (singleton == null) {
+                    singleton = new LogRetentionService();
+                }
+            }
+        }
+        return singleton;
+    }
+
+    /**
+     * 添加需要管理的日志目录，同一目录和过滤器只会添加一次
+     *
+     * @param directory 日志目录
+     * @param filter    只处理被接受的文件，为空时处理目录下所有文件
+     * @return
+     */
+    public LogRetentionService watch(File directory, FilenameFilter filter) {
+        if (directory == null) {
+            return this;
+        }
+        for (Target target : targets) {
+            if (target.directory.equals(directory)
+                    && (target.filter == null ? filter == null : target.filter.equals(filter))) {
+                return this;
+            }
+        }
+        targets.add(new Target(directory, filter));
+        return this;
+    }
+
+    /**
+     * 只管理以指定前缀开头的文件
+     */
+    public LogRetentionService watch(File directory, String prefix) {
+        return watch(directory, new PrefixFilter(prefix));
+    }
+
+    /**
+     * 设置日志最长保留时间，小于等于 0 表示不按时间删除
+     */
+    public LogRetentionService setMaxAge(long maxAge, TimeUnit unit) {
+        this.maxAgeMillis = unit.toMillis(maxAge);
+        return this;
+    }
+
+    /**
+     * 设置所有目录日志的总大小上限，小于等于 0 表示不限制
+     */
+    public LogRetentionService setMaxTotalSize(long maxTotalSize) {
+        this.maxTotalSize = maxTotalSize;
+        return this;
+    }
+
+    /**
+     * 设置日志在最后修改多久之后压缩，小于 0 表示不压缩
+     */
+    public LogRetentionService setCompressAfter(long compressAfter, TimeUnit unit) {
+        this.compressAfterMillis = compressAfter < 0 ? -1 : unit.toMillis(compressAfter);
+        return this;
+    }
+
+    /**
+     * 开始周期性清理，立即执行一次
+     *
+     * @param period 周期
+     * @param unit   时间单位
+     */
+    public synchronized void start(long period, TimeUnit unit) {
+        stop();
+        periodicFuture = executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                requestCleanup();
+            }
+        }, 0, period, unit);
+    }
+
+    /**
+     * 停止周期性清理，正在执行的步骤会继续完成
+     */
+    public synchronized void stop() {
+        if (periodicFuture != null) {
+            periodicFuture.cancel(false);
+            periodicFuture = null;
+        }
+    }
+
+    /**
+     * 请求执行一次清理，已有清理在进行时忽略
+     */
+    public void requestCleanup() {
+        synchronized (this) {
+            if (stepPending) {
+                return;
+            }
+            stepPending = true;
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                runStep();
+            }
+        });
+    }
+
+    private void runStep() {
+        boolean more;
+        try {
+            more = doStep(System.currentTimeMillis());
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            more = false;
+        }
+        if (more) {
+            // 还有剩余工作，重新排队，让出线程给其他任务
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    runStep();
+                }
+            });
+        } else {
+            synchronized (this) {
+                stepPending = false;
+            }
+        }
+    }
+
+    /**
+     * 执行一步清理
+     *
+     * @return 是否还有剩余工作
+     */
+    private boolean doStep(long now) {
+        List<File> files = collectFiles();
+        long maxAge = maxAgeMillis;
+        long compressAfter = compressAfterMillis;
+        long maxTotal = maxTotalSize;
+        int deleted = 0;
+        int compressed = 0;
+        long totalSize = 0;
+        // 没有登记的写入者也可能正在写每个目录中最新的文件
+        Set<File> newest = newestPerDirectory(files);
+        List<File> alive = new ArrayList<>(files.size());
+        for (File file : files) {
+            long age = now - file.lastModified();
+            if (maxAge > 0 && age > maxAge && !isProtected(file, newest)) {
+                if (deleted >= DELETE_PER_STEP) {
+                    return true;
+                }
+                if (file.delete()) {
+                    deleted++;
+                    continue;
+                }
+            }
+            alive.add(file);
+            totalSize += file.length();
+        }
+        if (maxTotal > 0 && totalSize > maxTotal) {
+            // alive 按修改时间从旧到新排列
+            for (File file : alive) {
+                if (totalSize <= maxTotal) {
+                    break;
+                }
+                if (isProtected(file, newest)) {
+                    continue;
+                }
+                if (deleted >= DELETE_PER_STEP) {
+                    return true;
+                }
+                long length = file.length();
+                if (file.delete()) {
+                    deleted++;
+                    totalSize -= length;
+                }
+            }
+        }
+        if (compressAfter >= 0) {
+            for (File file : alive) {
+                if (isProtected(file, newest) || !file.exists() || file.getName().endsWith(GZIP_SUFFIX)
+                        || now - file.lastModified() < compressAfter
+                        || new File(file.getPath() + GZIP_SUFFIX).exists()) {
+                    continue;
+                }
+                if (compressed >= COMPRESS_PER_STEP) {
+                    return true;
+                }
+                RollingFileAppender.gzip(file);
+                compressed++;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 登记正在写入的文件，在 {@link #markInactive(File)} 之前不会被删除或压缩
+     */
+    static void markActive(File file) {
+        ACTIVE_FILES.add(file.getAbsoluteFile());
+    }
+
+    static void markInactive(File file) {
+        ACTIVE_FILES.remove(file.getAbsoluteFile());
+    }
+
+    private static boolean isProtected(File file, Set<File> newest) {
+        return newest.contains(file) || ACTIVE_FILES.contains(file.getAbsoluteFile());
+    }
+
+    /**
+     * 每个目录中修改时间最新的文件
+     *
+     * @param sortedFiles 按修改时间从旧到新排列的文件
+     */
+    private static Set<File> newestPerDirectory(List<File> sortedFiles) {
+        Map<File, File> newest = new HashMap<>();
+        for (File file : sortedFiles) {
+            newest.put(file.getParentFile(), file);
+        }
+        return new HashSet<>(newest.values());
+    }
+
+    /**
+     * 收集所有管理目录下的日志文件，按修改时间从旧到新排序
+     */
+    private List<File> collectFiles() {
+        List<File> result = new ArrayList<>();
+        Set<File> seen = new HashSet<>();
+        for (Target target : targets) {
+            File[] files = target.filter == null ? target.directory.listFiles()
+                    : target.directory.listFiles(target.filter);
+            if (files == null) {
+                continue;
+            }
+            for (File file : files) {
+                if (file.isFile() && seen.add(file)) {
+                    result.add(file);
+                }
+            }
+        }
+        final File[] array = result.toArray(new File[result.size()]);
+        final long[] modified = new long[array.length];
+        Integer[] order = new Integer[array.length];
+        for (int i = 0; i < array.length; i++) {
+            modified[i] = array[i].lastModified();
+            order[i] = i;
+        }
+        // 先取出修改时间再排序，避免比较时反复访问文件系统
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                long diff = modified[o1] - modified[o2];
+                return diff < 0 ? -1 : (diff > 0 ? 1 : array[o1].getName().compareTo(array[o2].getName()));
+            }
+        });
+        List<File> sorted = new ArrayList<>(array.length);
+        for (Integer index : order) {
+            sorted.add(array[index]);
+        }
+        return sorted;
+    }
+
+    private static final class Target {
+        final File directory;
+        final FilenameFilter filter;
+
+        Target(File directory, FilenameFilter filter) {
+            this.directory = directory;
+            this.filter = filter;
+        }
+    }
+
+    private static final class PrefixFilter implements FilenameFilter {
+        private final String prefix;
+
+        PrefixFilter(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public boolean accept(File dir, String name) {
+            return name.startsWith(prefix);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof PrefixFilter && ((PrefixFilter) o).prefix.equals(prefix);
+        }
+
+        @Override
+        public int hashCode() {
+            return prefix.hashCode();
+        }
+    }
+}
@@ -0,0 +1,437 @@
+package com.pizza.tools.log.writer;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * @Description: 滚动日志文件追加器
+ * <p>
+ * 始终保持一个打开的 {@link FileChannel}，按时间周期和文件大小滚动。
+ * 滚动边界在打开新分段时只计算一次，之后每次写入只需比较时间戳和文件长度。
+ * 关闭的分段可在后台压缩为 gzip，并按保留个数删除最旧的分段。
+ * </p>
+ * 文件命名：{@code 前缀 + 时间 + [.序号] + 后缀}，例如 {@code error_2017-03-31.1.log}
+ */
+public class RollingFileAppender {
+
+    /**
+     * 滚动周期
+     */
+    public enum RollPeriod {
+        MINUTE("yyyy-MM-dd-HH-mm", Calendar.MINUTE),
+        HOUR("yyyy-MM-dd-HH", Calendar.HOUR_OF_DAY),
+        DAY("yyyy-MM-dd", Calendar.DATE);
+
+        private final String pattern;
+        private final int calendarField;
+
+        RollPeriod(String pattern, int calendarField) {
+            this.pattern = pattern;
+            this.calendarField = calendarField;
+        }
+
+        /**
+         * 计算包含 time 的周期起点
+         */
+        long periodStart(Calendar calendar, long time) {
+            calendar.setTimeInMillis(time);
+            calendar.set(Calendar.MILLISECOND, 0);
+            calendar.set(Calendar.SECOND, 0);
+            if (this != MINUTE) {
+                calendar.set(Calendar.MINUTE, 0);
+            }
+            if (this == DAY) {
+                calendar.set(Calendar.HOUR_OF_DAY, 0);
+            }
+            return calendar.getTimeInMillis();
+        }
+
+        long nextPeriod(Calendar calendar, long periodStart) {
+            calendar.setTimeInMillis(periodStart);
+            calendar.add(calendarField, 1);
+            return calendar.getTimeInMillis();
+        }
+    }
+
+    /**
+     * 新文件的头部信息
+     */
+    public interface HeaderProvider {
+        /**
+         * 新建分段文件时调用，返回的内容写在文件最前面
+         *
+         * @return 头部信息，为空时不写入
+         */
+        String header();
+    }
+
+    public static final long DEFAULT_MAX_FILE_SIZE = 4 * 1024 * 1024;
+    public static final int DEFAULT_MAX_BACKUP_COUNT = 10;
+    private static final String GZIP_SUFFIX = ".gz";
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    /**
+     * 压缩和清理任务共用的后台线程
+     */
+    private static volatile ExecutorService sArchiveExecutor;
+
+    private final File directory;
+    private final String prefix;
+    private final String suffix;
+    private final RollPeriod period;
+    private long maxFileSize = DEFAULT_MAX_FILE_SIZE;
+    private int maxBackupCount = DEFAULT_MAX_BACKUP_COUNT;
+    private boolean compress = true;
+    private HeaderProvider headerProvider;
+
+    private final Calendar calendar = Calendar.getInstance();
+    private final SimpleDateFormat fileDateFormat;
+    private final CharsetEncoder encoder = Charset.forName("UTF-8").newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final ByteBuffer byteBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+    private FileChannel channel;
+    private File currentFile;
+    private long currentSize;
+    private long periodStart = Long.MIN_VALUE;
+    private long nextRollTime = Long.MIN_VALUE;
+    private String periodName;
+    private int segmentIndex;
+
+    /**
+     * @param directory 日志目录
+     * @param prefix    文件名前缀
+     * @param suffix    文件名后缀，如 ".log"
+     * @param period    滚动周期
+     */
+    public RollingFileAppender(File directory, String prefix, String suffix, RollPeriod period) {
+        if (directory == null || prefix == null || period == null) {
+            throw new NullPointerException("directory == null || prefix == null || period == null");
+        }
+        this.directory = directory;
+        this.prefix = prefix;
+        this.suffix = suffix == null ? "" : suffix;
+        this.period = period;
+        this.fileDateFormat = new SimpleDateFormat(period.pattern, Locale.getDefault());
+    }
+
+    /**
+     * 设置单个分段的最大字节数，小于等于 0 表示不按大小滚动
+     */
+    public RollingFileAppender setMaxFileSize(long maxFileSize) {
+        this.maxFileSize = maxFileSize;
+        return this;
+    }
+
+    /**
+     * 设置最多保留的历史分段个数，小于 0 表示不限制
+     */
+    public RollingFileAppender setMaxBackupCount(int maxBackupCount) {
+        this.maxBackupCount = maxBackupCount;
+        return this;
+    }
+
+    /**
+     * 设置是否把关闭的分段压缩为 gzip
+     */
+    public RollingFileAppender setCompress(boolean compress) {
+        this.compress = compress;
+        return this;
+    }
+
+    public RollingFileAppender setHeaderProvider(HeaderProvider headerProvider) {
+        this.headerProvider = headerProvider;
+        return this;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * 追加一段文本，必要时先滚动到新分段
+     *
+     * @param text 文本内容
+     * @throws IOException
+     */
+    public synchronized void append(CharSequence text) throws IOException {
+        long now = System.currentTimeMillis();
+        if (channel == null || now >= nextRollTime || now < periodStart
+                || (maxFileSize > 0 && currentSize >= maxFileSize)) {
+            roll(now);
+        }
+        writeText(text);
+    }
+
+    /**
+     * 以二进制格式追加一条日志，每个新分段都会重新开始编码字典
+     *
+     * @param encoder 二进制编码器，只能由该追加器使用
+     * @throws IOException
+     */
+    public synchronized void appendEncoded(BinaryLogEncoder encoder, long time, int level, String tag,
+                                           String thread, String caller, String message) throws IOException {
+        long now = System.currentTimeMillis();
+        if (channel == null || now >= nextRollTime || now < periodStart
+                || (maxFileSize > 0 && currentSize >= maxFileSize)) {
+            roll(now);
+            encoder.reset();
+        }
+        encoder.encode(time, level, tag, thread, caller, message);
+        try {
+            currentSize += encoder.writeTo(channel);
+        } catch (IOException e) {
+            encoder.clear();
+            throw e;
+        }
+    }
+
+    /**
+     * 将数据刷入磁盘
+     */
+    public synchronized void flush() {
+        if (channel != null) {
+            try {
+                channel.force(false);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * 关闭当前分段
+     */
+    public synchronized void close() {
+        closeChannel();
+        periodStart = Long.MIN_VALUE;
+        nextRollTime = Long.MIN_VALUE;
+    }
+
+    private void roll(long now) throws IOException {
+        File closed = channel != null ? currentFile : null;
+        closeChannel();
+        if (!directory.exists()) {
+            directory.mkdirs();
+        }
+        if (now >= nextRollTime || now < periodStart) {
+            periodStart = period.periodStart(calendar, now);
+            nextRollTime = period.nextPeriod(calendar, periodStart);
+            periodName = fileDateFormat.format(new Date(periodStart));
+            segmentIndex = 0;
+        } else {
+            segmentIndex++;
+        }
+        File file = segmentFile(segmentIndex);
+        // 进程重启后同一周期内的文件已写满或已被压缩时，继续寻找下一个序号
+        while ((maxFileSize > 0 && file.length() >= maxFileSize)
+                || new File(file.getPath() + GZIP_SUFFIX).exists()) {
+            segmentIndex++;
+            file = segmentFile(segmentIndex);
+        }
+        currentFile = file;
+        // 打开前登记，避免保留服务在写入期间删除或压缩
+        LogRetentionService.markActive(file);
+        channel = new FileOutputStream(file, true).getChannel();
+        currentSize = channel.size();
+        if (currentSize == 0 && headerProvider != null) {
+            String header = headerProvider.header();
+            if (header != null && header.length() > 0) {
+                writeText(header);
+            }
+        }
+        if (closed != null) {
+            archive(closed);
+        }
+    }
+
+    private File segmentFile(int index) {
+        String name = index == 0 ? prefix + periodName + suffix
+                : prefix + periodName + "." + index + suffix;
+        return new File(directory, name);
+    }
+
+    private void writeText(CharSequence text) throws IOException {
+        CharBuffer chars = CharBuffer.wrap(text);
+        encoder.reset();
+        while (true) {
+            CoderResult result = encoder.encode(chars, byteBuffer, true);
+            if (!result.isOverflow()) {
+                break;
+            }
+            drainBuffer();
+        }
+        while (encoder.flush(byteBuffer).isOverflow()) {
+            drainBuffer();
+        }
+        drainBuffer();
+    }
+
+    private void drainBuffer() throws IOException {
+        byteBuffer.flip();
+        while (byteBuffer.hasRemaining()) {
+            currentSize += channel.write(byteBuffer);
+        }
+        byteBuffer.clear();
+    }
+
+    private void closeChannel() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            channel = null;
+        }
+        if (currentFile != null) {
+            LogRetentionService.markInactive(currentFile);
+        }
+    }
+
+    /**
+     * 在后台压缩已关闭的分段并清理超出保留个数的历史分段
+     */
+    private void archive(final File closed) {
+        final boolean compress = this.compress;
+        final int maxBackupCount = this.maxBackupCount;
+        archiveExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                if (compress) {
+                    gzip(closed);
+                }
+                if (maxBackupCount >= 0) {
+                    trimBackups(maxBackupCount);
+                }
+            }
+        });
+    }
+
+    private void trimBackups(int maxBackupCount) {
+        final File active;
+        synchronized (this) {
+            active = currentFile;
+        }
+        File[] files = directory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                String name = file.getName();
+                return file.isFile() && name.startsWith(prefix) && !file.equals(active)
+                        && (name.endsWith(suffix) || name.endsWith(suffix + GZIP_SUFFIX));
+            }
+        });
+        if (files == null || files.length <= maxBackupCount) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File o1, File o2) {
+                long diff = o1.lastModified() - o2.lastModified();
+                return diff < 0 ? -1 : (diff > 0 ? 1 : o1.getName().compareTo(o2.getName()));
+            }
+        });
+        for (int i = 0; i < files.length - maxBackupCount; i++) {
+            files[i].delete();
+        }
+    }
+
+    /**
+     * 流式压缩文件，成功后删除原文件
+     *
+     * @param source 原文件
+     * @return 压缩后的文件，失败返回 null
+     */
+    static File gzip(File source) {
+        if (!source.isFile()) {
+            return null;
+        }
+        File target = new File(source.getPath() + GZIP_SUFFIX);
+        InputStream in = null;
+        OutputStream out = null;
+        boolean success = false;
+        try {
+            in = new FileInputStream(source);
+            out = new GZIPOutputStream(new FileOutputStream(target), BUFFER_SIZE);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int len;
+            while ((len = in.read(buffer)) != -1) {
+                out.write(buffer, 0, len);
+            }
+            out.close();
+            out = null;
+            success = true;
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            closeQuietly(in);
+            closeQuietly(out);
+        }
+        if (success) {
+            target.setLastModified(source.lastModified());
+            source.delete();
+            return target;
+        }
+        target.delete();
+        return null;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    static ExecutorService archiveExecutor() {
+        if (sArchiveExecutor == null) {
+            synchronized (RollingFileAppender.class) {
+                if (sArchiveExecutor == null) {
+                    ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1,
+                            30L, TimeUnit.SECONDS,
+                            new LinkedBlockingQueue<Runnable>(),
+                            new ThreadFactory() {
+                                @Override
+                                public Thread newThread(Runnable r) {
+                                    Thread thread = new Thread(r, "LogArchive");
+                                    thread.setDaemon(true);
+                                    thread.setPriority(Thread.MIN_PRIORITY);
+                                    return thread;
+                                }
+                            });
+                    executor.allowCoreThreadTimeOut(true);
+                    sArchiveExecutor = executor;
+                }
+            }
+        }
+        return sArchiveExecutor;
+    }
+}
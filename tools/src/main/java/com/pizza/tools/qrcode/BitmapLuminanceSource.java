@@ -14,14 +14,20 @@ public class BitmapLuminanceSource extends LuminanceSource {
     public BitmapLuminanceSource(Bitmap bitmap) {
         super(bitmap.getWidth(), bitmap.getHeight());
 
-        // 首先，要取得该图片的像素数组内容
-        int[] data = new int[bitmap.getWidth() * bitmap.getHeight()];
-        this.bitmapPixels = new byte[bitmap.getWidth() * bitmap.getHeight()];
-        bitmap.getPixels(data, 0, getWidth(), 0, 0, getWidth(), getHeight());
-
-        // 将int数组转换为byte数组，也就是取像素值中蓝色值部分作为辨析内容
-        for (int i = 0; i < data.length; i++) {
-            this.bitmapPixels[i] = (byte) data[i];
+        int width = getWidth();
+        int height = getHeight();
+        this.bitmapPixels = new byte[width * height];
+        // 逐行读取像素并转换为亮度，只需要一行大小的临时数组
+        int[] row = new int[width];
+        int offset = 0;
+        for (int y = 0; y < height; y++) {
+            bitmap.getPixels(row, 0, width, 0, y, width, 1);
+            for (int x = 0; x < width; x++) {
+                int pixel = row[x];
+                // Y = 0.299R + 0.587G + 0.114B
+                this.bitmapPixels[offset++] = (byte) ((((pixel >> 16) & 0xff) * 77
+                        + ((pixel >> 8) & 0xff) * 150 + (pixel & 0xff) * 29) >> 8);
+            }
         }
     }
 
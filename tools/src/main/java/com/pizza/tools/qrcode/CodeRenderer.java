@@ -0,0 +1,277 @@
+package com.pizza.tools.qrcode;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.text.TextUtils;
+import android.util.LruCache;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.MultiFormatWriter;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.QRCodeWriter;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * @Description: 二维码 / 条形码 图片生成
+ * <p>
+ * 按模块分辨率编码（二维码每个模块、条形码每根最窄的条只占一个点），再按整数倍放大到目标尺寸：
+ * 每个模块行只生成一次像素行，连续相同的模块整段填充，其余行直接拷贝。
+ * Logo 通过一次 Canvas 绘制缩放并叠加到中间。
+ * 生成结果按 内容、尺寸、格式、Logo 缓存，最近最少使用的先淘汰，重复生成同一个码时直接返回缓存。
+ * 缓存中的图片被共享，使用者不能修改；被回收的图片会在下一次获取时重新生成。
+ * </p>
+ */
+public class CodeRenderer {
+
+    private static final int WHITE = 0xffffffff;
+    private static final int BLACK = 0xff000000;
+    /**
+     * Logo 的宽高不超过二维码的 1/5
+     */
+    private static final int LOGO_RATIO = 5;
+
+    private static volatile CodeRenderer singleton;
+
+    private final LruCache<Key, Bitmap> cache;
+
+    /**
+     * @param maxSize 缓存的最大字节数
+     */
+    public CodeRenderer(int maxSize) {
+        cache = new LruCache<Key, Bitmap>(maxSize) {
+            @Override
+            protected int sizeOf(Key key, Bitmap value) {
+                return value.getAllocationByteCount();
+            }
+        };
+    }
+
+    /**
+     * 全局实例，缓存默认为最大可用内存的 1/32
+     */
+    public static CodeRenderer get() {
+        if (singleton == null) {
+            synchronized (CodeRenderer.class) {
+                if (singleton == null) {
+                    singleton = new CodeRenderer((int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 32));
+                }
+            }
+        }
+        return singleton;
+    }
+
+    /**
+     * 生成二维码，容错级别为 H，没有空白边距
+     *
+     * @param text   内容
+     * @param width  宽度，小于二维码模块数时使用模块数
+     * @param height 高度，小于二维码模块数时使用模块数
+     * @param logo   中间的 Logo，可以为 null，不会被回收
+     * @return 共享的图片，不能修改，生成失败时返回 null
+     */
+    public Bitmap renderQrCode(String text, int width, int height, Bitmap logo) {
+        if (TextUtils.isEmpty(text)) {
+            return null;
+        }
+        Key key = new Key(text, BarcodeFormat.QR_CODE, width, height, logo);
+        Bitmap bitmap = getCached(key);
+        if (bitmap != null) {
+            return bitmap;
+        }
+        Map<EncodeHintType, Object> hints = new EnumMap<>(EncodeHintType.class);
+        hints.put(EncodeHintType.CHARACTER_SET, "utf-8");
+        hints.put(EncodeHintType.ERROR_CORRECTION, ErrorCorrectionLevel.H);
+        hints.put(EncodeHintType.MARGIN, 0);
+        try {
+            // 宽高为 0 时按模块分辨率输出
+            BitMatrix modules = new QRCodeWriter().encode(text, BarcodeFormat.QR_CODE, 0, 0, hints);
+            bitmap = render(modules, width, height, true);
+        } catch (WriterException e) {
+            e.printStackTrace();
+            return null;
+        }
+        if (logo != null && !logo.isRecycled()) {
+            drawLogo(bitmap, logo);
+        }
+        cache.put(key, bitmap);
+        return bitmap;
+    }
+
+    /**
+     * 生成一维条形码
+     *
+     * @param contents 内容
+     * @param format   编码格式，如 {@link BarcodeFormat#CODE_128}
+     * @param width    宽度，小于条码模块数时使用模块数
+     * @param height   高度
+     * @return 共享的图片，不能修改，生成失败时返回 null
+     */
+    public Bitmap renderBarcode(String contents, BarcodeFormat format, int width, int height) {
+        if (TextUtils.isEmpty(contents)) {
+            return null;
+        }
+        Key key = new Key(contents, format, width, height, null);
+        Bitmap bitmap = getCached(key);
+        if (bitmap != null) {
+            return bitmap;
+        }
+        try {
+            // 只编码一行，每个模块一个点
+            BitMatrix modules = new MultiFormatWriter().encode(contents, format, 0, 1, null);
+            bitmap = render(modules, width, height, false);
+        } catch (WriterException | IllegalArgumentException e) {
+            e.printStackTrace();
+            return null;
+        }
+        cache.put(key, bitmap);
+        return bitmap;
+    }
+
+    /**
+     * 把模块分辨率的矩阵按整数倍放大并居中绘制，四周填充白色，不使用缓存
+     *
+     * @param modules        模块矩阵，每个模块一个点
+     * @param width          输出宽度，小于矩阵宽度时使用矩阵宽度
+     * @param height         输出高度，小于矩阵高度时使用矩阵高度
+     * @param uniformScaling 横竖使用相同倍数（二维码），否则每一行都拉伸到整个高度（一维条形码）
+     */
+    public static Bitmap render(BitMatrix modules, int width, int height, boolean uniformScaling) {
+        int moduleWidth = modules.getWidth();
+        int moduleHeight = modules.getHeight();
+        int outWidth = Math.max(width, moduleWidth);
+        int outHeight = Math.max(height, moduleHeight);
+        int scaleX = outWidth / moduleWidth;
+        int scaleY = outHeight / moduleHeight;
+        if (uniformScaling) {
+            scaleX = scaleY = Math.min(scaleX, scaleY);
+        }
+        int left = (outWidth - moduleWidth * scaleX) / 2;
+        int top = (outHeight - moduleHeight * scaleY) / 2;
+
+        Bitmap bitmap = Bitmap.createBitmap(outWidth, outHeight, Bitmap.Config.ARGB_8888);
+        bitmap.eraseColor(WHITE);
+        // 同一模块行放大后的所有像素行，一次写入
+        int[] band = new int[outWidth * scaleY];
+        Arrays.fill(band, 0, outWidth, WHITE);
+        for (int my = 0; my < moduleHeight; my++) {
+            int x = left;
+            int mx = 0;
+            while (mx < moduleWidth) {
+                boolean black = modules.get(mx, my);
+                int run = mx + 1;
+                while (run < moduleWidth && modules.get(run, my) == black) {
+                    run++;
+                }
+                int end = x + (run - mx) * scaleX;
+                Arrays.fill(band, x, end, black ? BLACK : WHITE);
+                x = end;
+                mx = run;
+            }
+            for (int i = 1; i < scaleY; i++) {
+                System.arraycopy(band, 0, band, i * outWidth, outWidth);
+            }
+            bitmap.setPixels(band, 0, outWidth, 0, top + my * scaleY, outWidth, scaleY);
+        }
+        return bitmap;
+    }
+
+    /**
+     * 把 Logo 等比缩放到不超过码的 1/5 并绘制在中间
+     */
+    private static void drawLogo(Bitmap code, Bitmap logo) {
+        int width = code.getWidth();
+        int height = code.getHeight();
+        float scale = Math.min(width * 1.0f / LOGO_RATIO / logo.getWidth(),
+                height * 1.0f / LOGO_RATIO / logo.getHeight());
+        float logoWidth = logo.getWidth() * scale;
+        float logoHeight = logo.getHeight() * scale;
+        float left = (width - logoWidth) / 2;
+        float top = (height - logoHeight) / 2;
+        Canvas canvas = new Canvas(code);
+        canvas.drawBitmap(logo, null, new RectF(left, top, left + logoWidth, top + logoHeight),
+                new Paint(Paint.FILTER_BITMAP_FLAG));
+        canvas.setBitmap(null);
+    }
+
+    private Bitmap getCached(Key key) {
+        Bitmap bitmap = cache.get(key);
+        if (bitmap != null && bitmap.isRecycled()) {
+            cache.remove(key);
+            return null;
+        }
+        return bitmap;
+    }
+
+    /**
+     * 清空缓存
+     */
+    public void clear() {
+        cache.evictAll();
+    }
+
+    /**
+     * 响应系统内存回调，可在 {@link ComponentCallbacks2#onTrimMemory(int)} 中调用
+     *
+     * @param level
+     */
+    public void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            clear();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            cache.trimToSize(cache.maxSize() / 2);
+        }
+    }
+
+    /**
+     * 缓存键，Logo 按对象和 generationId 区分，Logo 内容被修改后不会命中旧的结果
+     */
+    private static final class Key {
+        final String contents;
+        final BarcodeFormat format;
+        final int width;
+        final int height;
+        final Bitmap logo;
+        final int logoGeneration;
+
+        Key(String contents, BarcodeFormat format, int width, int height, Bitmap logo) {
+            this.contents = contents;
+            this.format = format;
+            this.width = width;
+            this.height = height;
+            this.logo = logo;
+            this.logoGeneration = logo == null ? 0 : logo.getGenerationId();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return width == other.width && height == other.height && format == other.format
+                    && logo == other.logo && logoGeneration == other.logoGeneration
+                    && contents.equals(other.contents);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = contents.hashCode();
+            result = 31 * result + format.hashCode();
+            result = 31 * result + width;
+            result = 31 * result + height;
+            result = 31 * result + System.identityHashCode(logo);
+            result = 31 * result + logoGeneration;
+            return result;
+        }
+    }
+}
@@ -0,0 +1,330 @@
+package com.pizza.tools.qrcode;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.MultiFormatReader;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+import com.google.zxing.common.HybridBinarizer;
+
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * @Description: 连续识别相机预览帧中的 二维码 / 条形码
+ * <p>
+ * 直接接收 YUV（NV21 / YV12 等 Y 平面在前的格式）数据，只读取 Y 平面作为亮度，不需要先转换为 Bitmap。
+ * 不裁剪也不旋转时直接包装原始数据，不做任何拷贝；设置了识别区域或旋转角度时，
+ * 在一次遍历中裁剪并旋转到复用的缓冲中，不会为每一帧分配内存。
+ * 同一时间只识别一帧，识别未完成时送入的帧直接丢弃，识别结果通过 {@link Callback} 回调。
+ * </p>
+ * <pre>
+ * FrameScanner scanner = new FrameScanner(callback).setRotation(90);
+ * // Camera.PreviewCallback#onPreviewFrame
+ * scanner.offer(data, previewWidth, previewHeight);
+ * </pre>
+ * <p>
+ * 识别线程和回调线程都可以通过构造方法指定，传入直接执行的 {@link Executor} 即可在 JVM 上同步测试，
+ * 此时不会用到任何 Android 类。
+ * </p>
+ */
+public class FrameScanner {
+
+    /**
+     * 识别结果回调
+     */
+    public interface Callback {
+        /**
+         * 识别成功，之后的帧仍会继续识别，不需要时调用 {@link #pause()}
+         *
+         * @param result 识别结果
+         */
+        void onResult(Result result);
+    }
+
+    private final MultiFormatReader reader = new MultiFormatReader();
+    private final Callback callback;
+    private final Executor decodeExecutor;
+    private final Executor callbackExecutor;
+    private final AtomicBoolean decoding = new AtomicBoolean();
+    private final DecodeRunnable decodeRunnable = new DecodeRunnable();
+
+    /**
+     * 识别区域 {left, top, width, height}，整体替换，null 表示整帧
+     */
+    private volatile int[] region;
+    private volatile int rotation;
+    private volatile boolean paused;
+    /**
+     * 裁剪、旋转使用的缓冲，只在识别线程访问
+     */
+    private byte[] buffer;
+
+    /**
+     * 在单独的后台线程识别，结果通过 Handler 在主线程回调
+     *
+     * @param callback 识别结果回调
+     */
+    public FrameScanner(Callback callback) {
+        this(callback, newDecodeExecutor(), new MainThreadExecutor());
+    }
+
+    /**
+     * @param callback         识别结果回调
+     * @param decodeExecutor   执行识别的线程
+     * @param callbackExecutor 执行回调的线程
+     */
+    public FrameScanner(Callback callback, Executor decodeExecutor, Executor callbackExecutor) {
+        this(callback, decodeExecutor, callbackExecutor, QrCodeScanner.DEFAULT_FORMATS);
+    }
+
+    /**
+     * @param callback         识别结果回调
+     * @param decodeExecutor   执行识别的线程
+     * @param callbackExecutor 执行回调的线程
+     * @param formats          需要识别的格式
+     */
+    public FrameScanner(Callback callback, Executor decodeExecutor, Executor callbackExecutor,
+                        Collection<BarcodeFormat> formats) {
+        this.callback = callback;
+        this.decodeExecutor = decodeExecutor;
+        this.callbackExecutor = callbackExecutor;
+        Map<DecodeHintType, Object> hints = new EnumMap<>(DecodeHintType.class);
+        hints.put(DecodeHintType.POSSIBLE_FORMATS, EnumSet.copyOf(formats));
+        reader.setHints(hints);
+    }
+
+    /**
+     * 设置识别区域，坐标相对于未旋转的原始帧，超出帧的部分会被忽略
+     *
+     * @param left   左边界
+     * @param top    上边界
+     * @param width  宽度
+     * @param height 高度
+     */
+    public FrameScanner setRegion(int left, int top, int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Region must not be empty: " + width + "x" + height);
+        }
+        this.region = new int[]{left, top, width, height};
+        return this;
+    }
+
+    /**
+     * 清除识别区域，识别整帧
+     */
+    public FrameScanner clearRegion() {
+        this.region = null;
+        return this;
+    }
+
+    /**
+     * 设置顺时针旋转角度，与相机的显示方向一致。条形码需要水平方向才能识别，竖屏时通常设置为 90
+     *
+     * @param degrees 0、90、180 或 270
+     */
+    public FrameScanner setRotation(int degrees) {
+        int normalized = (degrees % 360 + 360) % 360;
+        if (normalized % 90 != 0) {
+            throw new IllegalArgumentException("Rotation must be a multiple of 90: " + degrees);
+        }
+        this.rotation = normalized;
+        return this;
+    }
+
+    /**
+     * 暂停识别，之后送入的帧全部丢弃
+     */
+    public void pause() {
+        paused = true;
+    }
+
+    /**
+     * 恢复识别
+     */
+    public void resume() {
+        paused = false;
+    }
+
+    /**
+     * 是否有帧正在识别
+     */
+    public boolean isDecoding() {
+        return decoding.get();
+    }
+
+    /**
+     * 送入一帧，正在识别上一帧或已暂停时直接丢弃。
+     * 被接收的帧在识别完成前不能修改，使用 Camera#addCallbackBuffer 复用缓冲时，
+     * 应在 {@link #isDecoding()} 返回 false 后再归还。
+     *
+     * @param data   Y 平面在前的 YUV 数据
+     * @param width  帧宽度
+     * @param height 帧高度
+     * @return 是否被接收
+     */
+    public boolean offer(byte[] data, int width, int height) {
+        if (paused || data == null || data.length < width * height) {
+            return false;
+        }
+        if (!decoding.compareAndSet(false, true)) {
+            return false;
+        }
+        // 同一时间只有一帧在识别，复用同一个任务对象
+        decodeRunnable.data = data;
+        decodeRunnable.width = width;
+        decodeRunnable.height = height;
+        try {
+            decodeExecutor.execute(decodeRunnable);
+        } catch (RuntimeException e) {
+            decodeRunnable.data = null;
+            decoding.set(false);
+            e.printStackTrace();
+            return false;
+        }
+        return true;
+    }
+
+    private Result decode(byte[] data, int width, int height) {
+        int left = 0;
+        int top = 0;
+        int cropWidth = width;
+        int cropHeight = height;
+        int[] region = this.region;
+        if (region != null) {
+            left = Math.max(0, region[0]);
+            top = Math.max(0, region[1]);
+            cropWidth = Math.min(width, region[0] + region[2]) - left;
+            cropHeight = Math.min(height, region[1] + region[3]) - top;
+            if (cropWidth <= 0 || cropHeight <= 0) {
+                return null;
+            }
+        }
+        PlanarYUVLuminanceSource source;
+        int rotation = this.rotation;
+        if (rotation == 0 && cropWidth == width && cropHeight == height) {
+            // 整帧，直接使用 Y 平面
+            source = new PlanarYUVLuminanceSource(data, width, height, 0, 0, width, height, false);
+        } else {
+            int size = cropWidth * cropHeight;
+            if (buffer == null || buffer.length < size) {
+                buffer = new byte[size];
+            }
+            cropAndRotate(data, width, left, top, cropWidth, cropHeight, rotation, buffer);
+            int outWidth = rotation % 180 == 0 ? cropWidth : cropHeight;
+            int outHeight = rotation % 180 == 0 ? cropHeight : cropWidth;
+            source = new PlanarYUVLuminanceSource(buffer, outWidth, outHeight, 0, 0, outWidth, outHeight, false);
+        }
+        try {
+            return reader.decodeWithState(new BinaryBitmap(new HybridBinarizer(source)));
+        } catch (ReaderException e) {
+            return null;
+        } finally {
+            reader.reset();
+        }
+    }
+
+    /**
+     * 把 Y 平面中的区域顺时针旋转后写入 out
+     */
+    static void cropAndRotate(byte[] data, int dataWidth, int left, int top, int width, int height,
+                              int rotation, byte[] out) {
+        int offset = 0;
+        switch (rotation) {
+            case 90:
+                // 输出的第 y 行是原区域的第 y 列，从下往上读取
+                for (int y = 0; y < width; y++) {
+                    int src = (top + height - 1) * dataWidth + left + y;
+                    for (int x = 0; x < height; x++) {
+                        out[offset++] = data[src];
+                        src -= dataWidth;
+                    }
+                }
+                break;
+            case 180:
+                for (int y = 0; y < height; y++) {
+                    int src = (top + height - 1 - y) * dataWidth + left + width - 1;
+                    for (int x = 0; x < width; x++) {
+                        out[offset++] = data[src--];
+                    }
+                }
+                break;
+            case 270:
+                // 输出的第 y 行是原区域的倒数第 y 列，从上往下读取
+                for (int y = 0; y < width; y++) {
+                    int src = top * dataWidth + left + width - 1 - y;
+                    for (int x = 0; x < height; x++) {
+                        out[offset++] = data[src];
+                        src += dataWidth;
+                    }
+                }
+                break;
+            default:
+                for (int y = 0; y < height; y++) {
+                    System.arraycopy(data, (top + y) * dataWidth + left, out, offset, width);
+                    offset += width;
+                }
+                break;
+        }
+    }
+
+    private static ExecutorService newDecodeExecutor() {
+        return Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "FrameScanner");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    private final class DecodeRunnable implements Runnable {
+        byte[] data;
+        int width;
+        int height;
+
+        @Override
+        public void run() {
+            final Result result;
+            try {
+                result = decode(data, width, height);
+            } finally {
+                data = null;
+                decoding.set(false);
+            }
+            if (result != null && !paused) {
+                callbackExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onResult(result);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * 在主线程执行
+     */
+    private static final class MainThreadExecutor implements Executor {
+        private final Handler handler = new Handler(Looper.getMainLooper());
+
+        @Override
+        public void execute(Runnable command) {
+            handler.post(command);
+        }
+    }
+}
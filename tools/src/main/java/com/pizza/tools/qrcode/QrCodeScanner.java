@@ -0,0 +1,237 @@
+package com.pizza.tools.qrcode;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.MultiFormatReader;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+import com.google.zxing.common.HybridBinarizer;
+import com.pizza.tools.ImageTool;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+
+/**
+ * @Description: 可复用的图片 二维码 / 条形码 识别器
+ * <p>
+ * 识别器持有配置好的 {@link MultiFormatReader}，以及复用的像素行缓冲和亮度缓冲。
+ * 采样和亮度计算在一次遍历中完成，按 ITU-R BT.601 计算真实的 Y 值，不需要先缩放图片。
+ * 识别按代价从低到高依次尝试：整图小尺寸、中心区域、整图原尺寸、整图 TRY_HARDER，识别成功立即返回。
+ * 同一个识别器不能在多个线程中同时使用，批量识别时每个线程使用自己的识别器。
+ * </p>
+ * <pre>
+ * QrCodeScanner scanner = new QrCodeScanner();
+ * for (String path : paths) {
+ *     Result result = scanner.scan(path);
+ * }
+ * </pre>
+ */
+public class QrCodeScanner {
+
+    /**
+     * 默认支持的格式，与 {@link QrCodeTool#decodeFromPhoto(Bitmap)} 一致
+     */
+    public static final Collection<BarcodeFormat> DEFAULT_FORMATS = Collections.unmodifiableSet(EnumSet.of(
+            BarcodeFormat.UPC_A, BarcodeFormat.UPC_E, BarcodeFormat.EAN_13, BarcodeFormat.EAN_8,
+            BarcodeFormat.CODE_39, BarcodeFormat.CODE_93, BarcodeFormat.CODE_128, BarcodeFormat.ITF,
+            BarcodeFormat.QR_CODE, BarcodeFormat.DATA_MATRIX));
+
+    /**
+     * 从文件识别时解码的最大边长
+     */
+    private static final int MAX_DECODE_SIZE = 2048;
+    /**
+     * 第一次尝试时的最大边长，大多数图片在这个尺寸下就能识别
+     */
+    private static final int FAST_SCAN_SIZE = 800;
+    /**
+     * 中心区域占整图宽高的比例
+     */
+    private static final float CENTER_REGION_RATIO = 0.6f;
+
+    private final MultiFormatReader reader = new MultiFormatReader();
+    private final MultiFormatReader hardReader = new MultiFormatReader();
+    private boolean tryHarder = true;
+    private int[] rowPixels;
+    private byte[] luminance;
+
+    public QrCodeScanner() {
+        this(DEFAULT_FORMATS);
+    }
+
+    /**
+     * @param formats 需要识别的格式
+     */
+    public QrCodeScanner(Collection<BarcodeFormat> formats) {
+        Map<DecodeHintType, Object> hints = new EnumMap<>(DecodeHintType.class);
+        hints.put(DecodeHintType.POSSIBLE_FORMATS, EnumSet.copyOf(formats));
+        reader.setHints(hints);
+        Map<DecodeHintType, Object> hardHints = new EnumMap<>(hints);
+        hardHints.put(DecodeHintType.TRY_HARDER, Boolean.TRUE);
+        hardReader.setHints(hardHints);
+    }
+
+    /**
+     * 其他尝试都失败时，是否使用 TRY_HARDER 再识别一次整图，默认开启
+     */
+    public QrCodeScanner setTryHarder(boolean tryHarder) {
+        this.tryHarder = tryHarder;
+        return this;
+    }
+
+    /**
+     * 识别图片文件，按最大边长采样解码，不会把大图完整解码到内存中
+     *
+     * @param filePath 图片路径
+     * @return 识别结果，未识别时返回 null
+     */
+    public Result scan(String filePath) {
+        Bitmap bitmap = ImageTool.getBitmap(filePath, MAX_DECODE_SIZE, MAX_DECODE_SIZE);
+        if (bitmap == null) {
+            return null;
+        }
+        try {
+            return scan(bitmap);
+        } finally {
+            ImageTool.recycle(bitmap);
+        }
+    }
+
+    /**
+     * 识别图片，不会回收或修改传入的图片
+     *
+     * @param bitmap 图片
+     * @return 识别结果，未识别时返回 null
+     */
+    public Result scan(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) {
+            return null;
+        }
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        Rect full = new Rect(0, 0, width, height);
+        int fastStep = stepFor(full, FAST_SCAN_SIZE);
+
+        Result result = decode(reader, bitmap, full, fastStep);
+        if (result != null) {
+            return result;
+        }
+        int regionWidth = (int) (width * CENTER_REGION_RATIO);
+        int regionHeight = (int) (height * CENTER_REGION_RATIO);
+        Rect center = new Rect((width - regionWidth) / 2, (height - regionHeight) / 2,
+                (width + regionWidth) / 2, (height + regionHeight) / 2);
+        int centerStep = stepFor(center, FAST_SCAN_SIZE);
+        if (!center.isEmpty() && centerStep < fastStep) {
+            result = decode(reader, bitmap, center, centerStep);
+            if (result != null) {
+                return result;
+            }
+        }
+        if (fastStep > 1) {
+            result = decode(reader, bitmap, full, 1);
+            if (result != null) {
+                return result;
+            }
+        }
+        if (tryHarder) {
+            result = decode(hardReader, bitmap, full, fastStep);
+        }
+        return result;
+    }
+
+    /**
+     * 释放复用的缓冲
+     */
+    public void release() {
+        rowPixels = null;
+        luminance = null;
+    }
+
+    private Result decode(MultiFormatReader reader, Bitmap bitmap, Rect region, int step) {
+        LuminanceSource source = toLuminance(bitmap, region, step);
+        try {
+            return reader.decodeWithState(new BinaryBitmap(new HybridBinarizer(source)));
+        } catch (ReaderException e) {
+            return null;
+        } finally {
+            reader.reset();
+        }
+    }
+
+    /**
+     * 一次遍历完成区域裁剪、按步长采样和亮度计算，结果写入复用的亮度缓冲
+     */
+    private LuminanceSource toLuminance(Bitmap bitmap, Rect region, int step) {
+        int regionWidth = region.width();
+        int outWidth = (regionWidth + step - 1) / step;
+        int outHeight = (region.height() + step - 1) / step;
+        int size = outWidth * outHeight;
+        if (luminance == null || luminance.length < size) {
+            luminance = new byte[size];
+        }
+        if (rowPixels == null || rowPixels.length < regionWidth) {
+            rowPixels = new int[regionWidth];
+        }
+        byte[] out = luminance;
+        int[] row = rowPixels;
+        int offset = 0;
+        for (int y = 0; y < outHeight; y++) {
+            bitmap.getPixels(row, 0, regionWidth, region.left, region.top + y * step, regionWidth, 1);
+            for (int x = 0; x < regionWidth; x += step) {
+                int pixel = row[x];
+                int r = (pixel >> 16) & 0xff;
+                int g = (pixel >> 8) & 0xff;
+                int b = pixel & 0xff;
+                // Y = 0.299R + 0.587G + 0.114B
+                out[offset++] = (byte) ((r * 77 + g * 150 + b * 29) >> 8);
+            }
+        }
+        return new BufferLuminanceSource(out, outWidth, outHeight);
+    }
+
+    /**
+     * 按步长采样后的最大边不超过 maxSize
+     */
+    private static int stepFor(Rect region, int maxSize) {
+        int side = Math.max(region.width(), region.height());
+        return Math.max(1, (side + maxSize - 1) / maxSize);
+    }
+
+    /**
+     * 直接包装亮度缓冲的 LuminanceSource，缓冲长度可能大于 width * height
+     */
+    private static final class BufferLuminanceSource extends LuminanceSource {
+        private final byte[] luminance;
+
+        BufferLuminanceSource(byte[] luminance, int width, int height) {
+            super(width, height);
+            this.luminance = luminance;
+        }
+
+        @Override
+        public byte[] getRow(int y, byte[] row) {
+            int width = getWidth();
+            if (row == null || row.length < width) {
+                row = new byte[width];
+            }
+            System.arraycopy(luminance, y * width, row, 0, width);
+            return row;
+        }
+
+        /**
+         * 直接返回复用的缓冲，{@link HybridBinarizer} 只读取前 width * height 个字节
+         */
+        @Override
+        public byte[] getMatrix() {
+            return luminance;
+        }
+    }
+}
@@ -4,100 +4,57 @@ import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
-import android.graphics.Matrix;
 import android.graphics.PointF;
-import android.text.TextUtils;
 import android.view.Gravity;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.TextView;
 
 import com.google.zxing.BarcodeFormat;
-import com.google.zxing.BinaryBitmap;
-import com.google.zxing.DecodeHintType;
-import com.google.zxing.EncodeHintType;
-import com.google.zxing.MultiFormatReader;
-import com.google.zxing.MultiFormatWriter;
 import com.google.zxing.Result;
 import com.google.zxing.WriterException;
 import com.google.zxing.common.BitMatrix;
-import com.google.zxing.common.HybridBinarizer;
-import com.google.zxing.qrcode.QRCodeWriter;
-import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
-import com.pizza.tools.ImageTool;
-
-import java.util.Hashtable;
-import java.util.Vector;
 
 /**
  * 二维码工具类
  */
 public class QrCodeTool {
+
+    /**
+     * 每个线程复用一个识别器，避免每次识别都重新创建 reader 和缓冲
+     */
+    private static final ThreadLocal<QrCodeScanner> SCANNER = new ThreadLocal<QrCodeScanner>() {
+        @Override
+        protected QrCodeScanner initialValue() {
+            return new QrCodeScanner();
+        }
+    };
+
     /**
      * 解析图片中的 二维码 或者 条形码
+     * <p>不会回收传入的图片；批量识别时可以直接使用 {@link QrCodeScanner}</p>
      *
      * @param photo 待解析的图片
      * @return Result 解析结果，解析识别时返回NULL
      */
     public static Result decodeFromPhoto(Bitmap photo) {
-        Result rawResult = null;
-        if (photo != null) {
-            // 为防止原始图片过大导致内存溢出，这里先缩小原图显示，然后释放原始Bitmap占用的内存
-            Bitmap smallBitmap = ImageTool.zoomBitmap(photo, photo.getWidth() / 2, photo.getHeight() / 2);
-            // 释放原始图片占用的内存，防止out of memory异常发生
-            photo.recycle();
-            MultiFormatReader multiFormatReader = new MultiFormatReader();
-
-            // 解码的参数
-            Hashtable<DecodeHintType, Object> hints = new Hashtable<>(2);
-            // 可以解析的编码类型
-            Vector<BarcodeFormat> decodeFormats = new Vector<>();
-            Vector<BarcodeFormat> productFormats = new Vector<>(5);
-            productFormats.add(BarcodeFormat.UPC_A);
-            productFormats.add(BarcodeFormat.UPC_E);
-            productFormats.add(BarcodeFormat.EAN_13);
-            productFormats.add(BarcodeFormat.EAN_8);
-            // PRODUCT_FORMATS.add(BarcodeFormat.RSS14);
-            Vector<BarcodeFormat> oneFormats = new Vector<>(productFormats.size() + 4);
-            oneFormats.addAll(productFormats);
-            oneFormats.add(BarcodeFormat.CODE_39);
-            oneFormats.add(BarcodeFormat.CODE_93);
-            oneFormats.add(BarcodeFormat.CODE_128);
-            oneFormats.add(BarcodeFormat.ITF);
-            Vector<BarcodeFormat> qrCodeFormats = new Vector<>(1);
-            qrCodeFormats.add(BarcodeFormat.QR_CODE);
-            Vector<BarcodeFormat> dataMatrixFormats = new Vector<>(1);
-            dataMatrixFormats.add(BarcodeFormat.DATA_MATRIX);
-            // 这里设置可扫描的类型，我这里选择了都支持
-            decodeFormats.addAll(oneFormats);
-            decodeFormats.addAll(qrCodeFormats);
-            decodeFormats.addAll(dataMatrixFormats);
-            hints.put(DecodeHintType.POSSIBLE_FORMATS, decodeFormats);
-            // 设置继续的字符编码格式为UTF8
-            // hints.put(DecodeHintType.CHARACTER_SET, "UTF8");
-            // 设置解析配置参数
-            multiFormatReader.setHints(hints);
+        return SCANNER.get().scan(photo);
+    }
 
-            // 开始对图像资源解码
-            try {
-                rawResult = multiFormatReader.decodeWithState(
-                        new BinaryBitmap(
-                                new HybridBinarizer(
-                                        new BitmapLuminanceSource(
-                                                smallBitmap
-                                        )
-                                )
-                        )
-                );
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-        }
-        return rawResult;
+    /**
+     * 识别图片文件中的 二维码 或者 条形码
+     * <p>按最大边长采样解码，不会把大图完整解码到内存中</p>
+     *
+     * @param filePath 图片路径
+     * @return Result 解析结果，解析识别时返回NULL
+     */
+    public static Result decodeFromPhoto(String filePath) {
+        return SCANNER.get().scan(filePath);
     }
 
     /**
      * 生成二维码图片
+     * <p>相同参数的结果会被缓存，返回的图片被共享，不能修改</p>
      * @param text
      * @param w
      * @param h
@@ -105,70 +62,7 @@ public class QrCodeTool {
      * @return
      */
     public static Bitmap createQRImage(String text, int w, int h, Bitmap logo) {
-        if (TextUtils.isEmpty(text)) {
-            return null;
-        }
-        try {
-            Bitmap scaleLogo = getScaleLogo(logo, w, h);
-            int offsetX = w / 2;
-            int offsetY = h / 2;
-            int scaleWidth = 0;
-            int scaleHeight = 0;
-            scaleWidth = scaleLogo.getWidth();
-            scaleHeight = scaleLogo.getHeight();
-            offsetX = (w - scaleWidth) / 2;
-            offsetY = (h - scaleHeight) / 2;
-            Hashtable<EncodeHintType, Object> hints = new Hashtable<>();
-            hints.put(EncodeHintType.CHARACTER_SET, "utf-8");
-            //容错级别
-            hints.put(EncodeHintType.ERROR_CORRECTION, ErrorCorrectionLevel.H);
-            //设置空白边距的宽度
-            hints.put(EncodeHintType.MARGIN, 0);
-            BitMatrix bitMatrix = new QRCodeWriter().encode(text, BarcodeFormat.QR_CODE, w, h, hints);
-            int[] pixels = new int[w * h];
-            for (int y = 0; y < h; y++) {
-                for (int x = 0; x < w; x++) {
-                    if (x >= offsetX && x < offsetX + scaleWidth && y >= offsetY && y < offsetY + scaleHeight) {
-                        if (scaleLogo != null) {
-                            int pixel = scaleLogo.getPixel(x - offsetX, y - offsetY);
-                            if (pixel == 0) {
-                                if (bitMatrix.get(x, y)) {
-                                    pixel = -0x1000000;
-                                } else {
-                                    pixel = -0x1;
-                                }
-                            }
-                            pixels[y * w + x] = pixel;
-                        }
-                    } else {
-                        if (bitMatrix.get(x, y)) {
-                            pixels[y * w + x] = -0x1000000;
-                        } else {
-                            pixels[y * w + x] = -0x1;
-                        }
-                    }
-                }
-            }
-            Bitmap bitmap = Bitmap.createBitmap(
-                    w, h,
-                    Bitmap.Config.ARGB_8888
-            );
-            bitmap.setPixels(pixels, 0, w, 0, 0, w, h);
-            return bitmap;
-        } catch (WriterException e) {
-            e.printStackTrace();
-        }
-        return null;
-    }
-
-    private static Bitmap getScaleLogo(Bitmap logo, int w, int h) {
-        if (logo == null) {
-            return null;
-        }
-        Matrix matrix = new Matrix();
-        float scaleFactor = Math.min(w * 1.0f / 5 / logo.getWidth(), h * 1.0f / 5 / logo.getHeight());
-        matrix.postScale(scaleFactor, scaleFactor);
-        return Bitmap.createBitmap(logo, 0, 0, logo.getWidth(), logo.getHeight(), matrix, true);
+        return CodeRenderer.get().renderQrCode(text, w, h, logo);
     }
 
     private static BitMatrix deleteWhite(BitMatrix matrix) {
@@ -195,7 +89,7 @@ public class QrCodeTool {
      * @param contents      需要生成的内容
      * @param desiredWidth  生成条形码的宽带
      * @param desiredHeight 生成条形码的高度
-     * @param displayCode   是否在条形码下方显示内容
+     * @param displayCode   是否在条形码下方显示内容，为 false 时返回的是缓存中共享的图片，不能修改
      *
      * @return
      */
@@ -257,39 +151,7 @@ public class QrCodeTool {
             int desiredWidth,
             int desiredHeight
     ) {
-        int WHITE = -0x1;
-        int BLACK = -0x1000000;
-        MultiFormatWriter writer = new MultiFormatWriter();
-        BitMatrix result = null;
-        try {
-            result = writer.encode(
-                    contents, format, desiredWidth,
-                    desiredHeight, null
-            );
-            int width = result.getWidth();
-            int height = result.getHeight();
-            int[] pixels = new int[width * height];
-            // All are 0, or black, by default
-            for (int y = 0; y < height; y++) {
-                int offset = y * width;
-                for (int x = 0; x < width; x++) {
-                    if (result.get(x, y)) {
-                        pixels[offset + x] = BLACK;
-                    } else {
-                        pixels[offset + x] = WHITE;
-                    }
-                }
-            }
-            Bitmap bitmap = Bitmap.createBitmap(
-                    width, height,
-                    Bitmap.Config.ARGB_8888
-            );
-            bitmap.setPixels(pixels, 0, width, 0, 0, width, height);
-            return bitmap;
-        } catch (WriterException e) {
-            e.printStackTrace();
-            return null;
-        }
+        return CodeRenderer.get().renderBarcode(contents, format, desiredWidth, desiredHeight);
     }
 
     /**
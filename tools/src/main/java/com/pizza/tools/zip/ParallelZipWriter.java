@@ -0,0 +1,743 @@
+package com.pizza.tools.zip;
+
+import com.pizza.tools.DataTool;
+import com.pizza.tools.file.FileTool;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import static com.pizza.tools.ConstantsTool.KB;
+import static com.pizza.tools.ConstantsTool.MB;
+
+/**
+ * @Description: 多线程 zip 压缩
+ * <p>
+ * 每个文件在线程池中独立压缩为原始 deflate 数据，结果先写入内存，超过 1MB 的写入临时文件；
+ * 写入线程按添加顺序把各个条目拼接为标准的 zip 文件，CRC 和大小在压缩时已经确定，不需要数据描述符。
+ * 生成的文件与 {@link java.util.zip.ZipOutputStream} 相同级别下的压缩数据一致，
+ * 可以用 {@link java.util.zip.ZipFile} 和 {@link java.util.zip.ZipInputStream} 读取，超过 4GB 时自动使用 Zip64。
+ * </p>
+ * <p>
+ * jpg、png、mp4、zip 等已经压缩过的格式默认直接存储（STORED），压缩后反而更大的文件也改为存储。
+ * 同时在压缩和等待写入的条目不超过线程数的 2 倍，内存占用有上限。
+ * </p>
+ * <pre>
+ * new ParallelZipWriter()
+ *         .setLevel(Deflater.BEST_SPEED)
+ *         .setLevel("log", Deflater.BEST_COMPRESSION)
+ *         .zip(files, zipFile);
+ * </pre>
+ */
+public class ParallelZipWriter {
+
+    /**
+     * 压缩级别：不压缩，直接存储
+     */
+    public static final int STORED = -2;
+
+    /**
+     * 默认直接存储的扩展名
+     */
+    private static final String[] STORED_EXTENSIONS = {
+            "jpg", "jpeg", "png", "gif", "webp", "heic",
+            "mp3", "m4a", "aac", "ogg", "mp4", "m4v", "3gp", "mkv", "webm",
+            "zip", "apk", "jar", "gz", "7z", "rar", "xz"
+    };
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int BUFFER_SIZE = 64 * KB;
+    /**
+     * 单个条目压缩结果超过该大小时写入临时文件
+     */
+    private static final int SPILL_THRESHOLD = MB;
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+    private static final int METHOD_STORED = 0;
+    private static final int METHOD_DEFLATED = 8;
+    private static final int FLAG_UTF8 = 0x0800;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+    private static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+
+    private final Map<String, Integer> extensionLevels = new HashMap<>();
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private int level = Deflater.DEFAULT_COMPRESSION;
+    private String comment;
+    private File tempDir;
+
+    public ParallelZipWriter() {
+        for (String extension : STORED_EXTENSIONS) {
+            extensionLevels.put(extension, STORED);
+        }
+    }
+
+    /**
+     * 设置压缩线程数，默认为 CPU 核心数
+     */
+    public ParallelZipWriter setParallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+        return this;
+    }
+
+    /**
+     * 设置默认压缩级别
+     *
+     * @param level {@link Deflater#DEFAULT_COMPRESSION}、0 - 9 或 {@link #STORED}
+     */
+    public ParallelZipWriter setLevel(int level) {
+        this.level = checkLevel(level);
+        return this;
+    }
+
+    /**
+     * 设置指定扩展名的压缩级别，优先于默认压缩级别
+     *
+     * @param extension 不带点的扩展名，不区分大小写
+     * @param level     {@link Deflater#DEFAULT_COMPRESSION}、0 - 9 或 {@link #STORED}
+     */
+    public ParallelZipWriter setLevel(String extension, int level) {
+        extensionLevels.put(extension.toLowerCase(Locale.US), checkLevel(level));
+        return this;
+    }
+
+    /**
+     * 设置每个条目的注释
+     */
+    public ParallelZipWriter setComment(String comment) {
+        this.comment = comment;
+        return this;
+    }
+
+    /**
+     * 设置临时文件目录，默认为压缩文件所在目录
+     */
+    public ParallelZipWriter setTempDir(File tempDir) {
+        this.tempDir = tempDir;
+        return this;
+    }
+
+    /**
+     * 压缩文件或目录
+     *
+     * @param resFile 待压缩文件或目录
+     * @param zipFile 压缩文件
+     * @return {@code true}: 压缩成功<br>{@code false}: 压缩失败
+     * @throws IOException IO错误时抛出
+     */
+    public boolean zip(File resFile, File zipFile) throws IOException {
+        if (resFile == null) {
+            return false;
+        }
+        List<File> resFiles = new ArrayList<>(1);
+        resFiles.add(resFile);
+        return zip(resFiles, zipFile);
+    }
+
+    /**
+     * 批量压缩文件或目录，条目顺序与串行压缩一致
+     *
+     * @param resFiles 待压缩文件集合
+     * @param zipFile  压缩文件
+     * @return {@code true}: 压缩成功<br>{@code false}: 压缩失败
+     * @throws IOException IO错误时抛出
+     */
+    public boolean zip(Collection<File> resFiles, File zipFile) throws IOException {
+        if (resFiles == null || zipFile == null) {
+            return false;
+        }
+        List<Source> sources = new ArrayList<>();
+        for (File resFile : resFiles) {
+            collect(resFile, "", sources);
+        }
+        File spillDir = tempDir != null ? tempDir : zipFile.getAbsoluteFile().getParentFile();
+        byte[] commentBytes = DataTool.isNullString(comment) ? null : comment.getBytes(UTF_8);
+
+        ConcurrentLinkedQueue<Worker> workers = new ConcurrentLinkedQueue<>();
+        ExecutorService pool = Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "ParallelZipWriter");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        ArrayDeque<Future<Compressed>> pending = new ArrayDeque<>();
+        ZipOutput out = null;
+        try {
+            out = new ZipOutput(new FileOutputStream(zipFile));
+            int window = parallelism * 2;
+            int next = 0;
+            while (next < sources.size() && pending.size() < window) {
+                pending.add(pool.submit(new CompressTask(sources.get(next++), spillDir, workers)));
+            }
+            List<CentralRecord> records = new ArrayList<>(sources.size());
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (!pending.isEmpty()) {
+                Compressed compressed = await(pending.poll());
+                try {
+                    records.add(out.writeEntry(compressed, commentBytes, buffer));
+                } finally {
+                    compressed.release();
+                }
+                if (next < sources.size()) {
+                    pending.add(pool.submit(new CompressTask(sources.get(next++), spillDir, workers)));
+                }
+            }
+            out.writeCentralDirectory(records);
+            out.flush();
+            return true;
+        } finally {
+            FileTool.get().getFileOperatorUtil().closeIo(out);
+            pool.shutdownNow();
+            if (!pending.isEmpty()) {
+                discard(pool, pending);
+            }
+            for (Worker worker : workers) {
+                worker.deflater.end();
+            }
+        }
+    }
+
+    /**
+     * 与 ZipTool 的串行压缩相同：目录本身不产生条目，只有空目录产生以 / 结尾的条目
+     */
+    private static void collect(File file, String rootPath, List<Source> sources) throws IOException {
+        String name = rootPath + (DataTool.isNullString(rootPath) ? "" : "/") + file.getName();
+        if (file.isDirectory()) {
+            File[] fileList = file.listFiles();
+            if (fileList == null) {
+                throw new IOException("Cannot list directory: " + file);
+            }
+            if (fileList.length == 0) {
+                sources.add(new Source(null, name + '/', file.lastModified()));
+            } else {
+                for (File child : fileList) {
+                    collect(child, name, sources);
+                }
+            }
+        } else {
+            sources.add(new Source(file, name, file.lastModified()));
+        }
+    }
+
+    private int levelOf(Source source) {
+        String name = source.file.getName();
+        int dot = name.lastIndexOf('.');
+        if (dot >= 0) {
+            Integer extensionLevel = extensionLevels.get(name.substring(dot + 1).toLowerCase(Locale.US));
+            if (extensionLevel != null) {
+                return extensionLevel;
+            }
+        }
+        return level;
+    }
+
+    private static int checkLevel(int level) {
+        if (level != STORED && level != Deflater.DEFAULT_COMPRESSION
+                && (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION)) {
+            throw new IllegalArgumentException("Invalid compression level: " + level);
+        }
+        return level;
+    }
+
+    private static Compressed await(Future<Compressed> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * 出错时等待仍在执行的任务结束，删除已经生成的临时文件
+     */
+    private static void discard(ExecutorService pool, ArrayDeque<Future<Compressed>> pending) {
+        try {
+            pool.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Future<Compressed> future : pending) {
+            if (future.isDone() && !future.isCancelled()) {
+                try {
+                    future.get().release();
+                } catch (Exception ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * 待压缩的条目，file 为 null 时表示空目录
+     */
+    private static final class Source {
+        final File file;
+        final String name;
+        final long time;
+
+        Source(File file, String name, long time) {
+            this.file = file;
+            this.name = name;
+            this.time = time;
+        }
+    }
+
+    /**
+     * 压缩线程复用的 Deflater 和缓冲
+     */
+    private static final class Worker {
+        final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        final CRC32 crc = new CRC32();
+        final byte[] input = new byte[BUFFER_SIZE];
+        final byte[] output = new byte[BUFFER_SIZE];
+    }
+
+    /**
+     * 压缩结果；method 为 STORED 时不保存数据，写入时直接从源文件拷贝
+     */
+    private static final class Compressed {
+        final Source source;
+        final int method;
+        final long crc;
+        final long size;
+        final long compressedSize;
+        final SpillBuffer data;
+
+        Compressed(Source source, int method, long crc, long size, long compressedSize, SpillBuffer data) {
+            this.source = source;
+            this.method = method;
+            this.crc = crc;
+            this.size = size;
+            this.compressedSize = compressedSize;
+            this.data = data;
+        }
+
+        void release() {
+            if (data != null) {
+                data.delete();
+            }
+        }
+    }
+
+    private final class CompressTask implements Callable<Compressed> {
+        private final Source source;
+        private final File spillDir;
+        private final ConcurrentLinkedQueue<Worker> workers;
+
+        CompressTask(Source source, File spillDir, ConcurrentLinkedQueue<Worker> workers) {
+            this.source = source;
+            this.spillDir = spillDir;
+            this.workers = workers;
+        }
+
+        @Override
+        public Compressed call() throws IOException {
+            if (source.file == null) {
+                return new Compressed(source, METHOD_STORED, 0, 0, 0, null);
+            }
+            int entryLevel = levelOf(source);
+            Worker worker = workers.poll();
+            if (worker == null) {
+                worker = new Worker();
+            }
+            InputStream in = null;
+            SpillBuffer data = null;
+            try {
+                in = new FileInputStream(source.file);
+                CRC32 crc = worker.crc;
+                crc.reset();
+                long size = 0;
+                int len;
+                if (entryLevel == STORED) {
+                    while ((len = read(in, worker.input)) != -1) {
+                        crc.update(worker.input, 0, len);
+                        size += len;
+                    }
+                    return new Compressed(source, METHOD_STORED, crc.getValue(), size, size, null);
+                }
+                Deflater deflater = worker.deflater;
+                deflater.reset();
+                deflater.setLevel(entryLevel);
+                data = new SpillBuffer(spillDir);
+                while ((len = read(in, worker.input)) != -1) {
+                    crc.update(worker.input, 0, len);
+                    size += len;
+                    deflater.setInput(worker.input, 0, len);
+                    while (!deflater.needsInput()) {
+                        data.write(worker.output, 0, deflater.deflate(worker.output));
+                    }
+                }
+                deflater.finish();
+                while (!deflater.finished()) {
+                    data.write(worker.output, 0, deflater.deflate(worker.output));
+                }
+                data.close();
+                if (data.size() >= size) {
+                    // 压缩后没有变小，改为直接存储
+                    data.delete();
+                    return new Compressed(source, METHOD_STORED, crc.getValue(), size, size, null);
+                }
+                Compressed compressed = new Compressed(source, METHOD_DEFLATED, crc.getValue(), size, data.size(), data);
+                data = null;
+                return compressed;
+            } finally {
+                FileTool.get().getFileOperatorUtil().closeIo(in);
+                if (data != null) {
+                    data.delete();
+                }
+                workers.add(worker);
+            }
+        }
+    }
+
+    private static int read(InputStream in, byte[] buffer) throws IOException {
+        if (Thread.interrupted()) {
+            throw new InterruptedIOException();
+        }
+        return in.read(buffer);
+    }
+
+    /**
+     * 先写入内存，超过 {@link #SPILL_THRESHOLD} 后转存到临时文件
+     */
+    private static final class SpillBuffer extends OutputStream {
+        private final File dir;
+        private ByteArrayOutputStream memory = new ByteArrayOutputStream(4 * KB);
+        private File file;
+        private OutputStream fileOut;
+        private long size;
+
+        SpillBuffer(File dir) {
+            this.dir = dir;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return;
+            }
+            if (fileOut == null && size + len > SPILL_THRESHOLD) {
+                file = File.createTempFile("zip", ".part", dir);
+                fileOut = new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE);
+                memory.writeTo(fileOut);
+                memory = null;
+            }
+            if (fileOut != null) {
+                fileOut.write(b, off, len);
+            } else {
+                memory.write(b, off, len);
+            }
+            size += len;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (fileOut != null) {
+                fileOut.close();
+            }
+        }
+
+        long size() {
+            return size;
+        }
+
+        void writeTo(OutputStream out, byte[] buffer) throws IOException {
+            if (file == null) {
+                memory.writeTo(out);
+                return;
+            }
+            InputStream in = new FileInputStream(file);
+            try {
+                int len;
+                while ((len = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, len);
+                }
+            } finally {
+                FileTool.get().getFileOperatorUtil().closeIo(in);
+            }
+        }
+
+        void delete() {
+            memory = null;
+            if (file != null) {
+                FileTool.get().getFileOperatorUtil().closeIo(fileOut);
+                file.delete();
+                file = null;
+            }
+        }
+    }
+
+    /**
+     * 中央目录中的一条记录
+     */
+    private static final class CentralRecord {
+        final byte[] name;
+        final byte[] comment;
+        final int flags;
+        final int method;
+        final int dosTime;
+        final long crc;
+        final long size;
+        final long compressedSize;
+        final long offset;
+
+        CentralRecord(byte[] name, byte[] comment, int flags, int method, int dosTime, long crc, long size,
+                      long compressedSize, long offset) {
+            this.name = name;
+            this.comment = comment;
+            this.flags = flags;
+            this.method = method;
+            this.dosTime = dosTime;
+            this.crc = crc;
+            this.size = size;
+            this.compressedSize = compressedSize;
+            this.offset = offset;
+        }
+    }
+
+    /**
+     * 按 zip 格式写入并记录当前偏移
+     */
+    private static final class ZipOutput extends OutputStream {
+        private final OutputStream out;
+        private final byte[] scratch = new byte[8];
+        private final Calendar calendar = Calendar.getInstance();
+        private long written;
+
+        ZipOutput(OutputStream out) {
+            this.out = new BufferedOutputStream(out, BUFFER_SIZE);
+        }
+
+        /**
+         * 写入本地文件头和数据，注释只写在中央目录中
+         */
+        CentralRecord writeEntry(Compressed entry, byte[] comment, byte[] buffer) throws IOException {
+            Source source = entry.source;
+            byte[] name = source.name.getBytes(UTF_8);
+            // 文件名和注释都按 UTF-8 写入，与 ZipOutputStream 一致始终设置 UTF-8 标志
+            int flags = FLAG_UTF8;
+            int dosTime = toDosTime(source.time);
+            long offset = written;
+            boolean zip64 = entry.size >= ZIP64_MAGIC || entry.compressedSize >= ZIP64_MAGIC;
+
+            writeInt(LOCAL_HEADER_SIGNATURE);
+            writeShort(zip64 ? 45 : versionOf(entry.method));
+            writeShort(flags);
+            writeShort(entry.method);
+            writeInt(dosTime);
+            writeInt(entry.crc);
+            writeInt(zip64 ? ZIP64_MAGIC : entry.compressedSize);
+            writeInt(zip64 ? ZIP64_MAGIC : entry.size);
+            writeShort(name.length);
+            writeShort(zip64 ? 20 : 0);
+            write(name, 0, name.length);
+            if (zip64) {
+                writeShort(ZIP64_EXTRA_ID);
+                writeShort(16);
+                writeLong(entry.size);
+                writeLong(entry.compressedSize);
+            }
+
+            if (entry.data != null) {
+                entry.data.writeTo(this, buffer);
+            } else if (source.file != null) {
+                copyStored(entry, buffer);
+            }
+            return new CentralRecord(name, comment, flags, entry.method, dosTime, entry.crc, entry.size,
+                    entry.compressedSize, offset);
+        }
+
+        /**
+         * 直接拷贝源文件，重新计算 CRC 以发现压缩过程中被修改的文件
+         */
+        private void copyStored(Compressed entry, byte[] buffer) throws IOException {
+            InputStream in = new FileInputStream(entry.source.file);
+            try {
+                CRC32 crc = new CRC32();
+                long remaining = entry.size;
+                int len;
+                while (remaining > 0 && (len = in.read(buffer, 0, (int) Math.min(buffer.length, remaining))) != -1) {
+                    crc.update(buffer, 0, len);
+                    write(buffer, 0, len);
+                    remaining -= len;
+                }
+                if (remaining != 0 || in.read() != -1 || crc.getValue() != entry.crc) {
+                    throw new IOException("File changed while zipping: " + entry.source.file);
+                }
+            } finally {
+                FileTool.get().getFileOperatorUtil().closeIo(in);
+            }
+        }
+
+        void writeCentralDirectory(List<CentralRecord> records) throws IOException {
+            long start = written;
+            for (CentralRecord record : records) {
+                boolean sizes64 = record.size >= ZIP64_MAGIC || record.compressedSize >= ZIP64_MAGIC;
+                boolean offset64 = record.offset >= ZIP64_MAGIC;
+                int extraLength = (sizes64 ? 16 : 0) + (offset64 ? 8 : 0);
+                int version = extraLength > 0 ? 45 : versionOf(record.method);
+                writeInt(CENTRAL_HEADER_SIGNATURE);
+                writeShort(version);
+                writeShort(version);
+                writeShort(record.flags);
+                writeShort(record.method);
+                writeInt(record.dosTime);
+                writeInt(record.crc);
+                writeInt(sizes64 ? ZIP64_MAGIC : record.compressedSize);
+                writeInt(sizes64 ? ZIP64_MAGIC : record.size);
+                writeShort(record.name.length);
+                writeShort(extraLength > 0 ? extraLength + 4 : 0);
+                writeShort(record.comment == null ? 0 : record.comment.length);
+                // 磁盘号、内部属性、外部属性
+                writeShort(0);
+                writeShort(0);
+                writeInt(0);
+                writeInt(offset64 ? ZIP64_MAGIC : record.offset);
+                write(record.name, 0, record.name.length);
+                if (extraLength > 0) {
+                    writeShort(ZIP64_EXTRA_ID);
+                    writeShort(extraLength);
+                    if (sizes64) {
+                        writeLong(record.size);
+                        writeLong(record.compressedSize);
+                    }
+                    if (offset64) {
+                        writeLong(record.offset);
+                    }
+                }
+                if (record.comment != null) {
+                    write(record.comment, 0, record.comment.length);
+                }
+            }
+            long length = written - start;
+            int count = records.size();
+            if (count >= ZIP64_MAGIC_COUNT || length >= ZIP64_MAGIC || start >= ZIP64_MAGIC) {
+                long zip64End = written;
+                writeInt(ZIP64_END_SIGNATURE);
+                writeLong(44);
+                writeShort(45);
+                writeShort(45);
+                writeInt(0);
+                writeInt(0);
+                writeLong(count);
+                writeLong(count);
+                writeLong(length);
+                writeLong(start);
+                writeInt(ZIP64_LOCATOR_SIGNATURE);
+                writeInt(0);
+                writeLong(zip64End);
+                writeInt(1);
+            }
+            writeInt(END_SIGNATURE);
+            writeShort(0);
+            writeShort(0);
+            writeShort(Math.min(count, ZIP64_MAGIC_COUNT));
+            writeShort(Math.min(count, ZIP64_MAGIC_COUNT));
+            writeInt(Math.min(length, ZIP64_MAGIC));
+            writeInt(Math.min(start, ZIP64_MAGIC));
+            writeShort(0);
+        }
+
+        private int versionOf(int method) {
+            return method == METHOD_DEFLATED ? 20 : 10;
+        }
+
+        private int toDosTime(long time) {
+            calendar.setTimeInMillis(time);
+            int year = calendar.get(Calendar.YEAR);
+            if (year < 1980) {
+                return (1 << 21) | (1 << 16);
+            }
+            return (year - 1980) << 25 | (calendar.get(Calendar.MONTH) + 1) << 21
+                    | calendar.get(Calendar.DAY_OF_MONTH) << 16 | calendar.get(Calendar.HOUR_OF_DAY) << 11
+                    | calendar.get(Calendar.MINUTE) << 5 | calendar.get(Calendar.SECOND) >> 1;
+        }
+
+        private void writeShort(int v) throws IOException {
+            scratch[0] = (byte) v;
+            scratch[1] = (byte) (v >>> 8);
+            write(scratch, 0, 2);
+        }
+
+        private void writeInt(long v) throws IOException {
+            scratch[0] = (byte) v;
+            scratch[1] = (byte) (v >>> 8);
+            scratch[2] = (byte) (v >>> 16);
+            scratch[3] = (byte) (v >>> 24);
+            write(scratch, 0, 4);
+        }
+
+        private void writeLong(long v) throws IOException {
+            for (int i = 0; i < 8; i++) {
+                scratch[i] = (byte) (v >>> (i * 8));
+            }
+            write(scratch, 0, 8);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            written++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            written += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
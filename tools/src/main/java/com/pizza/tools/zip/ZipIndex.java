@@ -0,0 +1,700 @@
+package com.pizza.tools.zip;
+
+import com.pizza.tools.DataTool;
+import com.pizza.tools.file.FileTool;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+import static com.pizza.tools.ConstantsTool.KB;
+
+/**
+ * @Description: zip 文件的中央目录索引
+ * <p>
+ * 打开时只把中央目录映射到内存并解析一次，得到按名称排序的条目表，之后的查询不再遍历整个压缩文件：
+ * 按名称和前缀查询使用二分查找，通配符查询先用通配符前的固定前缀缩小范围。
+ * 读取单个条目时按偏移直接定位到数据，不会读取其他条目，适合反复从很大的资源包中读取少量小文件。
+ * 索引可以在多个线程中同时使用，用完后调用 {@link #close()}。
+ * </p>
+ * <pre>
+ * ZipIndex index = new ZipIndex(bundle);
+ * byte[] config = index.readBytes(index.find("assets/config.json"));
+ * List&lt;ZipIndex.Entry&gt; icons = index.findByGlob("assets/icons/*.png");
+ * </pre>
+ */
+public class ZipIndex implements Closeable {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int BUFFER_SIZE = 64 * KB;
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int END_SIZE = 22;
+    private static final int ZIP64_LOCATOR_SIZE = 20;
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+    private static final int FLAG_ENCRYPTED = 0x0001;
+
+    private static final Comparator<Entry> NAME_ORDER = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry a, Entry b) {
+            return a.name.compareTo(b.name);
+        }
+    };
+
+    private final File file;
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final MappedByteBuffer directory;
+    /**
+     * 压缩文件中的原始顺序
+     */
+    private final Entry[] entries;
+    /**
+     * 按名称排序
+     */
+    private final Entry[] sorted;
+    private final String[] sortedNames;
+    private volatile String[] lowerCaseFileNames;
+
+    /**
+     * 打开并索引压缩文件
+     *
+     * @param file 压缩文件
+     * @throws IOException 文件不是有效的 zip 文件或读取失败
+     */
+    public ZipIndex(File file) throws IOException {
+        this.file = file;
+        this.raf = new RandomAccessFile(file, "r");
+        boolean success = false;
+        try {
+            this.channel = raf.getChannel();
+            long[] location = locateDirectory();
+            if (location[1] > Integer.MAX_VALUE) {
+                throw new ZipException("Central directory too large: " + file);
+            }
+            this.directory = channel.map(FileChannel.MapMode.READ_ONLY, location[0], location[1]);
+            directory.order(ByteOrder.LITTLE_ENDIAN);
+            this.entries = readEntries((int) Math.min(location[2], Integer.MAX_VALUE));
+            this.sorted = entries.clone();
+            Arrays.sort(sorted, NAME_ORDER);
+            this.sortedNames = new String[sorted.length];
+            for (int i = 0; i < sorted.length; i++) {
+                sortedNames[i] = sorted[i].name;
+            }
+            success = true;
+        } finally {
+            if (!success) {
+                FileTool.get().getFileOperatorUtil().closeIo(raf);
+            }
+        }
+    }
+
+    /**
+     * @return 压缩文件
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return 条目数
+     */
+    public int size() {
+        return entries.length;
+    }
+
+    /**
+     * @return 全部条目，按压缩文件中的顺序
+     */
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(Arrays.asList(entries));
+    }
+
+    /**
+     * 按完整名称查找
+     *
+     * @param name 条目名称，目录以 / 结尾
+     * @return 条目，不存在时返回 null
+     */
+    public Entry find(String name) {
+        int index = Arrays.binarySearch(sortedNames, name);
+        return index >= 0 ? sorted[index] : null;
+    }
+
+    /**
+     * 查找名称以 prefix 开头的条目，如 "assets/icons/"
+     *
+     * @return 按名称排序的条目
+     */
+    public List<Entry> findByPrefix(String prefix) {
+        List<Entry> result = new ArrayList<>();
+        for (int i = lowerBound(prefix); i < sortedNames.length && sortedNames[i].startsWith(prefix); i++) {
+            result.add(sorted[i]);
+        }
+        return result;
+    }
+
+    /**
+     * 按通配符查找：* 匹配除 / 以外的任意字符，** 匹配包括 / 在内的任意字符，? 匹配除 / 以外的单个字符
+     *
+     * @param glob 如 "assets/**&#47;*.png"
+     * @return 按名称排序的条目
+     */
+    public List<Entry> findByGlob(String glob) {
+        int wildcard = indexOfWildcard(glob);
+        if (wildcard < 0) {
+            List<Entry> result = new ArrayList<>(1);
+            Entry entry = find(glob);
+            if (entry != null) {
+                result.add(entry);
+            }
+            return result;
+        }
+        String prefix = glob.substring(0, wildcard);
+        Pattern pattern = Pattern.compile(globToRegex(glob));
+        List<Entry> result = new ArrayList<>();
+        for (int i = lowerBound(prefix); i < sortedNames.length && sortedNames[i].startsWith(prefix); i++) {
+            if (pattern.matcher(sortedNames[i]).matches()) {
+                result.add(sorted[i]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 查找文件名（不含目录）包含关键字的条目，不区分大小写，目录条目不会匹配
+     *
+     * @param keyword 关键字，为空时返回全部条目
+     * @return 按压缩文件中的顺序
+     */
+    public List<Entry> findByKeyword(String keyword) {
+        if (DataTool.isNullString(keyword)) {
+            return new ArrayList<>(Arrays.asList(entries));
+        }
+        String lowerKeyword = keyword.toLowerCase(Locale.getDefault());
+        String[] fileNames = lowerCaseFileNames();
+        List<Entry> result = new ArrayList<>();
+        for (int i = 0; i < entries.length; i++) {
+            if (fileNames[i].contains(lowerKeyword)) {
+                result.add(entries[i]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 打开条目的输入流，只读取该条目的数据
+     *
+     * @param entry 条目
+     * @return 解压后的数据流，需要关闭
+     * @throws IOException 读取失败、条目已加密或不支持的压缩方式
+     */
+    public InputStream open(Entry entry) throws IOException {
+        if (entry.isEncrypted()) {
+            throw new ZipException("Encrypted entry is not supported: " + entry.name);
+        }
+        long dataOffset = dataOffset(entry);
+        if (entry.method == ZipEntry.STORED) {
+            return new ChannelInputStream(channel, dataOffset, entry.compressedSize, false);
+        }
+        if (entry.method == ZipEntry.DEFLATED) {
+            int bufferSize = (int) Math.max(512, Math.min(BUFFER_SIZE, entry.compressedSize + 1));
+            return new EntryInflaterInputStream(
+                    new ChannelInputStream(channel, dataOffset, entry.compressedSize, true), bufferSize);
+        }
+        throw new ZipException("Unsupported compression method " + entry.method + ": " + entry.name);
+    }
+
+    /**
+     * 读取条目的全部数据，并校验 CRC
+     *
+     * @param entry 条目，大小不能超过 2GB
+     * @return 解压后的数据
+     * @throws IOException 读取失败或校验失败
+     */
+    public byte[] readBytes(Entry entry) throws IOException {
+        if (entry.size > Integer.MAX_VALUE) {
+            throw new ZipException("Entry too large: " + entry.name);
+        }
+        InputStream in = open(entry);
+        byte[] data;
+        try {
+            data = new byte[(int) entry.size];
+            int offset = 0;
+            int len;
+            while (offset < data.length && (len = in.read(data, offset, data.length - offset)) != -1) {
+                offset += len;
+            }
+            if (offset != data.length) {
+                throw new ZipException("Unexpected end of entry: " + entry.name);
+            }
+        } finally {
+            FileTool.get().getFileOperatorUtil().closeIo(in);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        checkCrc(entry, crc);
+        return data;
+    }
+
+    /**
+     * 解压单个条目到指定文件，并校验 CRC
+     *
+     * @param entry 条目
+     * @param dest  目标文件，所在目录需要已经存在
+     * @throws IOException 读取、写入失败或校验失败
+     */
+    public void extract(Entry entry, File dest) throws IOException {
+        InputStream in = null;
+        OutputStream out = null;
+        try {
+            in = open(entry);
+            out = new BufferedOutputStream(new FileOutputStream(dest), BUFFER_SIZE);
+            CRC32 crc = new CRC32();
+            byte[] buffer = new byte[(int) Math.max(1, Math.min(BUFFER_SIZE, entry.size))];
+            int len;
+            while ((len = in.read(buffer)) != -1) {
+                crc.update(buffer, 0, len);
+                out.write(buffer, 0, len);
+            }
+            out.flush();
+            checkCrc(entry, crc);
+        } finally {
+            FileTool.get().getFileOperatorUtil().closeIo(in, out);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        raf.close();
+    }
+
+    /**
+     * 从文件末尾找到中央目录
+     *
+     * @return 中央目录的 偏移、长度、条目数
+     */
+    private long[] locateDirectory() throws IOException {
+        long length = channel.size();
+        if (length < END_SIZE) {
+            throw new ZipException("Not a zip file: " + file);
+        }
+        int tailSize = (int) Math.min(length, END_SIZE + MAX_COMMENT_SIZE + ZIP64_LOCATOR_SIZE);
+        ByteBuffer tail = read(length - tailSize, tailSize);
+        for (int i = tailSize - END_SIZE; i >= 0; i--) {
+            if (tail.getInt(i) != END_SIGNATURE || i + END_SIZE + (tail.getShort(i + 20) & 0xFFFF) > tailSize) {
+                continue;
+            }
+            long count = tail.getShort(i + 10) & 0xFFFF;
+            long size = tail.getInt(i + 12) & ZIP64_MAGIC;
+            long offset = tail.getInt(i + 16) & ZIP64_MAGIC;
+            int locator = i - ZIP64_LOCATOR_SIZE;
+            if (locator >= 0 && tail.getInt(locator) == ZIP64_LOCATOR_SIGNATURE) {
+                ByteBuffer zip64End = read(tail.getLong(locator + 8), 56);
+                if (zip64End.getInt(0) != ZIP64_END_SIGNATURE) {
+                    throw new ZipException("Invalid zip64 end of central directory: " + file);
+                }
+                count = zip64End.getLong(32);
+                size = zip64End.getLong(40);
+                offset = zip64End.getLong(48);
+            }
+            if (offset + size > length) {
+                throw new ZipException("Invalid central directory: " + file);
+            }
+            return new long[]{offset, size, count};
+        }
+        throw new ZipException("End of central directory not found: " + file);
+    }
+
+    private Entry[] readEntries(int count) throws IOException {
+        ByteBuffer dir = directory;
+        int position = 0;
+        int limit = dir.limit();
+        // 条目数来自文件，按中央目录能容纳的最大条目数限制初始容量
+        List<Entry> list = new ArrayList<>(Math.min(count, limit / CENTRAL_HEADER_SIZE));
+        while (position + CENTRAL_HEADER_SIZE <= limit) {
+            if (dir.getInt(position) != CENTRAL_HEADER_SIGNATURE) {
+                throw new ZipException("Invalid central directory header at " + position + ": " + file);
+            }
+            int flags = dir.getShort(position + 8) & 0xFFFF;
+            int method = dir.getShort(position + 10) & 0xFFFF;
+            int dosTime = dir.getInt(position + 12);
+            long crc = dir.getInt(position + 16) & ZIP64_MAGIC;
+            long compressedSize = dir.getInt(position + 20) & ZIP64_MAGIC;
+            long size = dir.getInt(position + 24) & ZIP64_MAGIC;
+            int nameLength = dir.getShort(position + 28) & 0xFFFF;
+            int extraLength = dir.getShort(position + 30) & 0xFFFF;
+            int commentLength = dir.getShort(position + 32) & 0xFFFF;
+            long offset = dir.getInt(position + 42) & ZIP64_MAGIC;
+            int nameStart = position + CENTRAL_HEADER_SIZE;
+            int extraStart = nameStart + nameLength;
+            int commentStart = extraStart + extraLength;
+            int next = commentStart + commentLength;
+            if (next > limit) {
+                throw new ZipException("Truncated central directory: " + file);
+            }
+            if (size == ZIP64_MAGIC || compressedSize == ZIP64_MAGIC || offset == ZIP64_MAGIC) {
+                // Zip64 扩展字段按 原始大小、压缩后大小、偏移 的顺序，只包含被置为 0xFFFFFFFF 的字段
+                int extra = findExtra(dir, extraStart, extraLength, ZIP64_EXTRA_ID);
+                if (extra >= 0) {
+                    if (size == ZIP64_MAGIC) {
+                        size = dir.getLong(extra);
+                        extra += 8;
+                    }
+                    if (compressedSize == ZIP64_MAGIC) {
+                        compressedSize = dir.getLong(extra);
+                        extra += 8;
+                    }
+                    if (offset == ZIP64_MAGIC) {
+                        offset = dir.getLong(extra);
+                    }
+                }
+            }
+            String name = decode(dir, nameStart, nameLength);
+            list.add(new Entry(this, name, flags, method, dosTime, crc, compressedSize, size, offset,
+                    commentLength == 0 ? -1 : commentStart, commentLength));
+            position = next;
+        }
+        return list.toArray(new Entry[list.size()]);
+    }
+
+    /**
+     * @return 扩展字段数据的起始位置，不存在时返回 -1
+     */
+    private static int findExtra(ByteBuffer dir, int start, int length, int id) {
+        int position = start;
+        int end = start + length;
+        while (position + 4 <= end) {
+            int headerId = dir.getShort(position) & 0xFFFF;
+            int size = dir.getShort(position + 2) & 0xFFFF;
+            if (headerId == id) {
+                return position + 4;
+            }
+            position += 4 + size;
+        }
+        return -1;
+    }
+
+    private static String decode(ByteBuffer dir, int start, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = dir.get(start + i);
+        }
+        return new String(bytes, UTF_8);
+    }
+
+    private long dataOffset(Entry entry) throws IOException {
+        long dataOffset = entry.dataOffset;
+        if (dataOffset >= 0) {
+            return dataOffset;
+        }
+        // 本地文件头中的扩展字段长度可能与中央目录中不同，需要读取本地文件头
+        ByteBuffer header = read(entry.offset, LOCAL_HEADER_SIZE);
+        if (header.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+            throw new ZipException("Invalid local header: " + entry.name);
+        }
+        dataOffset = entry.offset + LOCAL_HEADER_SIZE
+                + (header.getShort(26) & 0xFFFF) + (header.getShort(28) & 0xFFFF);
+        if (dataOffset + entry.compressedSize > channel.size()) {
+            throw new ZipException("Truncated entry: " + entry.name);
+        }
+        entry.dataOffset = dataOffset;
+        return dataOffset;
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new ZipException("Unexpected end of file: " + file);
+            }
+        }
+        return buffer;
+    }
+
+    private int lowerBound(String prefix) {
+        int index = Arrays.binarySearch(sortedNames, prefix);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    private String[] lowerCaseFileNames() {
+        String[] names = lowerCaseFileNames;
+        if (names == null) {
+            names = new String[entries.length];
+            for (int i = 0; i < entries.length; i++) {
+                String name = entries[i].name;
+                names[i] = name.substring(name.lastIndexOf('/') + 1).toLowerCase(Locale.getDefault());
+            }
+            lowerCaseFileNames = names;
+        }
+        return names;
+    }
+
+    private static int indexOfWildcard(String glob) {
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '*' || c == '?') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String globToRegex(String glob) {
+        StringBuilder regex = new StringBuilder(glob.length() + 16);
+        int literalStart = 0;
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c != '*' && c != '?') {
+                continue;
+            }
+            if (i > literalStart) {
+                regex.append(Pattern.quote(glob.substring(literalStart, i)));
+            }
+            if (c == '?') {
+                regex.append("[^/]");
+            } else if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                regex.append(".*");
+                i++;
+            } else {
+                regex.append("[^/]*");
+            }
+            literalStart = i + 1;
+        }
+        if (literalStart < glob.length()) {
+            regex.append(Pattern.quote(glob.substring(literalStart)));
+        }
+        return regex.toString();
+    }
+
+    private static void checkCrc(Entry entry, CRC32 crc) throws ZipException {
+        if (crc.getValue() != entry.crc) {
+            throw new ZipException("CRC mismatch: " + entry.name);
+        }
+    }
+
+    /**
+     * 索引中的一个条目
+     */
+    public static final class Entry {
+        private final ZipIndex index;
+        private final String name;
+        private final int flags;
+        private final int method;
+        private final int dosTime;
+        private final long crc;
+        private final long compressedSize;
+        private final long size;
+        private final long offset;
+        private final int commentStart;
+        private final int commentLength;
+        private volatile long dataOffset = -1;
+
+        Entry(ZipIndex index, String name, int flags, int method, int dosTime, long crc,
+              long compressedSize, long size, long offset, int commentStart, int commentLength) {
+            this.index = index;
+            this.name = name;
+            this.flags = flags;
+            this.method = method;
+            this.dosTime = dosTime;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.offset = offset;
+            this.commentStart = commentStart;
+            this.commentLength = commentLength;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isDirectory() {
+            return name.endsWith("/");
+        }
+
+        /**
+         * @return 中央目录中记录的压缩方式，只有 {@link ZipEntry#STORED} 和 {@link ZipEntry#DEFLATED} 可以读取
+         */
+        public int getMethod() {
+            return method;
+        }
+
+        /**
+         * @return 中央目录中记录的通用标志位
+         */
+        public int getFlags() {
+            return flags;
+        }
+
+        /**
+         * @return 是否已加密，加密的条目不能读取
+         */
+        public boolean isEncrypted() {
+            return (flags & FLAG_ENCRYPTED) != 0;
+        }
+
+        public long getCrc() {
+            return crc;
+        }
+
+        public long getCompressedSize() {
+            return compressedSize;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * @return 本地文件头在压缩文件中的偏移
+         */
+        public long getOffset() {
+            return offset;
+        }
+
+        /**
+         * @return 修改时间（毫秒）
+         */
+        public long getTime() {
+            Calendar calendar = Calendar.getInstance();
+            calendar.clear();
+            calendar.set(((dosTime >> 25) & 0x7f) + 1980, ((dosTime >> 21) & 0x0f) - 1, (dosTime >> 16) & 0x1f,
+                    (dosTime >> 11) & 0x1f, (dosTime >> 5) & 0x3f, (dosTime << 1) & 0x3e);
+            return calendar.getTimeInMillis();
+        }
+
+        /**
+         * @return 注释，没有时返回 null
+         */
+        public String getComment() {
+            return commentStart < 0 ? null : decode(index.directory, commentStart, commentLength);
+        }
+
+        /**
+         * 转换为 {@link ZipEntry}，用于兼容使用 ZipEntry 的代码。
+         * ZipEntry 只接受 STORED 和 DEFLATED，其他压缩方式不设置，原始值通过 {@link #getMethod()} 获取
+         */
+        public ZipEntry toZipEntry() {
+            ZipEntry entry = new ZipEntry(name);
+            if (method == ZipEntry.STORED || method == ZipEntry.DEFLATED) {
+                entry.setMethod(method);
+            }
+            entry.setTime(getTime());
+            entry.setCrc(crc);
+            entry.setSize(size);
+            entry.setCompressedSize(compressedSize);
+            entry.setComment(getComment());
+            return entry;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    /**
+     * 按绝对位置读取文件的一段，多个流可以同时读取同一个 FileChannel
+     */
+    private static final class ChannelInputStream extends InputStream {
+        private final FileChannel channel;
+        private long position;
+        private long remaining;
+        /**
+         * nowrap 模式的 Inflater 需要在数据末尾额外补一个字节
+         */
+        private boolean padding;
+
+        ChannelInputStream(FileChannel channel, long position, long length, boolean padding) {
+            this.channel = channel;
+            this.position = position;
+            this.remaining = length;
+            this.padding = padding;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (remaining <= 0) {
+                if (padding) {
+                    padding = false;
+                    b[off] = 0;
+                    return 1;
+                }
+                return -1;
+            }
+            int n = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, remaining)), position);
+            if (n < 0) {
+                throw new ZipException("Unexpected end of file");
+            }
+            position += n;
+            remaining -= n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, remaining);
+        }
+    }
+
+    /**
+     * 关闭时释放 Inflater 的本地内存
+     */
+    private static final class EntryInflaterInputStream extends InflaterInputStream {
+        private boolean closed;
+
+        EntryInflaterInputStream(InputStream in, int size) {
+            super(in, new Inflater(true), size);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                inf.end();
+                super.close();
+            }
+        }
+    }
+}
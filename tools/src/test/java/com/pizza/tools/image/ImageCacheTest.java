@@ -0,0 +1,168 @@
+package com.pizza.tools.image;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 使用本地 HTTP 服务验证 {@link ImageCache} 的下载和磁盘缓存
+ */
+public class ImageCacheTest {
+
+    private static final byte[] IMAGE = new byte[64 * 1024];
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private HttpServer server;
+    private String baseUrl;
+    private final AtomicInteger imageHits = new AtomicInteger();
+    private final AtomicInteger missingHits = new AtomicInteger();
+    private final CountDownLatch slowRelease = new CountDownLatch(1);
+    private ImageCache cache;
+
+    @Before
+    public void setUp() throws IOException {
+        for (int i = 0; i < IMAGE.length; i++) {
+            IMAGE[i] = (byte) i;
+        }
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/image.png", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                imageHits.incrementAndGet();
+                respond(exchange, 200, IMAGE);
+            }
+        });
+        server.createContext("/slow.png", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                imageHits.incrementAndGet();
+                try {
+                    slowRelease.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                respond(exchange, 200, IMAGE);
+            }
+        });
+        server.createContext("/missing.png", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                missingHits.incrementAndGet();
+                respond(exchange, 404, new byte[0]);
+            }
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+        cache = new ImageCache(1024 * 1024, folder.newFolder("cache"), 1024 * 1024);
+    }
+
+    @After
+    public void tearDown() {
+        slowRelease.countDown();
+        server.stop(0);
+    }
+
+    @Test
+    public void prefetchDownloadsOnce() {
+        assertTrue(cache.prefetch(baseUrl + "/image.png"));
+        assertTrue(cache.prefetch(baseUrl + "/image.png"));
+        assertEquals(1, imageHits.get());
+    }
+
+    @Test
+    public void failedResponseIsNotCached() {
+        assertFalse(cache.prefetch(baseUrl + "/missing.png"));
+        assertFalse(cache.prefetch(baseUrl + "/missing.png"));
+        assertEquals(2, missingHits.get());
+    }
+
+    @Test
+    public void concurrentPrefetchDownloadsOnce() throws InterruptedException {
+        final String url = baseUrl + "/slow.png";
+        final AtomicInteger succeeded = new AtomicInteger();
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    if (cache.prefetch(url)) {
+                        succeeded.incrementAndGet();
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        // 等第一个请求到达服务端后再放行，其他线程此时应在等待同一个下载
+        long deadline = System.currentTimeMillis() + 5000;
+        while (imageHits.get() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(100);
+        slowRelease.countDown();
+        for (Thread thread : threads) {
+            thread.join(5000);
+        }
+        assertEquals(threads.length, succeeded.get());
+        assertEquals(1, imageHits.get());
+    }
+
+    @Test
+    public void customFetcherIsUsed() {
+        final AtomicInteger opened = new AtomicInteger();
+        cache.setFetcher(new ImageCache.Fetcher() {
+            @Override
+            public InputStream open(String url) throws IOException {
+                opened.incrementAndGet();
+                return ImageCache.URL_CONNECTION_FETCHER.open(url);
+            }
+        });
+        assertTrue(cache.prefetch(baseUrl + "/image.png"));
+        assertEquals(1, opened.get());
+        assertEquals(1, imageHits.get());
+
+        // 已缓存的图片不再请求网络
+        final AtomicBoolean called = new AtomicBoolean();
+        cache.setFetcher(new ImageCache.Fetcher() {
+            @Override
+            public InputStream open(String url) throws IOException {
+                called.set(true);
+                throw new IOException("offline");
+            }
+        });
+        assertTrue(cache.prefetch(baseUrl + "/image.png"));
+        assertFalse(called.get());
+        assertFalse(cache.prefetch(baseUrl + "/other.png"));
+        assertTrue(called.get());
+    }
+
+    private static void respond(HttpExchange exchange, int code, byte[] body) throws IOException {
+        exchange.sendResponseHeaders(code, body.length == 0 ? -1 : body.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(body);
+        out.close();
+    }
+}
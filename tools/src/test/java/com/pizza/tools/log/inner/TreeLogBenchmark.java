@@ -0,0 +1,69 @@
+package com.pizza.tools.log.inner;
+
+import android.util.Log;
+
+import com.pizza.tools.log.config.LogDefaultConfig;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Description: {@link Tree} 输出一条带格式化参数的日志的耗时
+ * <p>
+ * disabled 为级别被过滤、在格式化之前返回的路径，plain 为不显示边框的输出，bordered 为显示边框的输出。
+ * 运行：./gradlew :tools:logBenchmark
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TreeLogBenchmark {
+
+    @Param({"disabled", "plain", "bordered"})
+    public String path;
+
+    private CountingTree tree;
+
+    @Setup
+    public void setUp() {
+        LogDefaultConfig.getInstance()
+                .configAllowLog(true)
+                .configLevel(Log.VERBOSE)
+                .configShowBorders("bordered".equals(path));
+        tree = new CountingTree();
+        // 只输出 info 及以上级别，debug 日志在格式化之前被跳过
+        tree.setMinLevel("disabled".equals(path) ? Log.INFO : Log.VERBOSE);
+    }
+
+    @Benchmark
+    public int log() {
+        tree.d("user %s opened %d items", "pizza", 42);
+        return tree.written;
+    }
+
+    /**
+     * 只统计输出的字符数，排除 Logcat 本身的开销
+     */
+    private static final class CountingTree extends Tree {
+        int written;
+
+        @Override
+        protected void log(int type, String tag, String message) {
+            written += message.length();
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.pizza.tools.log.writer;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 同一目录下有多个追加器同时写入时，{@link LogRetentionService} 不能删除或压缩任何一个正在写入的文件
+ */
+public class LogRetentionServiceTest {
+
+    private static final long DAY_MS = TimeUnit.DAYS.toMillis(1);
+    private static final long TIMEOUT_MS = 5000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File dir;
+    private RollingFileAppender error;
+    private RollingFileAppender debug;
+    private File errorFile;
+    private LogRetentionService service;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = folder.newFolder("logs");
+        error = new RollingFileAppender(dir, "error_", ".log", RollingFileAppender.RollPeriod.DAY)
+                .setCompress(false)
+                .setMaxBackupCount(-1);
+        debug = new RollingFileAppender(dir, "debug_", ".log", RollingFileAppender.RollPeriod.HOUR)
+                .setMaxFileSize(4096)
+                .setCompress(false)
+                .setMaxBackupCount(-1);
+        error.append("first error\n");
+        errorFile = find("error_");
+        assertNotNull(errorFile);
+        // 按天滚动的文件比其他级别的分段都旧，但仍在写入
+        errorFile.setLastModified(System.currentTimeMillis() - 2 * DAY_MS);
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            line.append('d');
+        }
+        line.append('\n');
+        for (int i = 0; i < 40; i++) {
+            debug.append(line);
+        }
+        service = LogRetentionService.get().watch(dir, (FilenameFilter) null);
+    }
+
+    @Test
+    public void sizeTrimKeepsEveryOpenFile() throws Exception {
+        service.setMaxAge(0, TimeUnit.MILLISECONDS)
+                .setCompressAfter(-1, TimeUnit.MILLISECONDS)
+                .setMaxTotalSize(8000);
+        service.requestCleanup();
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (totalSize() > 8000 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertTrue(totalSize() <= 8000);
+        assertTrue(errorFile.exists());
+
+        long length = errorFile.length();
+        error.append("second error\n");
+        assertTrue(errorFile.length() > length);
+    }
+
+    @Test
+    public void compressSkipsEveryOpenFile() throws Exception {
+        int segments = count("debug_", ".log");
+        assertTrue(segments > 2);
+        service.setMaxAge(0, TimeUnit.MILLISECONDS)
+                .setCompressAfter(0, TimeUnit.MILLISECONDS)
+                .setMaxTotalSize(0);
+        service.requestCleanup();
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (count("debug_", ".log.gz") < segments - 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        // 只有正在写入的调试分段没有被压缩
+        assertEquals(segments - 1, count("debug_", ".log.gz"));
+        assertEquals(1, count("debug_", ".log"));
+        assertTrue(errorFile.exists());
+        assertEquals(0, count("error_", ".gz"));
+    }
+
+    @Test
+    public void maxAgeDeletesOnlyClosedFiles() throws Exception {
+        File stale = new File(dir, "error_2020-01-01.log");
+        assertTrue(stale.createNewFile());
+        stale.setLastModified(System.currentTimeMillis() - 30 * DAY_MS);
+        service.setMaxAge(1, TimeUnit.DAYS)
+                .setCompressAfter(-1, TimeUnit.MILLISECONDS)
+                .setMaxTotalSize(0);
+        service.requestCleanup();
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (stale.exists() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertFalse(stale.exists());
+        assertTrue(errorFile.exists());
+
+        // 关闭后不再受保护
+        error.close();
+        service.requestCleanup();
+        deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (errorFile.exists() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertFalse(errorFile.exists());
+    }
+
+    private File find(String prefix) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.getName().startsWith(prefix)) {
+                    return file;
+                }
+            }
+        }
+        return null;
+    }
+
+    private int count(String prefix, String suffix) {
+        int count = 0;
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.getName().startsWith(prefix) && file.getName().endsWith(suffix)) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    private long totalSize() {
+        long size = 0;
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                size += file.length();
+            }
+        }
+        return size;
+    }
+}
@@ -0,0 +1,195 @@
+package com.pizza.tools.qrcode;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.MultiFormatWriter;
+import com.google.zxing.Result;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.QRCodeWriter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 用合成的 NV21 帧验证 {@link FrameScanner} 的裁剪、旋转和识别，识别与回调都在调用线程中同步执行
+ */
+public class FrameScannerTest {
+
+    private static final int FRAME_WIDTH = 640;
+    private static final int FRAME_HEIGHT = 480;
+    private static final String TEXT = "https://example.com/frame-scanner";
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private Result lastResult;
+    private FrameScanner scanner;
+
+    @Before
+    public void setUp() {
+        lastResult = null;
+        scanner = new FrameScanner(new FrameScanner.Callback() {
+            @Override
+            public void onResult(Result result) {
+                lastResult = result;
+            }
+        }, DIRECT, DIRECT);
+    }
+
+    @Test
+    public void decodesFullFrame() throws WriterException {
+        byte[] frame = newFrame();
+        drawMatrix(frame, encodeQrCode(), 200, 120, 6);
+        assertTrue(scanner.offer(frame, FRAME_WIDTH, FRAME_HEIGHT));
+        assertNotNull(lastResult);
+        assertEquals(TEXT, lastResult.getText());
+        assertEquals(BarcodeFormat.QR_CODE, lastResult.getBarcodeFormat());
+        assertFalse(scanner.isDecoding());
+    }
+
+    @Test
+    public void decodesOnlyInsideRegion() throws WriterException {
+        byte[] frame = newFrame();
+        BitMatrix qr = encodeQrCode();
+        int size = qr.getWidth() * 6;
+        drawMatrix(frame, qr, 360, 200, 6);
+
+        scanner.setRegion(340, 180, size + 40, size + 40);
+        scanner.offer(frame, FRAME_WIDTH, FRAME_HEIGHT);
+        assertNotNull(lastResult);
+        assertEquals(TEXT, lastResult.getText());
+
+        lastResult = null;
+        scanner.setRegion(0, 0, 300, 200);
+        scanner.offer(frame, FRAME_WIDTH, FRAME_HEIGHT);
+        assertNull(lastResult);
+
+        // 超出帧的部分被忽略
+        scanner.setRegion(300, 150, 1000, 1000);
+        scanner.offer(frame, FRAME_WIDTH, FRAME_HEIGHT);
+        assertNotNull(lastResult);
+    }
+
+    @Test
+    public void decodesQrCodeAtEveryRotation() throws WriterException {
+        byte[] frame = newFrame();
+        BitMatrix qr = encodeQrCode();
+        drawMatrix(frame, qr, 100, 60, 6);
+        int size = qr.getWidth() * 6;
+        scanner.setRegion(80, 40, size + 40, size + 60);
+        for (int rotation = 0; rotation < 360; rotation += 90) {
+            lastResult = null;
+            scanner.setRotation(rotation);
+            scanner.offer(frame, FRAME_WIDTH, FRAME_HEIGHT);
+            assertNotNull("rotation " + rotation, lastResult);
+            assertEquals(TEXT, lastResult.getText());
+        }
+    }
+
+    @Test
+    public void rotatesVerticalBarcodeUpright() throws WriterException {
+        // 竖屏时相机帧中的条形码是竖直的，旋转 90 或 270 度后才能识别
+        BitMatrix barcode = new MultiFormatWriter().encode("FRAME-128", BarcodeFormat.CODE_128, 0, 1, null);
+        byte[] frame = newFrame();
+        int scale = 3;
+        int top = (FRAME_HEIGHT - barcode.getWidth() * scale) / 2;
+        for (int i = 0; i < barcode.getWidth(); i++) {
+            byte value = barcode.get(i, 0) ? 0 : (byte) 255;
+            for (int y = top + i * scale; y < top + (i + 1) * scale; y++) {
+                Arrays.fill(frame, y * FRAME_WIDTH + 200, y * FRAME_WIDTH + 440, value);
+            }
+        }
+
+        scanner.offer(frame, FRAME_WIDTH, FRAME_HEIGHT);
+        assertNull(lastResult);
+
+        for (int rotation = 90; rotation < 360; rotation += 180) {
+            lastResult = null;
+            scanner.setRotation(rotation);
+            scanner.offer(frame, FRAME_WIDTH, FRAME_HEIGHT);
+            assertNotNull("rotation " + rotation, lastResult);
+            assertEquals("FRAME-128", lastResult.getText());
+        }
+    }
+
+    @Test
+    public void cropAndRotateMapsPixelsClockwise() {
+        // 4x3 的帧，取 (1, 0) 开始 3x2 的区域：
+        // 1 2 3
+        // 5 6 7
+        byte[] data = {
+                0, 1, 2, 3,
+                4, 5, 6, 7,
+                8, 9, 10, 11};
+        byte[] out = new byte[6];
+        FrameScanner.cropAndRotate(data, 4, 1, 0, 3, 2, 0, out);
+        assertArrayEquals(new byte[]{1, 2, 3, 5, 6, 7}, out);
+        FrameScanner.cropAndRotate(data, 4, 1, 0, 3, 2, 90, out);
+        assertArrayEquals(new byte[]{5, 1, 6, 2, 7, 3}, out);
+        FrameScanner.cropAndRotate(data, 4, 1, 0, 3, 2, 180, out);
+        assertArrayEquals(new byte[]{7, 6, 5, 3, 2, 1}, out);
+        FrameScanner.cropAndRotate(data, 4, 1, 0, 3, 2, 270, out);
+        assertArrayEquals(new byte[]{3, 7, 2, 6, 1, 5}, out);
+    }
+
+    @Test
+    public void dropsFramesWhilePaused() throws WriterException {
+        byte[] frame = newFrame();
+        drawMatrix(frame, encodeQrCode(), 200, 120, 6);
+        scanner.pause();
+        assertFalse(scanner.offer(frame, FRAME_WIDTH, FRAME_HEIGHT));
+        assertNull(lastResult);
+        scanner.resume();
+        assertTrue(scanner.offer(frame, FRAME_WIDTH, FRAME_HEIGHT));
+        assertNotNull(lastResult);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnsupportedRotation() {
+        scanner.setRotation(45);
+    }
+
+    private static BitMatrix encodeQrCode() throws WriterException {
+        Map<EncodeHintType, Object> hints = new EnumMap<>(EncodeHintType.class);
+        hints.put(EncodeHintType.MARGIN, 0);
+        return new QRCodeWriter().encode(TEXT, BarcodeFormat.QR_CODE, 0, 0, hints);
+    }
+
+    /**
+     * 白色背景的 NV21 帧，色度平面为中性灰
+     */
+    private static byte[] newFrame() {
+        int ySize = FRAME_WIDTH * FRAME_HEIGHT;
+        byte[] frame = new byte[ySize * 3 / 2];
+        Arrays.fill(frame, 0, ySize, (byte) 255);
+        Arrays.fill(frame, ySize, frame.length, (byte) 128);
+        return frame;
+    }
+
+    private static void drawMatrix(byte[] frame, BitMatrix matrix, int left, int top, int scale) {
+        for (int y = 0; y < matrix.getHeight() * scale; y++) {
+            for (int x = 0; x < matrix.getWidth() * scale; x++) {
+                if (matrix.get(x / scale, y / scale)) {
+                    frame[(top + y) * FRAME_WIDTH + left + x] = 0;
+                }
+            }
+        }
+    }
+}